@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.benchmarks;
+
+import com.github.andrewoma.restless.client.http.HttpClientBuilder;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client side of a call through a HttpClientBuilder proxy: writing the request entity and
+ * reading a canned response. The HTTP client is stubbed so no network I/O is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpClientMethodHandlerBenchmark {
+    private BenchmarkService service;
+    private StubHttpClient httpClient;
+    private BenchmarkService.Payload payload;
+
+    @Setup
+    public void setup() {
+        httpClient = new StubHttpClient();
+        service = new HttpClientBuilder()
+                .httpClient(httpClient)
+                .uri("http://localhost/rpc")
+                .build(BenchmarkService.class);
+        payload = BenchmarkService.Payload.create("name", 3, Arrays.asList(1.0, 2.0, 3.0));
+    }
+
+    @Benchmark
+    public long noParams() {
+        httpClient.response = "null";
+        service.noParams();
+        return httpClient.output.getCount();
+    }
+
+    @Benchmark
+    public String echo() {
+        httpClient.response = "\"hello\"";
+        return service.echo("hello");
+    }
+
+    @Benchmark
+    public String fiveArgs() {
+        httpClient.response = "\"three\"";
+        return service.fiveArgs(1, 2L, "three", true, 5.0);
+    }
+
+    @Benchmark
+    public BenchmarkService.Payload payload() {
+        httpClient.response = "{\"name\":\"name\",\"count\":3,\"values\":[1.0,2.0,3.0]}";
+        return service.payload(payload);
+    }
+
+    static class StubHttpClient extends CloseableHttpClient {
+        final NullOutputStream output = new NullOutputStream();
+        String response;
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+            ((HttpEntityEnclosingRequest) request).getEntity().writeTo(output);
+            StubResponse response = new StubResponse();
+            response.setEntity(new ByteArrayEntity(this.response.getBytes("UTF-8"), ContentType.APPLICATION_JSON));
+            return response;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        @Deprecated
+        public HttpParams getParams() {
+            return new BasicHttpParams();
+        }
+
+        @Override
+        @Deprecated
+        public ClientConnectionManager getConnectionManager() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static class StubResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        StubResponse() {
+            super(HttpVersion.HTTP_1_1, 200, "OK");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
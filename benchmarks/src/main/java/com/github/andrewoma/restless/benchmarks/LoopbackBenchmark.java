@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.andrewoma.restless.client.ClientBuilder;
+import com.github.andrewoma.restless.loopback.ArgumentCopiers;
+import com.github.andrewoma.restless.loopback.LocalClientBuilder;
+import com.github.andrewoma.restless.loopback.LoopbackClientRequestHandler;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full client to server round trip within the JVM, i.e. the framework cost of a call excluding the
+ * network. The loopback transport includes serialisation, while local calls skip it, optionally deep copying
+ * parameters and results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopbackBenchmark {
+    @Param({"loopback", "local", "localCopy"})
+    public String transport;
+
+    private BenchmarkService service;
+    private BenchmarkService.Payload payload;
+
+    @Setup
+    public void setup() {
+        ServerHandler handler = new ServerHandlerBuilder().service(new BenchmarkServiceImpl()).build();
+        if (transport.equals("loopback")) {
+            service = new ClientBuilder()
+                    .requestHandler(new LoopbackClientRequestHandler(handler))
+                    .build(BenchmarkService.class);
+        } else {
+            service = new LocalClientBuilder()
+                    .handler(handler)
+                    .copier(transport.equals("local") ? ArgumentCopiers.NONE : ArgumentCopiers.jackson(new ObjectMapper()))
+                    .build(BenchmarkService.class);
+        }
+        payload = BenchmarkService.Payload.create("name", 3, Arrays.asList(1.0, 2.0, 3.0));
+    }
+
+    @Benchmark
+    public void noParams() {
+        service.noParams();
+    }
+
+    @Benchmark
+    public String echo() {
+        return service.echo("hello");
+    }
+
+    @Benchmark
+    public String fiveArgs() {
+        return service.fiveArgs(1, 2L, "three", true, 5.0);
+    }
+
+    @Benchmark
+    public BenchmarkService.Payload payload() {
+        return service.payload(payload);
+    }
+}
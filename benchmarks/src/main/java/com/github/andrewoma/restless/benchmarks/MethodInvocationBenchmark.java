@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.benchmarks;
+
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures MethodInvocation.proceed through a chain of pass-through interceptors
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodInvocationBenchmark {
+    @Param({"0", "1", "4", "8"})
+    public int interceptorCount;
+
+    private Method method;
+    private String[] parameterNames = {"value"};
+    private List<MethodInterceptor<Object>> interceptorList;
+    private MethodInterceptor<Object>[] interceptors;
+    private MethodHandler<Object> handler;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        method = BenchmarkService.class.getMethod("echo", String.class);
+        interceptorList = new ArrayList<MethodInterceptor<Object>>();
+        for (int i = 0; i < interceptorCount; i++) {
+            interceptorList.add(new MethodInterceptor<Object>() {
+                @Override
+                public Object invoke(MethodInvocation<Object> invocation) throws Throwable {
+                    return invocation.proceed();
+                }
+            });
+        }
+        interceptors = interceptorList.toArray(new MethodInterceptor[interceptorList.size()]);
+        handler = new MethodHandler<Object>() {
+            @Override
+            public Object invoke(MethodInvocation<Object> invocation) throws Throwable {
+                return invocation.getParameters()[0];
+            }
+        };
+    }
+
+    @Benchmark
+    public Object precompiledChain() throws Throwable {
+        return new MethodInvocation<Object>(method, new Object[]{"hello"}, parameterNames, interceptors, handler, null).proceed();
+    }
+
+    @Benchmark
+    public Object listChain() throws Throwable {
+        return new MethodInvocation<Object>(method, new Object[]{"hello"}, parameterNames, interceptorList, handler, null).proceed();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.benchmarks;
+
+import com.github.andrewoma.restless.core.proxy.MethodHandleInvokerFactory;
+import com.github.andrewoma.restless.core.proxy.MethodInvoker;
+import com.github.andrewoma.restless.core.proxy.MethodInvokerFactory;
+import com.github.andrewoma.restless.core.proxy.ReflectiveMethodInvokerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the MethodInvoker strategies for methods with 0, 1 and 5 arguments
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodInvokerBenchmark {
+    @Param({"reflective", "methodHandle"})
+    public String strategy;
+
+    private BenchmarkService target = new BenchmarkServiceImpl();
+    private MethodInvoker noArgs;
+    private MethodInvoker oneArg;
+    private MethodInvoker fiveArgs;
+    private Object[] noArgsParameters = new Object[0];
+    private Object[] oneArgParameters = {"hello"};
+    private Object[] fiveArgsParameters = {1, 2L, "three", true, 5.0};
+
+    @Setup
+    public void setup() throws Exception {
+        MethodInvokerFactory factory = strategy.equals("reflective")
+                ? new ReflectiveMethodInvokerFactory() : new MethodHandleInvokerFactory();
+
+        noArgs = factory.create(target, BenchmarkService.class.getMethod("noParams"));
+        oneArg = factory.create(target, BenchmarkService.class.getMethod("echo", String.class));
+        fiveArgs = factory.create(target, BenchmarkService.class.getMethod("fiveArgs", int.class, long.class,
+                String.class, boolean.class, double.class));
+    }
+
+    @Benchmark
+    public Object noArgs() throws Throwable {
+        return noArgs.invoke(noArgsParameters);
+    }
+
+    @Benchmark
+    public Object oneArg() throws Throwable {
+        return oneArg.invoke(oneArgParameters);
+    }
+
+    @Benchmark
+    public Object fiveArgs() throws Throwable {
+        return fiveArgs.invoke(fiveArgsParameters);
+    }
+
+    @Benchmark
+    public Object direct() {
+        return target.fiveArgs(1, 2L, "three", true, 5.0);
+    }
+}
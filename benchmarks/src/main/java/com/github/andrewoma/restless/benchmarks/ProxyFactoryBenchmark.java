@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.benchmarks;
+
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.ProxyFactory;
+import com.github.andrewoma.restless.core.proxy.TargetMethodHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of calling through a proxy created by ProxyFactory compared to a direct call
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyFactoryBenchmark {
+    private BenchmarkService direct;
+    private BenchmarkService proxy;
+
+    @Setup
+    public void setup() {
+        direct = new BenchmarkServiceImpl();
+        proxy = ProxyFactory.createProxy(BenchmarkService.class, Collections.<MethodInterceptor<Object>>emptyList(),
+                new TargetMethodHandler<Object>(direct), new ProxyFactory.ContextFactory<Object>() {
+                    @Override
+                    public Object create() {
+                        return null;
+                    }
+                });
+    }
+
+    @Benchmark
+    public String direct() {
+        return direct.echo("hello");
+    }
+
+    @Benchmark
+    public String proxy() {
+        return proxy.echo("hello");
+    }
+
+    @Benchmark
+    public String proxyFiveArgs() {
+        return proxy.fiveArgs(1, 2L, "three", true, 5.0);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.benchmarks;
+
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import com.github.andrewoma.restless.server.ServerRequest;
+import com.github.andrewoma.restless.server.ServerResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ServerHandler.handleRequest for in-memory requests, including writing the response
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerHandlerBenchmark {
+    private ServerHandler handler;
+    private Map<String, String> headers;
+    private byte[] noParams;
+    private byte[] echo;
+    private byte[] fiveArgs;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws Exception {
+        handler = new ServerHandlerBuilder().service(new BenchmarkServiceImpl()).build();
+        headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/json");
+        noParams = "{}".getBytes("UTF-8");
+        echo = "{\"value\":\"hello\"}".getBytes("UTF-8");
+        fiveArgs = "{\"a\":1,\"b\":2,\"c\":\"three\",\"d\":true,\"e\":5.0}".getBytes("UTF-8");
+        payload = "{\"payload\":{\"name\":\"name\",\"count\":3,\"values\":[1.0,2.0,3.0]}}".getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public long noParams() throws Exception {
+        return call("noParams", noParams);
+    }
+
+    @Benchmark
+    public long echo() throws Exception {
+        return call("echo", echo);
+    }
+
+    @Benchmark
+    public long fiveArgs() throws Exception {
+        return call("fiveArgs", fiveArgs);
+    }
+
+    @Benchmark
+    public long payload() throws Exception {
+        return call("payload", payload);
+    }
+
+    private long call(String method, byte[] body) throws Exception {
+        ServerResponse response = handler.handleRequest(new ServerRequest("bench", method, headers,
+                new ByteArrayInputStream(body)));
+        NullOutputStream output = new NullOutputStream();
+        response.getOutput().write(output);
+        return output.getCount();
+    }
+}
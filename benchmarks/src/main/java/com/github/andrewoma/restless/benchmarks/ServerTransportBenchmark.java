@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.benchmarks;
+
+import com.github.andrewoma.restless.client.http.HttpClientBuilder;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import com.github.andrewoma.restless.server.http.RestlessServlet;
+import com.github.andrewoma.restless.server.netty.NettyServer;
+import com.github.andrewoma.restless.server.netty.NettyServerBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of small calls over loopback HTTP between the Jetty servlet and Netty server
+ * transports. Client and server share the machine, so run with the server pinned to a fixed number of cores
+ * (e.g. with taskset) to compare throughput per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class ServerTransportBenchmark {
+    @Param({"jetty", "netty"})
+    public String transport;
+
+    private Server jetty;
+    private NettyServer netty;
+    private CloseableHttpClient httpClient;
+    private BenchmarkService service;
+    private BenchmarkService.Payload payload;
+
+    @Setup
+    public void setup() throws Exception {
+        ServerHandler handler = new ServerHandlerBuilder().service(new BenchmarkServiceImpl()).build();
+        String uri;
+        if (transport.equals("jetty")) {
+            jetty = new Server(0);
+            ServletHandler servletHandler = new ServletHandler();
+            jetty.setHandler(servletHandler);
+            servletHandler.addServletWithMapping(new ServletHolder(new RestlessServlet(handler)), "/*");
+            jetty.start();
+            uri = jetty.getURI().toString();
+        } else {
+            netty = new NettyServerBuilder().handler(handler).port(0).build();
+            netty.start();
+            uri = netty.getUri().toString();
+        }
+
+        httpClient = HttpClients.custom().setMaxConnTotal(64).setMaxConnPerRoute(64).build();
+        service = new HttpClientBuilder().httpClient(httpClient).uri(uri).build(BenchmarkService.class);
+        payload = BenchmarkService.Payload.create("name", 3, Arrays.asList(1.0, 2.0, 3.0));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        httpClient.close();
+        if (jetty != null) {
+            jetty.stop();
+        }
+        if (netty != null) {
+            netty.stop();
+        }
+    }
+
+    @Benchmark
+    public String echo() {
+        return service.echo("hello");
+    }
+
+    @Benchmark
+    public BenchmarkService.Payload payload() {
+        return service.payload(payload);
+    }
+}
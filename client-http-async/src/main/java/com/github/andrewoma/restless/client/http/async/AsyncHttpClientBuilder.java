@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client.http.async;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.client.ClientExceptionHandler;
+import com.github.andrewoma.restless.client.DefaultClientExceptionHandler;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.DefaultContext;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.ProxyFactory;
+import com.github.andrewoma.restless.core.util.Validators;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Builds clients using non-blocking I/O. The http client must be started before making calls.
+ */
+public class AsyncHttpClientBuilder {
+    private List<MethodInterceptor<Context>> interceptors = new ArrayList<MethodInterceptor<Context>>();
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private URI uri;
+    private CloseableHttpAsyncClient httpClient;
+    private ClientExceptionHandler exceptionHandler = new DefaultClientExceptionHandler();
+    private Codec codec = Codecs.json();
+    private Executor executor;
+
+    public AsyncHttpClientBuilder interceptor(MethodInterceptor<Context> interceptor) {
+        interceptors.add(interceptor);
+        return this;
+    }
+
+    public AsyncHttpClientBuilder interceptors(Collection<MethodInterceptor<Context>> interceptors) {
+        this.interceptors.addAll(interceptors);
+        return this;
+    }
+
+    public AsyncHttpClientBuilder objectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        return this;
+    }
+
+    public AsyncHttpClientBuilder uri(URI uri) {
+        this.uri = uri;
+        return this;
+    }
+
+    public AsyncHttpClientBuilder uri(String uri) {
+        try {
+            this.uri = new URI(uri);
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+        return this;
+    }
+
+    public AsyncHttpClientBuilder httpClient(CloseableHttpAsyncClient httpClient) {
+        this.httpClient = httpClient;
+        return this;
+    }
+
+    public AsyncHttpClientBuilder exceptionHandler(ClientExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+        return this;
+    }
+
+    /**
+     * Sets the codec used for requests and preferred for responses. Defaults to JSON.
+     */
+    public AsyncHttpClientBuilder codec(Codec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Sets the executor used to write streamed request bodies. Defaults to a shared pool of daemon threads.
+     */
+    public AsyncHttpClientBuilder executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public <P> P build(Class<P> type) {
+        Validators.require(type.isInterface(), "'type' must be an interface");
+        Validators.require(httpClient != null, "'httpClient' is required");
+
+        final Service service = type.getAnnotation(Service.class);
+        Validators.require(service != null, "'type' must have a 'Service' annotation");
+
+        AsyncHttpClientMethodHandler<Context> handler = new AsyncHttpClientMethodHandler<Context>(httpClient, uri,
+                objectMapper, exceptionHandler, codec, executor);
+
+        return ProxyFactory.createProxy(type, interceptors, handler, new ProxyFactory.ContextFactory<Context>() {
+            @Override
+            public Context create() {
+                return new DefaultContext(service.value());
+            }
+        });
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client.http.async;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.github.andrewoma.restless.client.ClientExceptionHandler;
+import com.github.andrewoma.restless.client.ClientRequests;
+import com.github.andrewoma.restless.client.http.HttpRequests;
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.ClosableByteStream;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.util.Callback;
+import com.github.andrewoma.restless.core.util.Futures;
+import com.github.andrewoma.restless.core.util.Jdks;
+import com.github.andrewoma.restless.core.util.Promise;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A method handler using non-blocking I/O, so outstanding calls do not hold a thread. Methods returning
+ * futures return immediately, with the future completed by the I/O reactor once the response arrives.
+ * Other methods wait for the response on the calling thread.
+ *
+ * <p>{@link ByteStream} and {@link Streamed} results are streamed with flow control, with the future completing
+ * once the response headers arrive. {@link ByteStream}, {@link Streamed} and Publisher parameters are written by
+ * a task on the executor and sent as the connection accepts them, so the writer is held while the server reads
+ * the body. Other parameters are buffered in memory before sending.
+ *
+ * <p>Callbacks registered on returned futures may run on the I/O reactor thread, so must not block.
+ */
+public class AsyncHttpClientMethodHandler<T extends Context> implements MethodHandler<T> {
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
+    private final CloseableHttpAsyncClient httpClient;
+    private final URI baseUri;
+    private final Codec codec;
+    private final ObjectMapper objectMapper;
+    private final ClientExceptionHandler clientExceptionHandler;
+    private final Executor executor;
+
+    public AsyncHttpClientMethodHandler(CloseableHttpAsyncClient httpClient, URI baseUri, ObjectMapper objectMapper,
+            ClientExceptionHandler clientExceptionHandler) {
+        this(httpClient, baseUri, objectMapper, clientExceptionHandler, Codecs.json());
+    }
+
+    public AsyncHttpClientMethodHandler(CloseableHttpAsyncClient httpClient, URI baseUri, ObjectMapper objectMapper,
+            ClientExceptionHandler clientExceptionHandler, Codec codec) {
+        this(httpClient, baseUri, objectMapper, clientExceptionHandler, codec, null);
+    }
+
+    /**
+     * Creates a handler that writes streamed request bodies using the executor, or a shared pool if it is null.
+     * The executor requires a thread per request with a streamed body being sent.
+     */
+    public AsyncHttpClientMethodHandler(CloseableHttpAsyncClient httpClient, URI baseUri, ObjectMapper objectMapper,
+            ClientExceptionHandler clientExceptionHandler, Codec codec, Executor executor) {
+        this.httpClient = httpClient;
+        this.baseUri = baseUri;
+        this.clientExceptionHandler = clientExceptionHandler;
+        this.codec = codec;
+        this.objectMapper = objectMapper;
+        this.executor = executor != null ? executor : DefaultExecutor.INSTANCE;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation<T> methodInvocation) throws Throwable {
+        Promise<Object> promise = Futures.promise();
+        execute(methodInvocation, promise);
+
+        if (Futures.isAsync(methodInvocation.getMethod())) {
+            return promise.getFuture();
+        }
+        return Futures.get(promise.getFuture());
+    }
+
+    private void execute(MethodInvocation<T> methodInvocation, final Callback<Object> callback) throws Exception {
+        final Type resultType = Futures.getResultType(methodInvocation.getMethod());
+        final Class<?> resultClass = TypeFactory.rawClass(resultType);
+
+        HttpAsyncRequestProducer producer = HttpAsyncMethods.create(createRequest(methodInvocation));
+
+        final Method method = methodInvocation.getMethod();
+        if (isByteStream(resultClass) || ClientRequests.isStreamedResult(method)) {
+            executeStreaming(producer, method, callback);
+            return;
+        }
+
+        httpClient.execute(producer, new BasicAsyncResponseConsumer(), new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                Object result;
+                try {
+                    result = handleResponse(resultType, resultClass, response);
+                } catch (Throwable t) {
+                    callback.onFailure(t);
+                    return;
+                }
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                callback.onFailure(e);
+            }
+
+            @Override
+            public void cancelled() {
+                callback.onFailure(new CancellationException());
+            }
+        });
+    }
+
+    private void executeStreaming(HttpAsyncRequestProducer producer, final Method method,
+            final Callback<Object> callback) {
+        final StreamingResponseConsumer consumer = new StreamingResponseConsumer(STREAM_BUFFER_SIZE,
+                new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse response) {
+                        callback.onSuccess(createStreamingResponse(method, response, response.getEntity()));
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        callback.onFailure(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        callback.onFailure(new CancellationException());
+                    }
+                });
+
+        Future<HttpResponse> exchange = httpClient.execute(producer, consumer, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                if (consumer.isStreaming()) {
+                    return;
+                }
+                if (HttpRequests.isSuccess(response)) {
+                    // No body was enclosed
+                    callback.onSuccess(createStreamingResponse(method, response, new ByteArrayEntity(new byte[0])));
+                    return;
+                }
+                try {
+                    callback.onFailure(handleException(response));
+                } catch (Throwable t) {
+                    callback.onFailure(t);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                callback.onFailure(e);
+            }
+
+            @Override
+            public void cancelled() {
+                callback.onFailure(new CancellationException());
+            }
+        });
+        consumer.setExchange(exchange);
+    }
+
+    private boolean isByteStream(Class<?> resultClass) {
+        return ByteStream.class.isAssignableFrom(resultClass);
+    }
+
+    private Object handleResponse(Type resultType, Class<?> resultClass, HttpResponse response) throws Throwable {
+        if (!HttpRequests.isSuccess(response)) {
+            throw handleException(response);
+        }
+        if (resultClass.equals(Void.TYPE)) {
+            return null;
+        }
+        Header contentType = response.getFirstHeader(Codecs.CONTENT_TYPE);
+        return ClientRequests.readValue(objectMapper, contentType == null ? null : contentType.getValue(),
+                response.getEntity().getContent(), resultType);
+    }
+
+    private Throwable handleException(HttpResponse response) throws Exception {
+        return clientExceptionHandler.handleException(HttpRequests.getResponseHeaders(response), objectMapper,
+                response.getEntity().getContent());
+    }
+
+    private Object createStreamingResponse(Method method, HttpResponse response, final HttpEntity entity) {
+        if (ClientRequests.isStreamedResult(method)) {
+            // Nothing is read until iterated, so this does not block the I/O reactor
+            Header contentType = response.getFirstHeader(Codecs.CONTENT_TYPE);
+            try {
+                return ClientRequests.readStreamed(objectMapper, contentType == null ? null : contentType.getValue(),
+                        entity.getContent(), method, null);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else if (Jdks.supportsAutoCloseable()) {
+            return new ClosableByteStream() {
+                @Override
+                public InputStream input() throws Exception {
+                    return entity.getContent();
+                }
+
+                @Override
+                public void close() throws Exception {
+                    entity.getContent().close();
+                }
+            };
+        } else {
+            return new ByteStream() {
+                @Override
+                public InputStream input() throws Exception {
+                    return entity.getContent();
+                }
+
+                @Override
+                public void close() throws Exception {
+                    entity.getContent().close();
+                }
+            };
+        }
+    }
+
+    private HttpPost createRequest(final MethodInvocation<T> methodInvocation) throws Exception {
+        HttpPost request = new HttpPost(HttpRequests.createRequestUri(baseUri, methodInvocation));
+        HttpRequests.setRequestHeaders(request, methodInvocation.getContext().getRequestHeaders());
+        request.setHeader(Codecs.ACCEPT, ClientRequests.accept(codec));
+
+        Method method = methodInvocation.getMethod();
+        if (ClientRequests.isByteStreamParameter(method)) {
+            request.setEntity(new StreamingRequestEntity(executor, STREAM_BUFFER_SIZE) {
+                @Override
+                protected void write(OutputStream output) throws Exception {
+                    ((ByteStream) methodInvocation.getParameters()[0]).output(output);
+                }
+            });
+        } else if (ClientRequests.hasStreamedParameter(method)) {
+            StreamingRequestEntity entity = new StreamingRequestEntity(executor, STREAM_BUFFER_SIZE) {
+                @Override
+                protected void write(OutputStream output) throws Exception {
+                    ClientRequests.writeParameters(objectMapper, codec, methodInvocation, output);
+                }
+            };
+            entity.setContentType(codec.getContentType());
+            request.setEntity(entity);
+        } else {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            ClientRequests.writeParameters(objectMapper, codec, methodInvocation, body);
+            NByteArrayEntity entity = new NByteArrayEntity(body.toByteArray());
+            entity.setContentType(codec.getContentType());
+            request.setEntity(entity);
+        }
+        return request;
+    }
+
+    /**
+     * Lazily creates the default executor so that clients without streamed parameters do not start threads
+     */
+    private static class DefaultExecutor {
+        private static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "restless-async-writer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
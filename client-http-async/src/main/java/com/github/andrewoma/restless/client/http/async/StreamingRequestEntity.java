@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.client.http.async;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentOutputStream;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+import org.apache.http.nio.util.SharedOutputBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * Sends a request body that is written by a task on the executor, mirroring {@link StreamingResponseConsumer}.
+ * The writer blocks while the buffer is full and the I/O reactor sends the buffer as the connection accepts data,
+ * so bodies of any size are sent in constant memory without blocking the reactor. Writing starts once the
+ * request is being sent and fails the request if it throws.
+ */
+abstract class StreamingRequestEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+    private final Executor executor;
+    private final SharedOutputBuffer buffer;
+    private volatile IOControl ioControl;
+    private volatile Throwable failure;
+    private boolean started;
+
+    StreamingRequestEntity(Executor executor, int bufferSize) {
+        this.executor = executor;
+        this.buffer = new SharedOutputBuffer(bufferSize);
+        setChunked(true);
+    }
+
+    /**
+     * Writes the body, blocking while the buffer is full
+     */
+    protected abstract void write(OutputStream output) throws Exception;
+
+    @Override
+    public void produceContent(ContentEncoder encoder, IOControl ioControl) throws IOException {
+        this.ioControl = ioControl;
+        if (!started) {
+            started = true;
+            start();
+        }
+        if (failure != null) {
+            throw new IOException("Unable to write the request body", failure);
+        }
+        buffer.produceContent(encoder, ioControl);
+    }
+
+    private void start() {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    OutputStream output = new ContentOutputStream(buffer);
+                    try {
+                        write(output);
+                        // Marks the end of the body
+                        output.close();
+                    } catch (Throwable t) {
+                        failure = t;
+                        buffer.shutdown();
+                        // Wakes the reactor if output was suspended waiting for the writer
+                        IOControl control = ioControl;
+                        if (control != null) {
+                            control.requestOutput();
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    @Override
+    public void close() {
+        // Releases a writer blocked on a full buffer once the exchange ends
+        buffer.shutdown();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        try {
+            write(output);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+}
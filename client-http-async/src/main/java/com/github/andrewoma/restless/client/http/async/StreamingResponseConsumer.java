@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client.http.async;
+
+import com.github.andrewoma.restless.client.http.HttpRequests;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * Consumes successful responses as a stream, notifying the stream callback once the headers arrive so that the
+ * body can be read while it is being received. Input is suspended while the stream buffer is full.
+ * Unsuccessful responses are buffered in full so that the error can be mapped to an exception.
+ */
+class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+    private final int bufferSize;
+    private final FutureCallback<HttpResponse> streamCallback;
+
+    private volatile HttpResponse response;
+    private volatile SharedInputBuffer stream;
+    private volatile SimpleInputBuffer buffer;
+    private volatile Future<HttpResponse> exchange;
+    private volatile boolean closed;
+
+    StreamingResponseConsumer(int bufferSize, FutureCallback<HttpResponse> streamCallback) {
+        this.bufferSize = bufferSize;
+        this.streamCallback = streamCallback;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+        if (HttpRequests.isSuccess(response)) {
+            stream = new SharedInputBuffer(bufferSize);
+            BasicHttpEntity streamed = new BasicHttpEntity();
+            streamed.setContent(new ContentInputStream(stream) {
+                @Override
+                public void close() throws IOException {
+                    StreamingResponseConsumer.this.shutdown();
+                }
+            });
+            streamed.setContentLength(entity.getContentLength());
+            streamed.setContentType(entity.getContentType());
+            response.setEntity(streamed);
+            streamCallback.completed(response);
+        } else {
+            long length = entity.getContentLength();
+            buffer = new SimpleInputBuffer(length > 0 && length < bufferSize ? (int) length : bufferSize,
+                    HeapByteBufferAllocator.INSTANCE);
+            response.setEntity(new ContentBufferEntity(entity, buffer));
+        }
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl control) throws IOException {
+        if (stream != null) {
+            stream.consumeContent(decoder, control);
+        } else {
+            buffer.consumeContent(decoder);
+        }
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        // The stream remains readable after the response completes, so is only released on failure or close
+        if (stream != null && getException() != null) {
+            stream.shutdown();
+        }
+        buffer = null;
+    }
+
+    /**
+     * Returns true if the stream callback has been notified of the response
+     */
+    boolean isStreaming() {
+        return stream != null;
+    }
+
+    void setExchange(Future<HttpResponse> exchange) {
+        this.exchange = exchange;
+        if (closed) {
+            exchange.cancel(true);
+        }
+    }
+
+    /**
+     * Discards any unread content, aborting the exchange if the response has not been received in full
+     */
+    void shutdown() {
+        closed = true;
+        if (stream != null) {
+            stream.shutdown();
+        }
+        Future<HttpResponse> current = exchange;
+        if (current != null) {
+            current.cancel(true);
+        }
+    }
+}
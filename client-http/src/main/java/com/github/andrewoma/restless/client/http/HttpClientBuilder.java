@@ -24,20 +24,35 @@ package com.github.andrewoma.restless.client.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.client.Batch;
 import com.github.andrewoma.restless.client.ClientExceptionHandler;
 import com.github.andrewoma.restless.client.DefaultClientExceptionHandler;
 import com.github.andrewoma.restless.core.Context;
 import com.github.andrewoma.restless.core.DefaultContext;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.AsyncMethodHandler;
+import com.github.andrewoma.restless.core.proxy.CoalescingMethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
 import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
 import com.github.andrewoma.restless.core.proxy.ProxyFactory;
+import com.github.andrewoma.restless.core.util.Compression;
+import com.github.andrewoma.restless.core.util.Futures;
 import com.github.andrewoma.restless.core.util.Validators;
 import org.apache.http.impl.client.CloseableHttpClient;
 
+import javax.websocket.ContainerProvider;
+import javax.websocket.WebSocketContainer;
+import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpClientBuilder {
     private List<MethodInterceptor<Context>> interceptors = new ArrayList<MethodInterceptor<Context>>();
@@ -45,6 +60,14 @@ public class HttpClientBuilder {
     private URI uri;
     private CloseableHttpClient httpClient;
     private ClientExceptionHandler exceptionHandler = new DefaultClientExceptionHandler();
+    private Executor executor;
+    private Codec codec = Codecs.json();
+    private int compressionThreshold = Compression.DISABLED;
+    private int bufferSize = HttpClientMethodHandler.DEFAULT_BUFFER_SIZE;
+    private long coalescingWindowMillis = -1;
+    private int maxCoalescedCalls;
+    private URI webSocketUri;
+    private WebSocketContainer webSocketContainer;
 
     public HttpClientBuilder interceptor(MethodInterceptor<Context> interceptor) {
         interceptors.add(interceptor);
@@ -85,14 +108,88 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Sets the codec used for requests and preferred for responses. Defaults to JSON.
+     */
+    public HttpClientBuilder codec(Codec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Gzips request bodies of at least the given size in bytes. Only enable this for servers that accept
+     * compressed requests. Responses are decompressed regardless of this setting.
+     */
+    public HttpClientBuilder compressRequests(int threshold) {
+        this.compressionThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Buffers request bodies of up to the given size in bytes so that they are sent with a Content-Length and can
+     * be retried. Larger bodies are streamed. Defaults to {@link HttpClientMethodHandler#DEFAULT_BUFFER_SIZE}.
+     */
+    public HttpClientBuilder bufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Combines concurrent calls to {@link com.github.andrewoma.restless.annotations.Batchable} methods made within
+     * the window into single calls to their bulk methods, sending early once the maximum number of calls is reached.
+     */
+    public HttpClientBuilder coalesce(long windowMillis, int maxCalls) {
+        this.coalescingWindowMillis = windowMillis;
+        this.maxCoalescedCalls = maxCalls;
+        return this;
+    }
+
+    /**
+     * Invokes methods taking a {@link com.github.andrewoma.restless.core.StreamingHandler} over WebSockets
+     * relative to the given uri, e.g. {@code ws://host/rpc-ws/}
+     */
+    public HttpClientBuilder webSocketUri(URI webSocketUri) {
+        this.webSocketUri = webSocketUri;
+        return this;
+    }
+
+    /**
+     * Sets the container used to open WebSockets. Defaults to the container found by {@link ContainerProvider}.
+     */
+    public HttpClientBuilder webSocketContainer(WebSocketContainer webSocketContainer) {
+        this.webSocketContainer = webSocketContainer;
+        return this;
+    }
+
+    /**
+     * Sets the executor used to invoke methods returning futures and to send coalesced calls. Defaults to a shared
+     * pool of daemon threads.
+     */
+    public HttpClientBuilder executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
     public <P> P build(Class<P> type) {
         Validators.require(type.isInterface(), "'type' must be an interface");
 
         final Service service = type.getAnnotation(Service.class);
         Validators.require(service != null, "'type' must have a 'Service' annotation");
 
-        HttpClientMethodHandler<Context> handler = new HttpClientMethodHandler<Context>(httpClient, uri, objectMapper,
-                exceptionHandler);
+        MethodHandler<Context> handler = new HttpClientMethodHandler<Context>(httpClient, uri, objectMapper,
+                exceptionHandler, codec, compressionThreshold, bufferSize);
+        if (webSocketUri != null && WebSocketMethodHandler.hasStreamingMethods(type)) {
+            handler = new WebSocketMethodHandler<Context>(handler, webSocketContainer != null ? webSocketContainer
+                    : ContainerProvider.getWebSocketContainer(), webSocketUri, objectMapper, exceptionHandler,
+                    getExecutor());
+        }
+        if (hasAsyncMethods(type)) {
+            handler = new AsyncMethodHandler<Context>(handler, getExecutor());
+        }
+        if (coalescingWindowMillis >= 0 && CoalescingMethodHandler.hasBatchableMethods(type)) {
+            handler = new CoalescingMethodHandler<Context>(handler, type, getExecutor(), coalescingWindowMillis,
+                    maxCoalescedCalls);
+        }
 
         return ProxyFactory.createProxy(type, interceptors, handler, new ProxyFactory.ContextFactory<Context>() {
             @Override
@@ -101,4 +198,41 @@ public class HttpClientBuilder {
             }
         });
     }
+
+    /**
+     * Creates a batch that sends calls made on its proxies to the server in a single request
+     */
+    public Batch batch() {
+        return new Batch(new HttpClientRequestHandler(httpClient, uri), objectMapper, exceptionHandler, codec,
+                interceptors);
+    }
+
+    private Executor getExecutor() {
+        return executor != null ? executor : DefaultExecutor.INSTANCE;
+    }
+
+    private static boolean hasAsyncMethods(Class<?> type) {
+        for (Method method : type.getMethods()) {
+            if (Futures.isAsync(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lazily creates the default executor so that clients without async methods do not start threads
+     */
+    private static class DefaultExecutor {
+        private static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "restless-client-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
 }
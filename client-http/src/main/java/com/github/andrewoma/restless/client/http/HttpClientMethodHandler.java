@@ -22,76 +22,121 @@
 
 package com.github.andrewoma.restless.client.http;
 
-import com.fasterxml.jackson.core.JsonEncoding;
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.MappingJsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.github.andrewoma.restless.client.ClientExceptionHandler;
+import com.github.andrewoma.restless.client.ClientRequests;
 import com.github.andrewoma.restless.core.ByteStream;
 import com.github.andrewoma.restless.core.ClosableByteStream;
 import com.github.andrewoma.restless.core.Context;
 import com.github.andrewoma.restless.core.Headers;
-import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
 import com.github.andrewoma.restless.core.proxy.MethodHandler;
 import com.github.andrewoma.restless.core.proxy.MethodInvocation;
-import com.github.andrewoma.restless.core.util.CaseConverter;
+import com.github.andrewoma.restless.core.util.BoundedOutputStream;
+import com.github.andrewoma.restless.core.util.Compression;
+import com.github.andrewoma.restless.core.util.Futures;
 import com.github.andrewoma.restless.core.util.Jdks;
-import com.github.andrewoma.restless.core.util.Validators;
-import org.apache.http.Header;
-import org.apache.http.HttpResponse;
+import com.github.andrewoma.restless.core.util.PooledOutputStream;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.ContentType;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.DeflaterOutputStream;
 
 public class HttpClientMethodHandler<T extends Context> implements MethodHandler<T> {
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
     private final CloseableHttpClient httpClient;
     private final URI baseUri;
-    private final JsonFactory jsonFactory;
+    private final Codec codec;
     private final ObjectMapper objectMapper;
     private final ClientExceptionHandler clientExceptionHandler;
+    private final int compressionThreshold;
+    private final int bufferSize;
 
     public HttpClientMethodHandler(CloseableHttpClient httpClient, URI baseUri, ObjectMapper objectMapper, ClientExceptionHandler clientExceptionHandler) {
+        this(httpClient, baseUri, objectMapper, clientExceptionHandler, Codecs.json());
+    }
+
+    public HttpClientMethodHandler(CloseableHttpClient httpClient, URI baseUri, ObjectMapper objectMapper,
+            ClientExceptionHandler clientExceptionHandler, Codec codec) {
+        this(httpClient, baseUri, objectMapper, clientExceptionHandler, codec, Compression.DISABLED);
+    }
+
+    /**
+     * Creates a handler that gzips request bodies of at least {@code compressionThreshold} bytes.
+     * {@link ByteStream} bodies are always compressed when enabled as their size is not known in advance.
+     */
+    public HttpClientMethodHandler(CloseableHttpClient httpClient, URI baseUri, ObjectMapper objectMapper,
+            ClientExceptionHandler clientExceptionHandler, Codec codec, int compressionThreshold) {
+        this(httpClient, baseUri, objectMapper, clientExceptionHandler, codec, compressionThreshold, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a handler that buffers request bodies of up to {@code bufferSize} bytes, sending them with a
+     * Content-Length as repeatable entities that the http client can retry. Larger bodies are streamed.
+     */
+    public HttpClientMethodHandler(CloseableHttpClient httpClient, URI baseUri, ObjectMapper objectMapper,
+            ClientExceptionHandler clientExceptionHandler, Codec codec, int compressionThreshold, int bufferSize) {
+        this.bufferSize = bufferSize;
         this.httpClient = httpClient;
         this.baseUri = baseUri;
         this.clientExceptionHandler = clientExceptionHandler;
-        this.jsonFactory = new MappingJsonFactory(objectMapper);
+        this.codec = codec;
         this.objectMapper = objectMapper;
+        this.compressionThreshold = compressionThreshold;
     }
 
     @Override
     public Object invoke(MethodInvocation<T> methodInvocation) throws Throwable {
-
         HttpPost request = createRequest(methodInvocation);
+        try {
+            return execute(methodInvocation, request);
+        } finally {
+            if (request.getEntity() instanceof BufferedEntity) {
+                ((BufferedEntity) request.getEntity()).release();
+            }
+        }
+    }
+
+    private Object execute(MethodInvocation<T> methodInvocation, HttpPost request) throws Throwable {
+        Type resultType = Futures.getResultType(methodInvocation.getMethod());
+        Class<?> resultClass = TypeFactory.rawClass(resultType);
 
         CloseableHttpResponse response = httpClient.execute(request);
 
+        boolean streaming = false;
         try {
-            Map<String, String> headers = getResponseHeaders(response);
-            if (response.getStatusLine().getStatusCode() / 100 == 2) {
-                return handleResponse(methodInvocation.getMethod().getReturnType(), response);
+            HttpRequests.decodeEntity(response);
+            Map<String, String> headers = HttpRequests.getResponseHeaders(response);
+            if (HttpRequests.isSuccess(response)) {
+                // Streaming results close the response once they have been read
+                streaming = isByteStream(resultClass) || ClientRequests.isStreamedResult(methodInvocation.getMethod());
+                return handleResponse(methodInvocation, resultType, resultClass, headers, response);
             } else {
                 throw handleException(headers, response.getEntity().getContent());
             }
         } finally {
-            if (!isByteStream(methodInvocation.getMethod().getReturnType())) {
+            if (!streaming) {
                 closeResponse(response);
             }
         }
     }
 
-    private void closeResponse(CloseableHttpResponse response) throws IOException {
+    private static void closeResponse(CloseableHttpResponse response) throws IOException {
         try {
             EntityUtils.consume(response.getEntity());
         } finally {
@@ -99,25 +144,43 @@ public class HttpClientMethodHandler<T extends Context> implements MethodHandler
         }
     }
 
-    private boolean isByteStream(Class<?> returnType) {
-        return returnType.isAssignableFrom(ByteStream.class);
+    private boolean isByteStream(Class<?> resultClass) {
+        return ByteStream.class.isAssignableFrom(resultClass);
     }
 
     private Throwable handleException(Map<String, String> headers, InputStream inputStream) throws IOException {
         return clientExceptionHandler.handleException(headers, objectMapper, inputStream);
     }
 
-    private Object handleResponse(Class<?> returnType, final CloseableHttpResponse response) throws IOException {
-        if (returnType.equals(Void.TYPE)) {
+    private Object handleResponse(MethodInvocation<T> methodInvocation, Type resultType, Class<?> resultClass,
+            Map<String, String> headers, final CloseableHttpResponse response) throws IOException {
+        if (resultClass.equals(Void.TYPE)) {
             return null;
-        } else if (isByteStream(returnType)) {
-            return createStreamingResponse(response);
+        } else if (isByteStream(resultClass)) {
+            return createStreamingResponse(methodInvocation, response);
+        } else if (ClientRequests.isStreamedResult(methodInvocation.getMethod())) {
+            return ClientRequests.readStreamed(objectMapper, Headers.get(headers, Codecs.CONTENT_TYPE),
+                    response.getEntity().getContent(), methodInvocation.getMethod(), new Closeable() {
+                        @Override
+                        public void close() throws IOException {
+                            closeResponse(response);
+                        }
+                    });
         } else {
-            return objectMapper.readValue(response.getEntity().getContent(), returnType);
+            return ClientRequests.readValue(objectMapper, Headers.get(headers, Codecs.CONTENT_TYPE),
+                    response.getEntity().getContent(), resultType);
         }
     }
 
-    private Object createStreamingResponse(final CloseableHttpResponse response) {
+    private Object createStreamingResponse(final MethodInvocation<T> methodInvocation, final CloseableHttpResponse response) {
+        if (RemoteByteStream.isSeekable(methodInvocation.getMethod(), response)) {
+            return new RemoteByteStream(httpClient, new Callable<HttpPost>() {
+                @Override
+                public HttpPost call() throws Exception {
+                    return createRequest(methodInvocation);
+                }
+            }, response, response.getEntity().getContentLength());
+        }
         if (Jdks.supportsAutoCloseable()) {
             return new ClosableByteStream() {
                 @Override
@@ -146,90 +209,139 @@ public class HttpClientMethodHandler<T extends Context> implements MethodHandler
     }
 
     private HttpPost createRequest(final MethodInvocation<T> methodInvocation) throws IOException, URISyntaxException {
-        URI uri = createRequestUri(methodInvocation);
+        URI uri = HttpRequests.createRequestUri(baseUri, methodInvocation);
 
         final HttpPost request = new HttpPost(uri);
-        setRequestHeaders(request, methodInvocation.getContext().getRequestHeaders());
+        HttpRequests.setRequestHeaders(request, methodInvocation.getContext().getRequestHeaders());
+        request.setHeader(Codecs.ACCEPT, ClientRequests.accept(codec));
+        request.setHeader(Compression.ACCEPT_ENCODING, Compression.SUPPORTED);
         request.setEntity(createEntity(methodInvocation));
 
         return request;
     }
 
-    private StreamingEntity createEntity(final MethodInvocation<T> methodInvocation) {
-        if (methodInvocation.getMethod().getParameterTypes().length == 1 &&
-                methodInvocation.getMethod().getParameterTypes()[0].equals(ByteStream.class)) {
+    private AbstractHttpEntity createEntity(final MethodInvocation<T> methodInvocation) throws IOException {
+        final boolean compress = compressionThreshold != Compression.DISABLED;
+        if (ClientRequests.isByteStreamParameter(methodInvocation.getMethod())) {
 
-            return new StreamingEntity() {
+            StreamingEntity entity = new StreamingEntity() {
                 @Override
                 public void writeTo(OutputStream outstream) throws IOException {
                     ByteStream parameter = (ByteStream) methodInvocation.getParameters()[0];
+                    DeflaterOutputStream compressed = compress ? Compression.encode(Compression.GZIP, outstream) : null;
                     try {
-                        parameter.output(outstream);
+                        parameter.output(compressed != null ? compressed : outstream);
+                        if (compressed != null) {
+                            compressed.finish();
+                        }
+                    } catch (IOException e) {
+                        throw e;
                     } catch (Exception e) {
                         throw new RuntimeException(e);
+                    } finally {
+                        if (compressed != null) {
+                            Compression.end(compressed);
+                        }
                     }
                 }
             };
+            if (compress) {
+                entity.setContentEncoding(Compression.GZIP);
+            }
+            return entity;
+        }
+
+        // Streamed parameters are unbounded so are compressed as they are written rather than buffered. Other
+        // parameters are buffered if small enough, otherwise they are streamed in the same way.
+        if (!ClientRequests.hasStreamedParameter(methodInvocation.getMethod())) {
+            AbstractHttpEntity entity = compress ? createCompressibleEntity(methodInvocation)
+                    : createBufferedEntity(methodInvocation);
+            if (entity != null) {
+                return entity;
+            }
         }
 
         StreamingEntity entity = new StreamingEntity() {
             @Override
             public void writeTo(OutputStream output) throws IOException {
-                JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8);
+                // Closing the generator finishes the compressed stream
+                DeflaterOutputStream compressed = compress ? Compression.encode(Compression.GZIP, output) : null;
                 try {
-                    generator.writeStartObject();
-
-                    int numParams = methodInvocation.getParameters().length;
-
-                    for (int i = 0; i < numParams; i++) {
-                        String name = methodInvocation.getParameterNames()[i];
-                        Object parameter = methodInvocation.getParameters()[i];
-                        Class<?> type = methodInvocation.getMethod().getParameterTypes()[i];
-
-                        if (type.equals(Streamed.class)) {
-                            generator.writeArrayFieldStart(name);
-                            for (Object value : (Streamed) parameter) {
-                                generator.writeObject(value);
-                            }
-                            generator.writeEndArray();
-                        } else {
-                            Validators.require(!type.equals(ByteStream.class), "'ByteStream' parameters must be the first and only argument");
-                            generator.writeObjectField(name, parameter);
-                        }
-                    }
-
-                    generator.writeEndObject();
+                    ClientRequests.writeParameters(objectMapper, codec, methodInvocation,
+                            compressed != null ? compressed : output);
                 } finally {
-                    generator.close();
+                    if (compressed != null) {
+                        Compression.end(compressed);
+                    }
                 }
             }
         };
-        entity.setContentType(ContentType.APPLICATION_JSON.toString());
+        if (compress) {
+            entity.setContentEncoding(Compression.GZIP);
+        }
+        entity.setContentType(codec.getContentType());
         return entity;
     }
 
-    private URI createRequestUri(MethodInvocation<T> methodInvocation) throws URISyntaxException {
-        URIBuilder builder = new URIBuilder(baseUri);
-        builder.setPath(builder.getPath() + (builder.getPath().endsWith("/") ? "" : "/")
-                + methodInvocation.getContext().getServiceName()
-                + "/" + CaseConverter.camelCaseToLowerDash(methodInvocation.getMethod().getName()));
-        return builder.build();
+    /**
+     * Returns an entity of the parameters if they fit within the buffer size, otherwise null so they are streamed
+     */
+    private AbstractHttpEntity createBufferedEntity(MethodInvocation<T> methodInvocation) throws IOException {
+        BoundedOutputStream body = new BoundedOutputStream(bufferSize);
+        try {
+            ClientRequests.writeParameters(objectMapper, codec, methodInvocation, body);
+        } catch (IOException e) {
+            body.release();
+            if (BoundedOutputStream.isLimitExceeded(e)) {
+                return null;
+            }
+            throw e;
+        }
+
+        BufferedEntity entity = new BufferedEntity(body);
+        entity.setContentType(codec.getContentType());
+        return entity;
     }
 
-    private void setRequestHeaders(HttpPost request, Map<String, String> requestHeaders) {
-        for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
-            request.addHeader(entry.getKey(), entry.getValue());
+    /**
+     * Buffers the parameters so that bodies below the threshold can be sent uncompressed. Returns null if they
+     * exceed both the buffer size and the threshold, so they are compressed as they are streamed.
+     */
+    private AbstractHttpEntity createCompressibleEntity(MethodInvocation<T> methodInvocation) throws IOException {
+        BoundedOutputStream body = new BoundedOutputStream(Math.max(bufferSize, compressionThreshold));
+        PooledOutputStream compressed = null;
+        try {
+            ClientRequests.writeParameters(objectMapper, codec, methodInvocation, body);
+            if (body.size() >= compressionThreshold) {
+                compressed = new PooledOutputStream(body.size() / 4);
+                DeflaterOutputStream output = Compression.encode(Compression.GZIP, compressed);
+                try {
+                    body.writeTo(output);
+                    output.finish();
+                } finally {
+                    Compression.end(output);
+                }
+            }
+        } catch (IOException e) {
+            body.release();
+            if (compressed != null) {
+                compressed.release();
+            }
+            if (BoundedOutputStream.isLimitExceeded(e)) {
+                return null;
+            }
+            throw e;
         }
-    }
 
-    private Map<String, String> getResponseHeaders(HttpResponse response) {
-        // TODO ... create a lazy view
-        Header[] headers = response.getAllHeaders();
-        Map<String, String> result = new HashMap<String, String>();
-        for (Header header : headers) {
-            result.put(header.getName(), header.getValue());
+        BufferedEntity entity;
+        if (compressed != null) {
+            body.release();
+            entity = new BufferedEntity(compressed);
+            entity.setContentEncoding(Compression.GZIP);
+        } else {
+            entity = new BufferedEntity(body);
         }
-        result.put(Headers.STATUS.getValue(), String.valueOf(response.getStatusLine().getStatusCode()));
-        return result;
+        entity.setContentType(codec.getContentType());
+        return entity;
     }
 }
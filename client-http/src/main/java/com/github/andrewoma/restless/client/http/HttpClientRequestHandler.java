@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.client.http;
+
+import com.github.andrewoma.restless.client.ClientRequest;
+import com.github.andrewoma.restless.client.ClientRequestHandler;
+import com.github.andrewoma.restless.client.ClientResponse;
+import com.github.andrewoma.restless.core.util.CaseConverter;
+import com.github.andrewoma.restless.core.util.Compression;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Sends serialised requests via HTTP POST to {@code <uri>/<service>/<method>}, or {@code <uri>/<service>} for
+ * requests without a method such as batches. The response body is streamed and must be closed by the caller.
+ */
+public class HttpClientRequestHandler implements ClientRequestHandler {
+    private final CloseableHttpClient httpClient;
+    private final URI baseUri;
+
+    public HttpClientRequestHandler(CloseableHttpClient httpClient, URI baseUri) {
+        this.httpClient = httpClient;
+        this.baseUri = baseUri;
+    }
+
+    @Override
+    public ClientResponse handleRequest(ClientRequest request) {
+        try {
+            String method = request.getMethod() == null ? null : CaseConverter.camelCaseToLowerDash(request.getMethod());
+            HttpPost post = new HttpPost(HttpRequests.createRequestUri(baseUri, request.getService(), method));
+            HttpRequests.setRequestHeaders(post, request.getHeaders());
+            post.setHeader(Compression.ACCEPT_ENCODING, Compression.SUPPORTED);
+            post.setEntity(new InputStreamEntity(request.getRequest()));
+
+            CloseableHttpResponse response = httpClient.execute(post);
+            HttpRequests.decodeEntity(response);
+            InputStream body = response.getEntity() == null ? new ByteArrayInputStream(new byte[0])
+                    : response.getEntity().getContent();
+            return new ClientResponse(HttpRequests.getResponseHeaders(response), body);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client.http;
+
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.util.CaseConverter;
+import com.github.andrewoma.restless.core.util.Compression;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.utils.URIBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps method invocations to HTTP requests and responses. Shared by the HTTP client transports.
+ */
+public class HttpRequests {
+
+    public static URI createRequestUri(URI baseUri, MethodInvocation<? extends Context> methodInvocation) throws URISyntaxException {
+        return createRequestUri(baseUri, methodInvocation.getContext().getServiceName(),
+                CaseConverter.camelCaseToLowerDash(methodInvocation.getMethod().getName()));
+    }
+
+    /**
+     * Returns the uri of {@code <baseUri>/<service>/<method>}, or {@code <baseUri>/<service>} if the method is null
+     */
+    public static URI createRequestUri(URI baseUri, String service, String method) throws URISyntaxException {
+        URIBuilder builder = new URIBuilder(baseUri);
+        builder.setPath(builder.getPath() + (builder.getPath().endsWith("/") ? "" : "/") + service
+                + (method == null ? "" : "/" + method));
+        return builder.build();
+    }
+
+    public static void setRequestHeaders(HttpRequest request, Map<String, String> requestHeaders) {
+        for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+            request.addHeader(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public static Map<String, String> getResponseHeaders(HttpResponse response) {
+        // TODO ... create a lazy view
+        Header[] headers = response.getAllHeaders();
+        Map<String, String> result = new HashMap<String, String>();
+        for (Header header : headers) {
+            result.put(header.getName(), header.getValue());
+        }
+        result.put(Headers.STATUS.getValue(), String.valueOf(response.getStatusLine().getStatusCode()));
+        return result;
+    }
+
+    public static boolean isSuccess(HttpResponse response) {
+        return response.getStatusLine().getStatusCode() / 100 == 2;
+    }
+
+    /**
+     * Decompresses the response unless the http client has already done so via its content compression support
+     */
+    public static void decodeEntity(HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        Header encoding = entity == null ? null : entity.getContentEncoding();
+        if (encoding == null || encoding.getValue().equalsIgnoreCase(Compression.IDENTITY)) {
+            return;
+        }
+
+        if (encoding.getValue().equalsIgnoreCase(Compression.GZIP)) {
+            response.setEntity(new GzipDecompressingEntity(entity));
+        } else if (encoding.getValue().equalsIgnoreCase(Compression.DEFLATE)) {
+            response.setEntity(new DeflateDecompressingEntity(entity));
+        } else {
+            throw new IOException("Unsupported Content-Encoding '" + encoding.getValue() + "'");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client.http;
+
+import com.github.andrewoma.restless.client.ClientRequests;
+import com.github.andrewoma.restless.core.SeekableByteStream;
+import com.github.andrewoma.restless.core.util.Ranges;
+import com.github.andrewoma.restless.core.util.Validators;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
+/**
+ * A seekable result of a server that accepts ranges. The initial response is read by {@link #input()}, while
+ * slices repeat the request with a Range header for the slice. Requests are recreated from the invocation, so
+ * only methods without ByteStream or streamed parameters are seekable. As each slice invokes the server method
+ * again, slices should only be read from idempotent methods that return the same content each time.
+ */
+class RemoteByteStream extends SeekableByteStream implements Closeable {
+    private final CloseableHttpClient httpClient;
+    private final Callable<HttpPost> requests;
+    private final long totalLength;
+    private final long position;
+    private final long length;
+    private CloseableHttpResponse response;
+
+    RemoteByteStream(CloseableHttpClient httpClient, Callable<HttpPost> requests, CloseableHttpResponse response,
+            long length) {
+        this(httpClient, requests, response, length, 0, length);
+    }
+
+    private RemoteByteStream(CloseableHttpClient httpClient, Callable<HttpPost> requests,
+            CloseableHttpResponse response, long totalLength, long position, long length) {
+        this.httpClient = httpClient;
+        this.requests = requests;
+        this.response = response;
+        this.totalLength = totalLength;
+        this.position = position;
+        this.length = length;
+    }
+
+    /**
+     * Returns true if the request can be repeated for ranges of the response
+     */
+    static boolean isSeekable(Method method, CloseableHttpResponse response) {
+        Header acceptRanges = response.getFirstHeader(Ranges.ACCEPT_RANGES);
+        return acceptRanges != null && acceptRanges.getValue().equalsIgnoreCase(Ranges.BYTES)
+                && response.getEntity().getContentLength() >= 0
+                && !ClientRequests.isByteStreamParameter(method) && !ClientRequests.hasStreamedParameter(method);
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public RemoteByteStream slice(long position, long length) {
+        Validators.require(position >= 0 && length >= 0 && position + length <= this.length,
+                "Slice of " + length + " bytes at " + position + " is outside of the stream's " + this.length + " bytes");
+        return new RemoteByteStream(httpClient, requests, null, totalLength, this.position + position, length);
+    }
+
+    @Override
+    public synchronized InputStream input() throws Exception {
+        if (response == null) {
+            response = execute();
+        }
+        return response.getEntity().getContent();
+    }
+
+    private CloseableHttpResponse execute() throws Exception {
+        HttpPost request = requests.call();
+        request.setHeader(Ranges.RANGE, Ranges.range(position, length));
+
+        CloseableHttpResponse response;
+        try {
+            response = httpClient.execute(request);
+        } finally {
+            if (request.getEntity() instanceof BufferedEntity) {
+                ((BufferedEntity) request.getEntity()).release();
+            }
+        }
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            Header contentRange = response.getFirstHeader(Ranges.CONTENT_RANGE);
+            long[] range = contentRange == null ? null : Ranges.parseContentRange(contentRange.getValue());
+            if (status != 206 || range == null || range[0] != position || range[2] != totalLength) {
+                throw new IOException("Expected bytes " + position + "-" + (position + length - 1) + "/" + totalLength
+                        + " but got status " + status + (contentRange == null ? "" : " with " + contentRange.getValue()));
+            }
+            return response;
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the response, discarding any unread content rather than reading it to the end
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (response != null) {
+            response.close();
+            response = null;
+        }
+    }
+}
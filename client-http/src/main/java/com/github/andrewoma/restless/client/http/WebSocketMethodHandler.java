@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.andrewoma.restless.client.ClientExceptionHandler;
+import com.github.andrewoma.restless.client.ClientRequests;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.StreamedJsonValue;
+import com.github.andrewoma.restless.core.StreamedType;
+import com.github.andrewoma.restless.core.StreamingHandler;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.exception.ServerException;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.util.QueueIterator;
+import com.github.andrewoma.restless.core.util.Validators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.CloseReason;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Invokes bidirectional streaming methods, i.e. those taking a {@link StreamingHandler}, over a WebSocket.
+ * Other methods are passed to the delegate.
+ *
+ * <p>The caller passes its own handler, which is the mirror of the server's: values returned by its
+ * {@link StreamingHandler#receive()} are sent to the server on the executor, while values sent by the server are
+ * passed to its {@link StreamingHandler#send(Iterator)} on the calling thread. The call returns once the server
+ * method returns and {@code send} has consumed its values, throwing the exception mapped by the exception handler
+ * from the server's error if the server method failed. Messages are always JSON.
+ */
+public class WebSocketMethodHandler<T extends Context> implements MethodHandler<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(WebSocketMethodHandler.class);
+
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final MethodHandler<T> delegate;
+    private final WebSocketContainer container;
+    private final URI baseUri;
+    private final ObjectMapper objectMapper;
+    private final ClientExceptionHandler exceptionHandler;
+    private final Executor executor;
+
+    public WebSocketMethodHandler(MethodHandler<T> delegate, WebSocketContainer container, URI baseUri,
+            ObjectMapper objectMapper, ClientExceptionHandler exceptionHandler, Executor executor) {
+        this.delegate = delegate;
+        this.container = container;
+        this.baseUri = baseUri;
+        this.objectMapper = objectMapper;
+        this.exceptionHandler = exceptionHandler;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns true if the type declares methods taking a {@link StreamingHandler}
+     */
+    public static boolean hasStreamingMethods(Class<?> type) {
+        for (Method method : type.getMethods()) {
+            if (getStreamingHandlerIndex(method) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int getStreamingHandlerIndex(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        return types.length != 0 && types[types.length - 1].equals(StreamingHandler.class) ? types.length - 1 : -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(MethodInvocation<T> methodInvocation) throws Throwable {
+        Method method = methodInvocation.getMethod();
+        int index = getStreamingHandlerIndex(method);
+        if (index == -1) {
+            return delegate.invoke(methodInvocation);
+        }
+
+        final StreamingHandler<Object> peer = (StreamingHandler<Object>) methodInvocation.getParameters()[index];
+        Validators.require(peer != null, "A StreamingHandler must be passed to '" + method.getName() + "'");
+
+        ObjectReader reader = objectMapper.readerFor(StreamedJsonValue.elementType(objectMapper.getTypeFactory(),
+                method.getGenericParameterTypes()[index], getStreamedType(method.getParameterAnnotations()[index])));
+        Connection connection = new Connection(reader);
+        final Session session = container.connectToServer(connection,
+                createConfig(methodInvocation.getContext().getRequestHeaders()),
+                HttpRequests.createRequestUri(baseUri, methodInvocation));
+
+        try {
+            ByteArrayOutputStream parameters = new ByteArrayOutputStream();
+            ClientRequests.writeParameters(objectMapper, Codecs.json(), methodInvocation, parameters);
+            session.getBasicRemote().sendText(parameters.toString("UTF-8"));
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sendAll(session, peer.receive());
+                }
+            });
+
+            peer.send(connection.incoming);
+            return null;
+        } finally {
+            connection.incoming.cancel();
+            if (session.isOpen()) {
+                session.close();
+            }
+        }
+    }
+
+    private void sendAll(Session session, Iterator<Object> values) {
+        try {
+            while (values.hasNext()) {
+                Object value = values.next();
+                synchronized (session) {
+                    session.getBasicRemote().sendText(objectMapper.writeValueAsString(value));
+                }
+            }
+            // An empty message ends the stream while leaving the connection open for the server's values
+            synchronized (session) {
+                session.getBasicRemote().sendText("");
+            }
+        } catch (Exception e) {
+            LOG.debug("Unable to send values", e);
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "Client failed"));
+            } catch (IOException ignored) {
+                // Already closing
+            }
+        }
+    }
+
+    private static ClientEndpointConfig createConfig(final Map<String, String> requestHeaders) {
+        return ClientEndpointConfig.Builder.create().configurator(new ClientEndpointConfig.Configurator() {
+            @Override
+            public void beforeRequest(Map<String, List<String>> headers) {
+                for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                    headers.put(header.getKey(), Collections.singletonList(header.getValue()));
+                }
+            }
+        }).build();
+    }
+
+    private static StreamedType getStreamedType(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation.annotationType().equals(StreamedType.class)) {
+                return (StreamedType) annotation;
+            }
+        }
+        return null;
+    }
+
+    private class Connection extends Endpoint implements MessageHandler.Whole<String> {
+        private final ObjectReader reader;
+        private final QueueIterator<Object> incoming = new QueueIterator<Object>(QUEUE_CAPACITY);
+        private volatile byte[] error;
+
+        private Connection(ObjectReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            session.addMessageHandler(this);
+            // The server sends a failed method's mapped error as a binary message before closing
+            session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+                @Override
+                public void onMessage(ByteBuffer message) {
+                    byte[] bytes = new byte[message.remaining()];
+                    message.get(bytes);
+                    error = bytes;
+                }
+            });
+        }
+
+        @Override
+        public void onMessage(String message) {
+            try {
+                incoming.add(reader.readValue(message));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                incoming.fail(e);
+            } catch (Exception e) {
+                incoming.fail(e);
+            }
+        }
+
+        @Override
+        public void onClose(Session session, CloseReason closeReason) {
+            if (closeReason.getCloseCode().getCode() == CloseReason.CloseCodes.NORMAL_CLOSURE.getCode()) {
+                incoming.complete();
+            } else {
+                incoming.fail(createException(closeReason));
+            }
+        }
+
+        private Throwable createException(CloseReason closeReason) {
+            String status = closeReason.getReasonPhrase();
+            if (error != null && status != null) {
+                try {
+                    return exceptionHandler.handleException(Collections.singletonMap(Headers.STATUS.getValue(),
+                            status), objectMapper, new ByteArrayInputStream(error));
+                } catch (Exception e) {
+                    LOG.debug("Unable to read the server's error", e);
+                }
+            }
+            return new ServerException(null, "Streaming call closed with code " + closeReason.getCloseCode().getCode()
+                    + (status == null || status.isEmpty() ? "" : ": " + status), null);
+        }
+
+        @Override
+        public void onError(Session session, Throwable t) {
+            incoming.fail(t);
+        }
+    }
+}
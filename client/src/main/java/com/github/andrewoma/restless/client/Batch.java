@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.core.Batches;
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.DefaultContext;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.proxy.ProxyFactory;
+import com.github.andrewoma.restless.core.util.CaseConverter;
+import com.github.andrewoma.restless.core.util.Futures;
+import com.github.andrewoma.restless.core.util.Promise;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Collects calls made on batch proxies and sends them to the server's {@code _batch} service in a single request.
+ * Calls on batch proxies return immediately. Methods returning futures return the future for the call, while other
+ * methods return null (or zero for primitives) and the future for the call is obtained via {@link #result(Object)}:
+ * <pre>
+ * Batch batch = builder.batch();
+ * Foo foo = batch.proxy(Foo.class);
+ * Future&lt;String&gt; bar = batch.result(foo.bar("value"));
+ * batch.execute();
+ * </pre>
+ * Client interceptors are applied as each call is made rather than when the batch is sent. Methods that stream
+ * cannot be batched. Batches are not thread safe.
+ */
+public class Batch {
+    private static final TypeReference<Map<String, String>> HEADERS_TYPE = new TypeReference<Map<String, String>>() {
+    };
+
+    private final ClientRequestHandler requestHandler;
+    private final ObjectMapper objectMapper;
+    private final ClientExceptionHandler exceptionHandler;
+    private final Codec codec;
+    private final List<MethodInterceptor<Context>> interceptors;
+    private final List<Call> calls = new ArrayList<Call>();
+    private Call last;
+
+    public Batch(ClientRequestHandler requestHandler, ObjectMapper objectMapper, ClientExceptionHandler exceptionHandler,
+            Codec codec, List<MethodInterceptor<Context>> interceptors) {
+        this.requestHandler = requestHandler;
+        this.objectMapper = objectMapper;
+        this.exceptionHandler = exceptionHandler;
+        this.codec = codec;
+        this.interceptors = new ArrayList<MethodInterceptor<Context>>(interceptors);
+    }
+
+    /**
+     * Returns a proxy that adds calls to this batch
+     */
+    public <P> P proxy(Class<P> type) {
+        Validators.require(type.isInterface(), "'type' must be an interface");
+
+        final Service service = type.getAnnotation(Service.class);
+        Validators.require(service != null, "'type' must have a 'Service' annotation");
+
+        return ProxyFactory.createProxy(type, interceptors, new MethodHandler<Context>() {
+            @Override
+            public Object invoke(MethodInvocation<Context> methodInvocation) throws Throwable {
+                return add(methodInvocation);
+            }
+        }, new ProxyFactory.ContextFactory<Context>() {
+            @Override
+            public Context create() {
+                return new DefaultContext(service.value());
+            }
+        });
+    }
+
+    /**
+     * Returns the future for the call just made on a batch proxy. The value is ignored, allowing calls of the form
+     * {@code batch.result(proxy.method(...))}.
+     */
+    public <T> Future<T> result(T value) {
+        return result();
+    }
+
+    /**
+     * Returns the future for the call just made on a batch proxy, for use with methods returning void
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> result() {
+        Validators.check(last != null, "'result' must be called immediately after a call on a batch proxy");
+        Future<T> future = (Future<T>) last.promise.getFuture();
+        last = null;
+        return future;
+    }
+
+    /**
+     * Returns the number of calls waiting to be sent
+     */
+    public int size() {
+        return calls.size();
+    }
+
+    /**
+     * Sends the calls made since the last execution in a single request, completing their futures.
+     * A call that fails on the server fails its own future, while a failure to send the batch fails them all.
+     */
+    public void execute() {
+        if (calls.isEmpty()) {
+            return;
+        }
+
+        List<Call> pending = new ArrayList<Call>(calls);
+        calls.clear();
+        last = null;
+        try {
+            send(pending);
+        } catch (Throwable t) {
+            for (Call call : pending) {
+                call.promise.onFailure(t);
+            }
+        }
+    }
+
+    private Object add(MethodInvocation<Context> methodInvocation) {
+        Method method = methodInvocation.getMethod();
+        Type resultType = Futures.getResultType(method);
+        Validators.require(!ClientRequests.isByteStreamParameter(method)
+                && !ByteStream.class.isAssignableFrom(TypeFactory.rawClass(resultType)),
+                "Streaming methods cannot be batched");
+
+        Call call = new Call(methodInvocation, resultType, Futures.promise());
+        calls.add(call);
+        last = call;
+
+        return Futures.isAsync(method) ? call.promise.getFuture() : defaultValue(method.getReturnType());
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        return type.isPrimitive() && !type.equals(Void.TYPE) ? Array.get(Array.newInstance(type, 1), 0) : null;
+    }
+
+    private void send(List<Call> pending) throws Throwable {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(Codecs.CONTENT_TYPE, codec.getContentType());
+        headers.put(Codecs.ACCEPT, ClientRequests.accept(codec));
+
+        ClientResponse response = requestHandler.handleRequest(new ClientRequest(Batches.SERVICE, null, headers,
+                new ByteArrayInputStream(writeCalls(pending))));
+
+        Map<String, String> responseHeaders = response.getHeaders();
+        InputStream input = response.getResponse();
+        try {
+            if (Integer.parseInt(responseHeaders.get(Headers.STATUS.getValue())) / 100 != 2) {
+                throw exceptionHandler.handleException(responseHeaders, objectMapper, input);
+            }
+
+            JsonNode results = readResults(Headers.get(responseHeaders, Codecs.CONTENT_TYPE), input);
+            Validators.check(results.isArray() && results.size() == pending.size(),
+                    "Expected " + pending.size() + " results in the batch response");
+            for (int i = 0; i < pending.size(); i++) {
+                complete(pending.get(i), results.get(i));
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private byte[] writeCalls(List<Call> pending) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        JsonGenerator generator = codec.getFactory().createGenerator(body);
+        generator.setCodec(objectMapper);
+        try {
+            generator.writeStartArray();
+            for (Call call : pending) {
+                MethodInvocation<Context> invocation = call.invocation;
+                generator.writeStartObject();
+                generator.writeStringField(Batches.SERVICE_FIELD, invocation.getContext().getServiceName());
+                generator.writeStringField(Batches.METHOD_FIELD,
+                        CaseConverter.camelCaseToLowerDash(invocation.getMethod().getName()));
+                generator.writeObjectField(Batches.HEADERS_FIELD, invocation.getContext().getRequestHeaders());
+                generator.writeFieldName(Batches.PARAMS_FIELD);
+                ClientRequests.writeParameters(generator, invocation);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        } finally {
+            generator.close();
+        }
+        return body.toByteArray();
+    }
+
+    private JsonNode readResults(String contentType, InputStream input) throws IOException {
+        JsonParser parser = Codecs.defaults().forContentType(contentType).getFactory().createParser(input);
+        try {
+            return objectMapper.readTree(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private void complete(Call call, JsonNode result) {
+        try {
+            JsonNode error = result.get(Batches.ERROR_FIELD);
+            if (error != null) {
+                Map<String, String> headers = objectMapper.convertValue(result.path(Batches.HEADERS_FIELD), HEADERS_TYPE);
+                call.promise.onFailure(exceptionHandler.handleException(headers, objectMapper,
+                        new ByteArrayInputStream(objectMapper.writeValueAsBytes(error))));
+                return;
+            }
+
+            JsonNode value = result.get(Batches.RESULT_FIELD);
+            if (value == null || value.isNull()) {
+                call.promise.onSuccess(null);
+            } else {
+                call.promise.onSuccess(objectMapper.readValue(objectMapper.treeAsTokens(value),
+                        objectMapper.getTypeFactory().constructType(call.resultType)));
+            }
+        } catch (Throwable t) {
+            call.promise.onFailure(t);
+        }
+    }
+
+    private static class Call {
+        private final MethodInvocation<Context> invocation;
+        private final Type resultType;
+        private final Promise<Object> promise;
+
+        Call(MethodInvocation<Context> invocation, Type resultType, Promise<Object> promise) {
+            this.invocation = invocation;
+            this.resultType = resultType;
+            this.promise = promise;
+        }
+    }
+}
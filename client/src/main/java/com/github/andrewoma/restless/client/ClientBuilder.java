@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.DefaultContext;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.ProxyFactory;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builds clients that send requests via a {@link ClientRequestHandler}
+ */
+public class ClientBuilder {
+    private List<MethodInterceptor<Context>> interceptors = new ArrayList<MethodInterceptor<Context>>();
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private ClientRequestHandler requestHandler;
+    private ClientExceptionHandler exceptionHandler = new DefaultClientExceptionHandler();
+    private Codec codec = Codecs.json();
+
+    public ClientBuilder interceptor(MethodInterceptor<Context> interceptor) {
+        interceptors.add(interceptor);
+        return this;
+    }
+
+    public ClientBuilder interceptors(Collection<MethodInterceptor<Context>> interceptors) {
+        this.interceptors.addAll(interceptors);
+        return this;
+    }
+
+    public ClientBuilder objectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        return this;
+    }
+
+    public ClientBuilder requestHandler(ClientRequestHandler requestHandler) {
+        this.requestHandler = requestHandler;
+        return this;
+    }
+
+    public ClientBuilder exceptionHandler(ClientExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+        return this;
+    }
+
+    /**
+     * Sets the codec used for requests and preferred for responses. Defaults to JSON.
+     */
+    public ClientBuilder codec(Codec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    public <P> P build(Class<P> type) {
+        Validators.require(type.isInterface(), "'type' must be an interface");
+        Validators.require(requestHandler != null, "'requestHandler' is required");
+
+        final Service service = type.getAnnotation(Service.class);
+        Validators.require(service != null, "'type' must have a 'Service' annotation");
+
+        ClientRequestMethodHandler<Context> handler = new ClientRequestMethodHandler<Context>(requestHandler,
+                objectMapper, exceptionHandler, codec);
+
+        return ProxyFactory.createProxy(type, interceptors, handler, new ProxyFactory.ContextFactory<Context>() {
+            @Override
+            public Context create() {
+                return new DefaultContext(service.value());
+            }
+        });
+    }
+
+    /**
+     * Creates a batch that sends calls made on its proxies to the server in a single request
+     */
+    public Batch batch() {
+        Validators.require(requestHandler != null, "'requestHandler' is required");
+        return new Batch(requestHandler, objectMapper, exceptionHandler, codec, interceptors);
+    }
+}
@@ -26,14 +26,26 @@ import java.io.InputStream;
 import java.util.Map;
 
 public class ClientRequest {
+    private String service;
+    private String method;
     private Map<String, String> headers;
     private InputStream request;
 
-    public ClientRequest(Map<String, String> headers, InputStream request) {
+    public ClientRequest(String service, String method, Map<String, String> headers, InputStream request) {
+        this.service = service;
+        this.method = method;
         this.headers = headers;
         this.request = request;
     }
 
+    public String getService() {
+        return service;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
     public Map<String, String> getHeaders() {
         return headers;
     }
@@ -22,6 +22,10 @@
 
 package com.github.andrewoma.restless.client;
 
+/**
+ * Transports a serialised request to a server, returning the serialised response. The response headers
+ * include the status under {@link com.github.andrewoma.restless.core.Headers#STATUS}.
+ */
 public interface ClientRequestHandler {
     ClientResponse handleRequest(ClientRequest request);
 }
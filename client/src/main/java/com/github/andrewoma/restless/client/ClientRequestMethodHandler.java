@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.ClosableByteStream;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.util.Futures;
+import com.github.andrewoma.restless.core.util.Jdks;
+import com.github.andrewoma.restless.core.util.Promise;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A method handler that serialises invocations and sends them via a {@link ClientRequestHandler}.
+ * Request bodies are buffered in memory. As the request handler is synchronous, methods returning futures
+ * return a future that has already completed.
+ */
+public class ClientRequestMethodHandler<T extends Context> implements MethodHandler<T> {
+    private final ClientRequestHandler requestHandler;
+    private final Codec codec;
+    private final ObjectMapper objectMapper;
+    private final ClientExceptionHandler clientExceptionHandler;
+
+    public ClientRequestMethodHandler(ClientRequestHandler requestHandler, ObjectMapper objectMapper,
+            ClientExceptionHandler clientExceptionHandler) {
+        this(requestHandler, objectMapper, clientExceptionHandler, Codecs.json());
+    }
+
+    public ClientRequestMethodHandler(ClientRequestHandler requestHandler, ObjectMapper objectMapper,
+            ClientExceptionHandler clientExceptionHandler, Codec codec) {
+        this.requestHandler = requestHandler;
+        this.clientExceptionHandler = clientExceptionHandler;
+        this.codec = codec;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation<T> methodInvocation) throws Throwable {
+        Method method = methodInvocation.getMethod();
+        if (!Futures.isAsync(method)) {
+            return call(methodInvocation);
+        }
+
+        Promise<Object> promise = Futures.promise();
+        try {
+            promise.onSuccess(call(methodInvocation));
+        } catch (Throwable t) {
+            promise.onFailure(t);
+        }
+        return promise.getFuture();
+    }
+
+    private Object call(MethodInvocation<T> methodInvocation) throws Throwable {
+        Method method = methodInvocation.getMethod();
+        Map<String, String> requestHeaders = new HashMap<String, String>(
+                methodInvocation.getContext().getRequestHeaders());
+        requestHeaders.put(Codecs.ACCEPT, ClientRequests.accept(codec));
+        if (!ClientRequests.isByteStreamParameter(method)) {
+            requestHeaders.put(Codecs.CONTENT_TYPE, codec.getContentType());
+        }
+        ClientResponse response = requestHandler.handleRequest(new ClientRequest(
+                methodInvocation.getContext().getServiceName(), method.getName(), requestHeaders,
+                createBody(methodInvocation)));
+
+        Type resultType = Futures.getResultType(method);
+        Class<?> resultClass = TypeFactory.rawClass(resultType);
+
+        Map<String, String> headers = response.getHeaders();
+        InputStream input = response.getResponse();
+        try {
+            if (Integer.parseInt(headers.get(Headers.STATUS.getValue())) / 100 != 2) {
+                throw clientExceptionHandler.handleException(headers, objectMapper, input);
+            } else if (ByteStream.class.isAssignableFrom(resultClass)) {
+                Object result = createStreamingResponse(input);
+                input = null;
+                return result;
+            } else if (ClientRequests.isStreamedResult(method)) {
+                Object result = ClientRequests.readStreamed(objectMapper, Headers.get(headers, Codecs.CONTENT_TYPE),
+                        input, method, null);
+                input = null;
+                return result;
+            } else if (resultClass.equals(Void.TYPE)) {
+                return null;
+            } else {
+                return ClientRequests.readValue(objectMapper, Headers.get(headers, Codecs.CONTENT_TYPE), input,
+                        resultType);
+            }
+        } finally {
+            if (input != null) {
+                input.close();
+            }
+        }
+    }
+
+    private InputStream createBody(MethodInvocation<T> methodInvocation) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (ClientRequests.isByteStreamParameter(methodInvocation.getMethod())) {
+            ((ByteStream) methodInvocation.getParameters()[0]).output(body);
+        } else {
+            ClientRequests.writeParameters(objectMapper, codec, methodInvocation, body);
+        }
+        return new ByteArrayInputStream(body.toByteArray());
+    }
+
+    private Object createStreamingResponse(final InputStream input) {
+        if (Jdks.supportsAutoCloseable()) {
+            return new ClosableByteStream() {
+                @Override
+                public InputStream input() throws Exception {
+                    return input;
+                }
+
+                @Override
+                public void close() throws Exception {
+                    input.close();
+                }
+            };
+        } else {
+            return new ByteStream() {
+                @Override
+                public InputStream input() throws Exception {
+                    return input;
+                }
+
+                @Override
+                public void close() throws Exception {
+                    input.close();
+                }
+            };
+        }
+    }
+}
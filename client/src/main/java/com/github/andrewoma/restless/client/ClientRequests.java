@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.StreamedJsonValue;
+import com.github.andrewoma.restless.core.StreamedType;
+import com.github.andrewoma.restless.core.StreamingHandler;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.util.Futures;
+import com.github.andrewoma.restless.core.util.Streams;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+/**
+ * Serialises method invocations into request bodies. Shared by the client transports.
+ */
+public class ClientRequests {
+
+    /**
+     * Returns true if the method takes a single {@link ByteStream} parameter that is sent as the request body
+     */
+    public static boolean isByteStreamParameter(Method method) {
+        return method.getParameterTypes().length == 1 && method.getParameterTypes()[0].equals(ByteStream.class);
+    }
+
+    /**
+     * Returns true if the method takes a {@link Streamed} or Publisher parameter, meaning the size of the request
+     * is unbounded
+     */
+    public static boolean hasStreamedParameter(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        return types.length != 0 && Streams.isStreamedParameter(types[types.length - 1]);
+    }
+
+    /**
+     * Returns true if the method (or the Future it returns) results in {@link Streamed} values, or an Iterator,
+     * Iterable or Stream, read lazily from the response
+     */
+    public static boolean isStreamedResult(Method method) {
+        return Streams.isStreamed(TypeFactory.rawClass(Futures.getResultType(method)));
+    }
+
+    /**
+     * Writes the parameters of the invocation as an object in the codec's format
+     */
+    public static void writeParameters(ObjectMapper objectMapper, Codec codec,
+            MethodInvocation<? extends Context> methodInvocation, OutputStream output) throws IOException {
+
+        JsonGenerator generator = codec.getFactory().createGenerator(output);
+        generator.setCodec(objectMapper);
+        try {
+            writeParameters(generator, methodInvocation);
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Writes the parameters of the invocation as an object to a generator that has an ObjectMapper as its codec
+     */
+    public static void writeParameters(JsonGenerator generator, MethodInvocation<? extends Context> methodInvocation)
+            throws IOException {
+
+        generator.writeStartObject();
+
+        int numParams = methodInvocation.getParameters().length;
+
+        for (int i = 0; i < numParams; i++) {
+            String name = methodInvocation.getParameterNames()[i];
+            Object parameter = methodInvocation.getParameters()[i];
+            Class<?> type = methodInvocation.getMethod().getParameterTypes()[i];
+
+            if (type.equals(StreamingHandler.class)) {
+                // Messages are exchanged over the streaming connection rather than sent as a parameter
+                continue;
+            } else if (Streams.isStreamedParameter(type) && parameter != null) {
+                Validators.require(i == numParams - 1, "Streamed parameters must be the last argument");
+                generator.writeArrayFieldStart(name);
+                writeStreamed(generator, Streams.toStreamed(parameter));
+                generator.writeEndArray();
+            } else {
+                Validators.require(!type.equals(ByteStream.class), "'ByteStream' parameters must be the first and only argument");
+                generator.writeObjectField(name, parameter);
+            }
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static void writeStreamed(JsonGenerator generator, Streamed<?> parameter) throws IOException {
+        try {
+            for (Object value : parameter) {
+                generator.writeObject(value);
+            }
+        } finally {
+            try {
+                parameter.close();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the Accept header for requests preferring the codec. JSON is also accepted as it is used for errors.
+     */
+    public static String accept(Codec codec) {
+        return codec.matches(Codecs.JSON) ? Codecs.JSON : codec.getContentType() + ", " + Codecs.JSON + ";q=0.5";
+    }
+
+    /**
+     * Reads a value from the response using the codec matching its Content-Type, defaulting to JSON
+     */
+    public static Object readValue(ObjectMapper objectMapper, String contentType, InputStream input, Type type)
+            throws IOException {
+
+        JsonParser parser = Codecs.defaults().forContentType(contentType).getFactory().createParser(input);
+        try {
+            return objectMapper.readValue(parser, objectMapper.getTypeFactory().constructType(type));
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Returns values of the method's result type that read the response lazily as they are iterated, closing the
+     * resource once they have all been read or the result is closed. Nothing is read until iteration starts.
+     */
+    public static Object readStreamed(ObjectMapper objectMapper, String contentType, InputStream input,
+            Method method, Closeable resource) {
+
+        Type resultType = Futures.getResultType(method);
+        TypeFactory typeFactory = objectMapper.getTypeFactory();
+        JavaType elementType = StreamedJsonValue.elementType(typeFactory, resultType,
+                method.getAnnotation(StreamedType.class));
+        return Streams.fromStreamed(new StreamedJsonValue<Object>(Codecs.defaults().forContentType(contentType)
+                .getFactory(), input, objectMapper.readerFor(elementType), resource), TypeFactory.rawClass(resultType));
+    }
+}
@@ -22,14 +22,14 @@
 
 package com.github.andrewoma.restless.client;
 
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.util.Map;
 
 public class ClientResponse {
     private Map<String, String> headers;
-    private OutputStream response;
+    private InputStream response;
 
-    public ClientResponse(Map<String, String> headers, OutputStream response) {
+    public ClientResponse(Map<String, String> headers, InputStream response) {
         this.headers = headers;
         this.response = response;
     }
@@ -38,7 +38,7 @@ public class ClientResponse {
         return headers;
     }
 
-    public OutputStream getResponse() {
+    public InputStream getResponse() {
         return response;
     }
 }
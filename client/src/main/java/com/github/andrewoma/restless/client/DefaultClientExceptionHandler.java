@@ -32,6 +32,7 @@ import com.github.andrewoma.restless.core.exception.ConcurrentModificationExcept
 import com.github.andrewoma.restless.core.exception.ConflictException;
 import com.github.andrewoma.restless.core.exception.GatewayTimeoutException;
 import com.github.andrewoma.restless.core.exception.NotFoundException;
+import com.github.andrewoma.restless.core.exception.PayloadTooLargeException;
 import com.github.andrewoma.restless.core.exception.RemoteException;
 import com.github.andrewoma.restless.core.exception.ServerException;
 import com.github.andrewoma.restless.core.exception.ServiceUnavailableException;
@@ -62,6 +63,7 @@ public class DefaultClientExceptionHandler implements ClientExceptionHandler {
                 new ConflictException("", "", ""),
                 new GatewayTimeoutException("", "", ""),
                 new NotFoundException("", "", ""),
+                new PayloadTooLargeException("", "", ""),
                 new ServerException("", "", ""),
                 new ServiceUnavailableException("", "", ""),
                 new TooManyRequestsException("", "", ""),
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client;
+
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.SeekableByteStream;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads {@link ByteStream} results to files. Seekable results are fetched in segments over parallel
+ * connections, and each segment resumes from where it stopped if its connection fails. Other results are
+ * written sequentially. The http client's connection pool must allow a connection per segment for the
+ * segments to be fetched in parallel.
+ *
+ * <p>Each segment, and each retry of a segment, calls the server method again with a Range header. Only download
+ * seekable results of idempotent methods that return the same content on every call; otherwise segments may
+ * come from different results, or the method's side effects may be repeated.
+ */
+public class Downloads {
+    public static final int DEFAULT_SEGMENTS = 4;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Downloads() {
+    }
+
+    public static void toFile(ByteStream source, File target) throws Exception {
+        toFile(source, target, DEFAULT_SEGMENTS, DEFAULT_MAX_RETRIES, null);
+    }
+
+    /**
+     * Downloads the source to the target, splitting seekable sources into at most {@code segments} segments of at
+     * least {@link #MIN_SEGMENT_SIZE} bytes. Each segment resumes after I/O failures, giving up after
+     * {@code maxRetries} attempts that make no progress. Segments are fetched using the executor, or a shared pool
+     * if it is null. The source is closed. Segments repeat the source's request, see {@link Downloads}.
+     */
+    public static void toFile(ByteStream source, File target, int segments, int maxRetries, ExecutorService executor)
+            throws Exception {
+
+        Validators.require(segments > 0, "'segments' must be positive");
+        if (!(source instanceof SeekableByteStream)) {
+            try {
+                source.toFile(target);
+            } finally {
+                source.close();
+            }
+            return;
+        }
+
+        SeekableByteStream seekable = (SeekableByteStream) source;
+        long length = seekable.getLength();
+        // Segments are fetched via ranges, so the initial response is not needed
+        seekable.close();
+
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            file.setLength(length);
+            download(seekable, file.getChannel(), length, segments, maxRetries,
+                    executor == null ? DefaultExecutor.INSTANCE : executor);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void download(SeekableByteStream source, FileChannel channel, long length, int segments,
+            int maxRetries, ExecutorService executor) throws Exception {
+
+        int count = (int) Math.max(1, Math.min(segments, length / MIN_SEGMENT_SIZE));
+        long segmentSize = (length + count - 1) / count;
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(count);
+        try {
+            for (long position = 0; position < length; position += segmentSize) {
+                futures.add(executor.submit(new Segment(source, channel, position,
+                        Math.min(segmentSize, length - position), maxRetries)));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static class Segment implements Callable<Void> {
+        private final SeekableByteStream source;
+        private final FileChannel channel;
+        private final long position;
+        private final long length;
+        private final int maxRetries;
+
+        private Segment(SeekableByteStream source, FileChannel channel, long position, long length, int maxRetries) {
+            this.source = source;
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+            this.maxRetries = maxRetries;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            long written = 0;
+            int failures = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (written < length) {
+                long copied;
+                try {
+                    copied = copy(source.slice(position + written, length - written), position + written, buffer);
+                } catch (IOException e) {
+                    if (++failures > maxRetries || Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    continue;
+                }
+                written += copied;
+                // Only attempts that make no progress count as failures, so long transfers can resume repeatedly
+                if (copied == 0 && written < length && ++failures > maxRetries) {
+                    throw new EOFException("Segment ended after " + written + " of " + length + " bytes");
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Copies the slice to the file at the given offset, returning the number of bytes written before it ended
+         * or failed. Failures are rethrown only if nothing was written, so partial progress is kept.
+         */
+        private long copy(SeekableByteStream slice, long offset, ByteBuffer buffer) throws Exception {
+            long written = 0;
+            try {
+                InputStream input = slice.input();
+                try {
+                    ReadableByteChannel source = Channels.newChannel(input);
+                    buffer.clear();
+                    while (written < slice.getLength() && source.read(buffer) != -1) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            written += channel.write(buffer, offset + written);
+                        }
+                        buffer.clear();
+                    }
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                if (written == 0) {
+                    throw e;
+                }
+            } finally {
+                slice.close();
+            }
+            return written;
+        }
+    }
+
+    private static class DefaultExecutor {
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "restless-download-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
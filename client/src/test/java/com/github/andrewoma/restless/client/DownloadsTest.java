@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.client;
+
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.SeekableByteStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class DownloadsTest {
+    private final byte[] bytes = new byte[(int) (3 * Downloads.MIN_SEGMENT_SIZE + 1000)];
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(1).nextBytes(bytes);
+        target = File.createTempFile("restless", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        target.delete();
+    }
+
+    @Test
+    public void shouldDownloadSegmentsInParallel() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        Downloads.toFile(new FlakyStream(bytes, 0, bytes.length, Integer.MAX_VALUE, requests), target);
+
+        assertThat(target).hasBinaryContent(bytes);
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldResumeSegmentsAfterFailures() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        Downloads.toFile(new FlakyStream(bytes, 0, bytes.length, 100000, requests), target, 2, 1, null);
+
+        assertThat(target).hasBinaryContent(bytes);
+        assertThat(requests.get()).isGreaterThan(2);
+    }
+
+    @Test
+    public void shouldFailAfterRetriesWithoutProgress() throws Exception {
+        try {
+            Downloads.toFile(new FlakyStream(bytes, 0, bytes.length, 0, new AtomicInteger()), target, 2, 2, null);
+            fail("Expected exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).isEqualTo("Connection reset");
+        }
+    }
+
+    @Test
+    public void shouldWriteStreamsThatCannotSeek() throws Exception {
+        Downloads.toFile(new ByteStream() {
+            @Override
+            public InputStream input() {
+                return new ByteArrayInputStream(bytes);
+            }
+        }, target);
+
+        assertThat(target).hasBinaryContent(bytes);
+    }
+
+    /**
+     * A stream whose slices fail after reading {@code failAfter} bytes
+     */
+    private static class FlakyStream extends SeekableByteStream {
+        private final byte[] bytes;
+        private final int position;
+        private final int length;
+        private final int failAfter;
+        private final AtomicInteger requests;
+
+        FlakyStream(byte[] bytes, int position, int length, int failAfter, AtomicInteger requests) {
+            this.bytes = bytes;
+            this.position = position;
+            this.length = length;
+            this.failAfter = failAfter;
+            this.requests = requests;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public SeekableByteStream slice(long position, long length) {
+            return new FlakyStream(bytes, (int) (this.position + position), (int) length, failAfter, requests);
+        }
+
+        @Override
+        public InputStream input() {
+            requests.incrementAndGet();
+            return new InputStream() {
+                private int read;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] buffer = new byte[1];
+                    return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    if (read == length) {
+                        return -1;
+                    }
+                    if (read >= failAfter) {
+                        throw new IOException("Connection reset");
+                    }
+                    int result = Math.min(count, Math.min(length - read, failAfter - read));
+                    System.arraycopy(bytes, position + read, buffer, offset, result);
+                    read += result;
+                    return result;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.core;
+
+/**
+ * Describes the wire format of batches, which execute many calls in a single request to the {@code _batch} service.
+ * The request body is an array of objects with {@code service}, {@code method}, {@code headers} and {@code params}
+ * fields, with params encoded as they would be for a single call. The response body is an array of objects in
+ * the same order, each with the call's response {@code headers} (including the status) and either a
+ * {@code result} or a mapped {@code error}.
+ */
+public class Batches {
+    public static final String SERVICE = "_batch";
+
+    public static final String SERVICE_FIELD = "service";
+    public static final String METHOD_FIELD = "method";
+    public static final String HEADERS_FIELD = "headers";
+    public static final String PARAMS_FIELD = "params";
+    public static final String RESULT_FIELD = "result";
+    public static final String ERROR_FIELD = "error";
+}
@@ -22,10 +22,14 @@
 
 package com.github.andrewoma.restless.core;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public abstract class ByteStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     public InputStream input() throws Exception {
         throw new UnsupportedOperationException();
     }
@@ -37,6 +41,35 @@ public abstract class ByteStream {
     public void close() throws Exception {
     }
 
+    /**
+     * Writes the bytes to a file. The input is copied through a buffer; {@link FileByteStream} overrides this to
+     * transfer between file channels without one.
+     */
+    public void toFile(File file) throws Exception {
+        InputStream input = input();
+        try {
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Factory method for a stream of the bytes of a file, which transports send without copying through the heap
+     */
+    public static FileByteStream fromFile(File file) {
+        return new FileByteStream(file);
+    }
+
     /**
      * Factory method that allows writing to an output stream via SAM
      */
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core;
+
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A stream of the bytes of a file, or a region of it. Transports recognise file streams and send them with
+ * {@link FileChannel#transferTo}, allowing the kernel to copy directly from the page cache to the socket.
+ */
+public class FileByteStream extends SeekableByteStream {
+    private final File file;
+    private final long position;
+    private final long length;
+
+    public FileByteStream(File file) {
+        this(file, 0, file.length());
+    }
+
+    public FileByteStream(File file, long position, long length) {
+        Validators.require(position >= 0 && length >= 0, "'position' and 'length' must not be negative");
+        this.file = file;
+        this.position = position;
+        this.length = length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public FileByteStream slice(long position, long length) {
+        Validators.require(position >= 0 && length >= 0 && position + length <= this.length,
+                "Slice of " + length + " bytes at " + position + " is outside of the stream's " + this.length + " bytes");
+        return new FileByteStream(file, this.position + position, length);
+    }
+
+    /**
+     * Opens a channel for reading the file. The caller must close it.
+     */
+    public FileChannel openChannel() throws IOException {
+        return new RandomAccessFile(file, "r").getChannel();
+    }
+
+    /**
+     * Transfers the bytes to the target, without copying them through the heap if the target is a socket or file
+     */
+    public void transferTo(WritableByteChannel target) throws IOException {
+        FileChannel channel = openChannel();
+        try {
+            long offset = position;
+            long end = position + length;
+            while (offset < end) {
+                long transferred = channel.transferTo(offset, end - offset, target);
+                if (transferred <= 0) {
+                    Validators.check(channel.size() >= end, "File '" + file + "' was truncated while transferring");
+                }
+                offset += transferred;
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public InputStream input() throws Exception {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            input.getChannel().position(position);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        return position == 0 && length == file.length() ? input : new BoundedInputStream(input, length);
+    }
+
+    @Override
+    public void output(OutputStream output) throws Exception {
+        transferTo(Channels.newChannel(output));
+    }
+
+    @Override
+    public void toFile(File target) throws Exception {
+        FileOutputStream output = new FileOutputStream(target);
+        try {
+            transferTo(output.getChannel());
+        } finally {
+            output.close();
+        }
+    }
+
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream input;
+        private long remaining;
+
+        private BoundedInputStream(InputStream input, long remaining) {
+            this.input = input;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = input.read();
+            if (value != -1) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = input.read(bytes, offset, (int) Math.min(count, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
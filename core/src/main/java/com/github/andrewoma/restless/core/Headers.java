@@ -22,6 +22,8 @@
 
 package com.github.andrewoma.restless.core;
 
+import java.util.Map;
+
 public enum Headers {
     REQUEST_ID("RID"),
     CORRELATION_ID("CID"),
@@ -36,4 +38,37 @@ public enum Headers {
     public String getValue() {
         return value;
     }
+
+    /**
+     * Returns the value of the named header, ignoring case as HTTP header names are case insensitive
+     */
+    public static String get(Map<String, String> headers, String name) {
+        String value = headers.get(name);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the quality of an entry in a header such as Accept or Accept-Encoding, defaulting to 1
+     */
+    public static double quality(String entry) {
+        for (String parameter : entry.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
 }
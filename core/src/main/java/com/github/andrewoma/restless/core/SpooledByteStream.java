@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core;
+
+import com.github.andrewoma.restless.core.exception.PayloadTooLargeException;
+import com.github.andrewoma.restless.core.util.BufferPool;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A stream that has been read completely so that it can be read again. Streams up to the memory threshold
+ * are held in pooled chunks, while larger streams are spooled to a temporary file that is memory mapped so
+ * the bytes stay off the heap. {@link #close()} releases the chunks or deletes the file.
+ */
+public class SpooledByteStream extends ByteStream {
+    public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final BufferPool POOL = BufferPool.getDefault();
+
+    private final long length;
+    private List<byte[]> chunks;
+    private File file;
+    private ByteBuffer mapped;
+
+    private SpooledByteStream(long length, List<byte[]> chunks, File file, ByteBuffer mapped) {
+        this.length = length;
+        this.chunks = chunks;
+        this.file = file;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Reads the input until the end of the stream, spooling it to a temporary file once it exceeds the memory
+     * threshold. Throws {@link PayloadTooLargeException} if the input exceeds {@code maxSize} bytes.
+     * The input is not closed.
+     */
+    public static SpooledByteStream spool(InputStream input, int memoryThreshold, long maxSize) throws IOException {
+        Validators.require(memoryThreshold >= 0 && maxSize >= 0, "'memoryThreshold' and 'maxSize' must not be negative");
+
+        List<byte[]> chunks = new ArrayList<byte[]>();
+        long length = 0;
+        try {
+            while (length <= memoryThreshold) {
+                int offset = (int) (length % CHUNK_SIZE);
+                if (offset == 0) {
+                    chunks.add(POOL.acquire(CHUNK_SIZE));
+                }
+                int read = input.read(chunks.get(chunks.size() - 1), offset, CHUNK_SIZE - offset);
+                if (read == -1) {
+                    return new SpooledByteStream(length, chunks, null, null);
+                }
+                length = checkSize(length + read, maxSize);
+            }
+            return spoolToFile(input, chunks, length, maxSize);
+        } catch (IOException e) {
+            release(chunks);
+            throw e;
+        } catch (RuntimeException e) {
+            release(chunks);
+            throw e;
+        }
+    }
+
+    private static SpooledByteStream spoolToFile(InputStream input, List<byte[]> chunks, long length, long maxSize)
+            throws IOException {
+
+        File file = File.createTempFile("restless-spool", ".tmp");
+        boolean spooled = false;
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = output.getChannel();
+            long remaining = length;
+            for (byte[] chunk : chunks) {
+                int count = (int) Math.min(remaining, CHUNK_SIZE);
+                writeFully(channel, ByteBuffer.wrap(chunk, 0, count));
+                remaining -= count;
+            }
+            release(chunks);
+
+            byte[] buffer = POOL.acquire(CHUNK_SIZE);
+            try {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    length = checkSize(length + read, maxSize);
+                    writeFully(channel, ByteBuffer.wrap(buffer, 0, read));
+                }
+            } finally {
+                POOL.release(buffer);
+            }
+
+            // Mappings are limited to 2GB, larger files are read from the file system instead
+            ByteBuffer mapped = length <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, length) : null;
+            spooled = true;
+            return new SpooledByteStream(length, Collections.<byte[]>emptyList(), file, mapped);
+        } finally {
+            output.close();
+            if (!spooled) {
+                delete(file);
+            }
+        }
+    }
+
+    private static long checkSize(long length, long maxSize) {
+        if (length > maxSize) {
+            throw new PayloadTooLargeException(null, "Request body exceeds the maximum size of " + maxSize + " bytes", null);
+        }
+        return length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            // Some platforms refuse to delete files that are still mapped
+            file.deleteOnExit();
+        }
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns true if the stream is held in memory rather than spooled to a file
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Returns a new stream of the bytes each time it is called, so the bytes can be read more than once
+     */
+    @Override
+    public synchronized InputStream input() throws IOException {
+        Validators.check(chunks != null, "The stream has been closed");
+        if (mapped != null) {
+            return new ByteBufferInputStream(mapped.duplicate());
+        }
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+
+        List<InputStream> inputs = new ArrayList<InputStream>(chunks.size());
+        long remaining = length;
+        for (byte[] chunk : chunks) {
+            int count = (int) Math.min(remaining, CHUNK_SIZE);
+            inputs.add(new ByteArrayInputStream(chunk, 0, count));
+            remaining -= count;
+        }
+        return new SequenceInputStream(Collections.enumeration(inputs));
+    }
+
+    @Override
+    public synchronized void output(OutputStream output) throws IOException {
+        Validators.check(chunks != null, "The stream has been closed");
+        if (file == null) {
+            long remaining = length;
+            for (byte[] chunk : chunks) {
+                int count = (int) Math.min(remaining, CHUNK_SIZE);
+                output.write(chunk, 0, count);
+                remaining -= count;
+            }
+            return;
+        }
+
+        FileByteStream stream = new FileByteStream(file, 0, length);
+        stream.transferTo(Channels.newChannel(output));
+    }
+
+    /**
+     * Returns the chunks to the pool or deletes the spooled file. The stream cannot be read once closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (chunks == null) {
+            return;
+        }
+        release(chunks);
+        chunks = null;
+        mapped = null;
+        if (file != null) {
+            delete(file);
+            file = null;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(count, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static void release(List<byte[]> chunks) {
+        for (byte[] chunk : chunks) {
+            POOL.release(chunk);
+        }
+        chunks.clear();
+    }
+}
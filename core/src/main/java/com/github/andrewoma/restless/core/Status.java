@@ -24,6 +24,9 @@ package com.github.andrewoma.restless.core;
 
 public enum Status {
     OK(200),
+    PARTIAL_CONTENT(206),
+    PAYLOAD_TOO_LARGE(413),
+    RANGE_NOT_SATISFIABLE(416),
     ERROR(500);
 
     private int code;
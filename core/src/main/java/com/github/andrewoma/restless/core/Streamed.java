@@ -25,8 +25,32 @@ package com.github.andrewoma.restless.core;
 import java.util.Collections;
 import java.util.Iterator;
 
+/**
+ * A sequence of values that is sent or received incrementally, so that only the current value needs to be held
+ * in memory. A method may take a single Streamed parameter, which must be its last parameter. Streamed values
+ * received from a remote call hold the underlying request or response open until they have been fully iterated
+ * or closed, and can only be iterated once.
+ */
 public abstract class Streamed<T> implements Iterable<T> {
     public Iterator<T> iterator() {
         return Collections.<T>emptySet().iterator();
     }
+
+    /**
+     * Releases any resources held by the values, e.g. a database cursor or an open response
+     */
+    public void close() throws Exception {
+    }
+
+    /**
+     * Factory method that streams the values of an iterable
+     */
+    public static <T> Streamed<T> of(final Iterable<T> values) {
+        return new Streamed<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return values.iterator();
+            }
+        };
+    }
 }
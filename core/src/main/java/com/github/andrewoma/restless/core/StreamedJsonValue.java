@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily reads the elements of an array as it is iterated, so that only one element is held in memory at a time.
+ * Nothing is read until iteration starts, so values can be created on threads that must not block. A null in
+ * place of the array is treated as empty. The parser and resource are closed once the array ends, if reading
+ * fails, or when the value is closed.
+ */
+public class StreamedJsonValue<T> extends Streamed<T> {
+    private final ObjectReader reader;
+    private final Closeable resource;
+    private JsonFactory factory;
+    private InputStream input;
+    private JsonParser parser;
+
+    private boolean iterated;
+    private boolean closed;
+
+    /**
+     * Creates a value reading from a parser positioned at, or immediately before, the start of the array
+     */
+    public StreamedJsonValue(JsonParser parser, ObjectReader reader, Closeable resource) {
+        this.parser = parser;
+        this.reader = reader;
+        this.resource = resource;
+    }
+
+    /**
+     * Creates a value reading from a document consisting of the array, creating the parser once iterated
+     */
+    public StreamedJsonValue(JsonFactory factory, InputStream input, ObjectReader reader, Closeable resource) {
+        this.factory = factory;
+        this.input = input;
+        this.reader = reader;
+        this.resource = resource;
+    }
+
+    /**
+     * Returns the element type of a streamed type such as {@code Streamed<T>} or {@code Iterator<T>}, preferring
+     * the type given by a {@link StreamedType} annotation
+     */
+    public static JavaType elementType(TypeFactory typeFactory, Type type, StreamedType streamedType) {
+        if (streamedType != null) {
+            return typeFactory.constructType(streamedType.value());
+        }
+        JavaType javaType = typeFactory.constructType(type);
+        JavaType element = javaType.containedTypeCount() == 1 ? javaType.containedType(0) : null;
+        return element != null ? element : typeFactory.constructType(Object.class);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Validators.check(!iterated, "Streamed values can only be iterated once");
+        iterated = true;
+
+        return new Iterator<T>() {
+            private boolean started;
+            private boolean fetched;
+            private boolean done;
+            private T next;
+
+            @Override
+            public boolean hasNext() {
+                if (!fetched && !done) {
+                    fetch();
+                }
+                return !done;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T value = next;
+                next = null;
+                fetched = false;
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private void fetch() {
+                try {
+                    if (!started) {
+                        started = true;
+                        if (!start()) {
+                            finish();
+                            return;
+                        }
+                    }
+
+                    JsonToken token = parser.nextToken();
+                    if (token == null || token == JsonToken.END_ARRAY) {
+                        try {
+                            if (token != null) {
+                                ended(parser);
+                            }
+                        } finally {
+                            finish();
+                        }
+                        return;
+                    }
+                    next = reader.readValue(parser);
+                    fetched = true;
+                } catch (IOException e) {
+                    done = true;
+                    closeQuietly();
+                    throw new RuntimeException(e);
+                }
+            }
+
+            private void finish() {
+                done = true;
+                closeQuietly();
+            }
+        };
+    }
+
+    /**
+     * Called once the end of the array has been read, before the parser is closed. Allows values embedded in a
+     * larger document to check what follows them.
+     */
+    protected void ended(JsonParser parser) throws IOException {
+    }
+
+    private boolean start() throws IOException {
+        if (parser == null) {
+            parser = factory.createParser(input);
+        }
+        JsonToken token = parser.getCurrentToken() == JsonToken.START_ARRAY ? JsonToken.START_ARRAY : parser.nextToken();
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        Validators.check(token == JsonToken.START_ARRAY, "Expect start of JSON array");
+        return true;
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (Exception e) {
+            // Ignored as the values have already been read, or reading has already failed
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (parser != null) {
+                parser.close();
+            } else if (input != null) {
+                input.close();
+            }
+        } finally {
+            if (resource != null) {
+                resource.close();
+            }
+        }
+    }
+}
@@ -24,8 +24,20 @@ package com.github.andrewoma.restless.core;
 
 import java.util.Iterator;
 
+/**
+ * Exchanges messages with the peer of a bidirectional streaming method. A service method taking a handler as its
+ * last parameter receives the client's messages via {@link #receive()} and sends its own via {@link #send}.
+ * Clients pass their own implementation, which receives the server's messages via {@link #send} and supplies
+ * the messages to send from {@link #receive()}.
+ */
 public interface StreamingHandler<T> {
+    /**
+     * Returns the messages received, blocking in {@code hasNext()} until each arrives
+     */
     Iterator<T> receive();
 
+    /**
+     * Sends each of the values, blocking until they are written
+     */
     void send(Iterator<T> values);
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+/**
+ * A wire format for parameters and results, identified by its content type. Values are mapped with the
+ * ObjectMapper of the client or server, while the codec's factory creates the parsers and generators.
+ */
+public class Codec {
+    private final String contentType;
+    private final JsonFactory factory;
+
+    public Codec(String contentType, JsonFactory factory) {
+        this.contentType = contentType;
+        this.factory = factory;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public JsonFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Returns true if the media type, excluding any parameters, is the content type of this codec
+     */
+    public boolean matches(String mediaType) {
+        int end = mediaType.indexOf(';');
+        return (end == -1 ? mediaType : mediaType.substring(0, end)).trim().equalsIgnoreCase(contentType);
+    }
+
+    @Override
+    public String toString() {
+        return contentType;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The codecs supported by a client or server, with negotiation via the Content-Type and Accept headers.
+ * The first codec is the default, used when a request does not specify a supported format.
+ */
+public class Codecs {
+    public static final String CONTENT_TYPE = "Content-Type";
+    public static final String ACCEPT = "Accept";
+    public static final String CONTENT_LENGTH = "Content-Length";
+
+    public static final String JSON = "application/json";
+    public static final String SMILE = "application/x-jackson-smile";
+    public static final String CBOR = "application/cbor";
+
+    private static final Codecs DEFAULTS = new Codecs(Arrays.asList(json(), smile(), cbor()));
+
+    private final List<Codec> codecs;
+
+    public Codecs(List<Codec> codecs) {
+        Validators.require(!codecs.isEmpty(), "At least one codec is required");
+        this.codecs = Collections.unmodifiableList(new ArrayList<Codec>(codecs));
+    }
+
+    public static Codec json() {
+        return new Codec(JSON, new JsonFactory());
+    }
+
+    public static Codec smile() {
+        return new Codec(SMILE, new SmileFactory());
+    }
+
+    public static Codec cbor() {
+        return new Codec(CBOR, new CBORFactory());
+    }
+
+    /**
+     * Returns JSON, Smile and CBOR, with JSON as the default
+     */
+    public static Codecs defaults() {
+        return DEFAULTS;
+    }
+
+    public List<Codec> getCodecs() {
+        return codecs;
+    }
+
+    public Codec getDefault() {
+        return codecs.get(0);
+    }
+
+    /**
+     * Returns the codec for the Content-Type header value, or the default if it is absent or unsupported
+     */
+    public Codec forContentType(String contentType) {
+        if (contentType != null) {
+            for (Codec codec : codecs) {
+                if (codec.matches(contentType)) {
+                    return codec;
+                }
+            }
+        }
+        return getDefault();
+    }
+
+    /**
+     * Returns the supported codec with the highest quality in the Accept header value, preferring earlier
+     * entries for equal qualities. Returns null if the header is absent or no supported codec is acceptable.
+     */
+    public Codec forAccept(String accept) {
+        if (accept == null) {
+            return null;
+        }
+
+        Codec result = null;
+        double best = 0;
+        for (String range : accept.split(",")) {
+            double quality = Headers.quality(range);
+            if (quality <= best) {
+                continue;
+            }
+            for (Codec codec : codecs) {
+                if (codec.matches(range)) {
+                    result = codec;
+                    best = quality;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.exception;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.andrewoma.restless.core.Status;
+
+public class PayloadTooLargeException extends ClientException {
+    public static final String DEFAULT_ERROR_CODE = "PAYLOAD_TOO_LARGE";
+
+    @JsonCreator
+    public PayloadTooLargeException(@JsonProperty("id") String id,
+            @JsonProperty("code") String code,
+            @JsonProperty("message") String message,
+            @JsonProperty("detail") String detail) {
+        super(id, code, message, detail);
+    }
+
+    public PayloadTooLargeException(String id, String message, String detail) {
+        super(id, DEFAULT_ERROR_CODE, message, detail);
+    }
+
+    @Override
+    public int getStatus() {
+        return Status.PAYLOAD_TOO_LARGE.getCode();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.proxy;
+
+import com.github.andrewoma.restless.core.util.Futures;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Invokes methods returning futures on an executor, returning a future to the caller without blocking.
+ * The delegate produces the value of the future, i.e. {@code T} for methods returning {@code Future<T>}.
+ * Other methods are invoked directly.
+ */
+public class AsyncMethodHandler<T> implements MethodHandler<T> {
+    private final MethodHandler<T> delegate;
+    private final Executor executor;
+
+    public AsyncMethodHandler(MethodHandler<T> delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public Object invoke(final MethodInvocation<T> methodInvocation) throws Throwable {
+        if (!Futures.isAsync(methodInvocation.getMethod())) {
+            return delegate.invoke(methodInvocation);
+        }
+
+        return Futures.submit(executor, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    return delegate.invoke(methodInvocation);
+                } catch (Exception e) {
+                    throw e;
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new RuntimeException(t);
+                }
+            }
+        });
+    }
+}
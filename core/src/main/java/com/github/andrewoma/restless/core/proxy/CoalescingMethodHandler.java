@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.core.proxy;
+
+import com.github.andrewoma.restless.annotations.Batchable;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.util.Futures;
+import com.github.andrewoma.restless.core.util.Paranamers;
+import com.github.andrewoma.restless.core.util.Promise;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines concurrent calls to {@link Batchable} methods into calls to their bulk methods. Calls are collected
+ * until the window elapses after the first call, or until the maximum batch size is reached, then a single bulk
+ * call is made with the distinct parameter values and the results are passed back to the waiting callers.
+ * Full batches of synchronous methods are sent by the caller that filled them, otherwise batches are sent using
+ * the executor. Only calls with the same request headers are coalesced, and the bulk call is made with the context
+ * of the first call in the batch. Other methods are invoked directly.
+ */
+public class CoalescingMethodHandler<T> implements MethodHandler<T> {
+    @SuppressWarnings("unchecked")
+    private final MethodInterceptor<T>[] noInterceptors = new MethodInterceptor[0];
+
+    private final MethodHandler<T> delegate;
+    private final Executor executor;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Map<Method, Coalescer> coalescers = new HashMap<Method, Coalescer>();
+
+    public CoalescingMethodHandler(MethodHandler<T> delegate, Class<?> type, Executor executor, long windowMillis,
+            int maxBatchSize) {
+        Validators.require(maxBatchSize > 0, "'maxBatchSize' must be positive");
+        this.delegate = delegate;
+        this.executor = executor;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+
+        for (Method method : type.getMethods()) {
+            Batchable batchable = method.getAnnotation(Batchable.class);
+            if (batchable != null) {
+                coalescers.put(method, new Coalescer(method, findBulkMethod(type, method, batchable.value())));
+            }
+        }
+    }
+
+    /**
+     * Returns true if the type declares methods that can be coalesced
+     */
+    public static boolean hasBatchableMethods(Class<?> type) {
+        for (Method method : type.getMethods()) {
+            if (method.isAnnotationPresent(Batchable.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Method findBulkMethod(Class<?> type, Method method, String name) {
+        Validators.require(method.getParameterTypes().length == 1, "Batchable method '" + method.getName()
+                + "' must have a single parameter");
+
+        for (Method bulk : type.getMethods()) {
+            if (bulk.getName().equals(name)) {
+                Validators.require(bulk.getParameterTypes().length == 1
+                        && bulk.getParameterTypes()[0].isAssignableFrom(List.class), "Bulk method '" + name
+                        + "' must have a single List parameter");
+                Class<?> result = bulk.getReturnType();
+                Validators.require(Futures.isAsync(bulk) || List.class.isAssignableFrom(result)
+                        || Map.class.isAssignableFrom(result), "Bulk method '" + name + "' must return a List or Map");
+                return bulk;
+            }
+        }
+        throw new IllegalArgumentException("Bulk method '" + name + "' not found on " + type.getName());
+    }
+
+    @Override
+    public Object invoke(MethodInvocation<T> methodInvocation) throws Throwable {
+        Coalescer coalescer = coalescers.get(methodInvocation.getMethod());
+        if (coalescer == null) {
+            return delegate.invoke(methodInvocation);
+        }
+
+        Promise<Object> promise = Futures.promise();
+        coalescer.add(new Call<T>(methodInvocation, promise));
+        return Futures.isAsync(methodInvocation.getMethod()) ? promise.getFuture() : Futures.get(promise.getFuture());
+    }
+
+    /**
+     * Collects the pending calls for a bulk method, with a separate batch per set of request headers so that calls
+     * made on behalf of different callers are never merged. Each batch's window is cancelled when the batch is
+     * taken, and windows that have already started running are ignored if their batch was sent because it was full.
+     */
+    private class Coalescer {
+        private final Method bulkMethod;
+        private final String[] parameterNames;
+        private final boolean async;
+        private final Map<Object, Batch<T>> pending = new HashMap<Object, Batch<T>>();
+
+        Coalescer(Method method, Method bulkMethod) {
+            this.bulkMethod = bulkMethod;
+            this.parameterNames = Paranamers.DEFAULT.lookupParameterNames(bulkMethod);
+            this.async = Futures.isAsync(method);
+        }
+
+        void add(Call<T> call) {
+            final Object key = batchKey(call.invocation.getContext());
+            List<Call<T>> full = null;
+            synchronized (this) {
+                Batch<T> batch = pending.get(key);
+                if (batch == null) {
+                    final Batch<T> created = new Batch<T>();
+                    created.window = DefaultScheduler.INSTANCE.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            expire(key, created);
+                        }
+                    }, windowMillis, TimeUnit.MILLISECONDS);
+                    pending.put(key, created);
+                    batch = created;
+                }
+                batch.calls.add(call);
+                if (batch.calls.size() >= maxBatchSize) {
+                    full = take(key);
+                }
+            }
+            if (full == null) {
+                return;
+            }
+            // Callers of async methods expect a future without waiting for the bulk call
+            if (async) {
+                dispatch(full);
+            } else {
+                send(full);
+            }
+        }
+
+        private List<Call<T>> take(Object key) {
+            Batch<T> batch = pending.remove(key);
+            batch.window.cancel(false);
+            return batch.calls;
+        }
+
+        /**
+         * Sends the batch whose window has elapsed, unless it has already been sent
+         */
+        private void expire(Object key, Batch<T> batch) {
+            final List<Call<T>> calls;
+            synchronized (this) {
+                if (pending.get(key) != batch) {
+                    return;
+                }
+                calls = take(key);
+            }
+            dispatch(calls);
+        }
+
+        private void dispatch(final List<Call<T>> calls) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        send(calls);
+                    }
+                });
+            } catch (Throwable t) {
+                fail(calls, t);
+            }
+        }
+
+        private void send(List<Call<T>> calls) {
+            Map<Object, List<Call<T>>> callsByKey = new LinkedHashMap<Object, List<Call<T>>>();
+            for (Call<T> call : calls) {
+                Object key = call.invocation.getParameters()[0];
+                List<Call<T>> callsForKey = callsByKey.get(key);
+                if (callsForKey == null) {
+                    callsForKey = new ArrayList<Call<T>>(1);
+                    callsByKey.put(key, callsForKey);
+                }
+                callsForKey.add(call);
+            }
+
+            try {
+                List<Object> keys = new ArrayList<Object>(callsByKey.keySet());
+                Object result = delegate.invoke(new MethodInvocation<T>(bulkMethod, new Object[]{keys}, parameterNames,
+                        noInterceptors, delegate, calls.get(0).invocation.getContext()));
+                if (result instanceof Future) {
+                    result = Futures.get((Future<?>) result);
+                }
+
+                if (result instanceof Map) {
+                    Map<?, ?> values = (Map<?, ?>) result;
+                    for (Map.Entry<Object, List<Call<T>>> entry : callsByKey.entrySet()) {
+                        complete(entry.getValue(), values.get(entry.getKey()));
+                    }
+                } else {
+                    List<?> values = new ArrayList<Object>((Collection<?>) result);
+                    Validators.check(values.size() == keys.size(), "Bulk method '" + bulkMethod.getName()
+                            + "' returned " + values.size() + " results for " + keys.size() + " values");
+                    for (int i = 0; i < keys.size(); i++) {
+                        complete(callsByKey.get(keys.get(i)), values.get(i));
+                    }
+                }
+            } catch (Throwable t) {
+                fail(calls, t);
+            }
+        }
+
+        private void complete(List<Call<T>> calls, Object value) {
+            for (Call<T> call : calls) {
+                call.promise.onSuccess(value);
+            }
+        }
+
+        private void fail(List<Call<T>> calls, Throwable t) {
+            for (Call<T> call : calls) {
+                call.promise.onFailure(t);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the batch for calls with the given context. Calls are only coalesced if they have the same
+     * request headers, as the bulk call is made with the context of the first call.
+     */
+    private static Object batchKey(Object context) {
+        return context instanceof Context ? new HashMap<String, String>(((Context) context).getRequestHeaders()) : null;
+    }
+
+    private static class Batch<T> {
+        private final List<Call<T>> calls = new ArrayList<Call<T>>();
+        private ScheduledFuture<?> window;
+    }
+
+    private static class Call<T> {
+        private final MethodInvocation<T> invocation;
+        private final Promise<Object> promise;
+
+        Call(MethodInvocation<T> invocation, Promise<Object> promise) {
+            this.invocation = invocation;
+            this.promise = promise;
+        }
+    }
+
+    /**
+     * Lazily creates the scheduler that closes batch windows, so that clients without batchable methods do not
+     * start threads. Batches are sent using the executor rather than the scheduler's thread.
+     */
+    private static class DefaultScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "restless-coalescer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Invokes methods via a MethodHandle bound to the target and spread over the parameter array. Unlike
+ * {@link Method#invoke} there are no per call access checks and exceptions are thrown directly.
+ * <p/>
+ * Requires JDK 7 or later. Falls back to reflection if a handle cannot be created for a method.
+ */
+public class MethodHandleInvokerFactory implements MethodInvokerFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandleInvokerFactory.class);
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final MethodInvokerFactory fallback = new ReflectiveMethodInvokerFactory();
+
+    @Override
+    public MethodInvoker create(Object target, Method method) {
+        final MethodHandle handle;
+        try {
+            handle = createHandle(target, method);
+        } catch (Exception e) {
+            LOG.warn("Unable to create a MethodHandle for {}, falling back to reflection", method, e);
+            return fallback.create(target, method);
+        }
+
+        return new MethodInvoker() {
+            @Override
+            public Object invoke(Object[] parameters) throws Throwable {
+                return handle.invokeExact(parameters);
+            }
+        };
+    }
+
+    private MethodHandle createHandle(Object target, Method method) throws IllegalAccessException {
+        if (!method.isAccessible()) {
+            method.setAccessible(true);
+        }
+        return MethodHandles.lookup().unreflect(method)
+                .bindTo(target)
+                .asSpreader(Object[].class, method.getParameterTypes().length)
+                .asType(INVOKER_TYPE);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.proxy;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MethodInterceptors {
+
+    /**
+     * Returns the chain of interceptors to apply to the given method, omitting any
+     * {@link SelectiveMethodInterceptor} that does not apply to it.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> MethodInterceptor<T>[] forMethod(List<MethodInterceptor<T>> interceptors, Method method) {
+        List<MethodInterceptor<T>> chain = new ArrayList<MethodInterceptor<T>>(interceptors.size());
+        for (MethodInterceptor<T> interceptor : interceptors) {
+            if (!(interceptor instanceof SelectiveMethodInterceptor)
+                    || ((SelectiveMethodInterceptor<T>) interceptor).appliesTo(method)) {
+                chain.add(interceptor);
+            }
+        }
+        return chain.toArray(new MethodInterceptor[chain.size()]);
+    }
+}
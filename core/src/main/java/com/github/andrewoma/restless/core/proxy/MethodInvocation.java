@@ -23,30 +23,39 @@
 package com.github.andrewoma.restless.core.proxy;
 
 import java.lang.reflect.Method;
-import java.util.Iterator;
 import java.util.List;
 
 public class MethodInvocation<T> {
     private final Method method;
     private final Object[] parameters;
     private final String[] parameterNames;
-    private final Iterator<MethodInterceptor<T>> interceptors;
+    private final MethodInterceptor<T>[] interceptors;
     private final MethodHandler<T> handler;
     private final T context;
+    private int index;
     private Object result;
 
+    @SuppressWarnings("unchecked")
     public MethodInvocation(Method method, Object[] parameters, String[] parameterNames, List<MethodInterceptor<T>> interceptors, MethodHandler<T> handler, T context) {
+        this(method, parameters, parameterNames, interceptors.toArray(new MethodInterceptor[interceptors.size()]),
+                handler, context);
+    }
+
+    /**
+     * Creates an invocation for a precompiled interceptor chain. The array is not copied and must not be modified.
+     */
+    public MethodInvocation(Method method, Object[] parameters, String[] parameterNames, MethodInterceptor<T>[] interceptors, MethodHandler<T> handler, T context) {
         this.method = method;
         this.parameters = parameters;
         this.parameterNames = parameterNames;
-        this.interceptors = interceptors.iterator();
+        this.interceptors = interceptors;
         this.handler = handler;
         this.context = context;
     }
 
     public Object proceed() throws Throwable {
-        if (interceptors.hasNext()) {
-            MethodInterceptor<T> next = interceptors.next();
+        if (index < interceptors.length) {
+            MethodInterceptor<T> next = interceptors[index++];
             next.invoke(this);
         } else {
             result = handler.invoke(this);
@@ -33,7 +33,9 @@ import com.thoughtworks.paranamer.PositionalParanamer;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ProxyFactory {
     private static final Paranamer PARANAMER = new CachingParanamer(new AdaptiveParanamer(
@@ -48,17 +50,36 @@ public class ProxyFactory {
     public static <T, C> T createProxy(Class<T> anInterface, final List<MethodInterceptor<C>> interceptors,
             final MethodHandler<C> methodHandler, final ContextFactory<C> context) {
 
+        final Map<Method, ProxyMethod<C>> methods = new HashMap<Method, ProxyMethod<C>>();
+        for (Method method : anInterface.getMethods()) {
+            methods.put(method, new ProxyMethod<C>(method, interceptors));
+        }
+
         // TODO ... support abstract classes
         return (T) Proxy.newProxyInstance(anInterface.getClassLoader(), new Class[]{anInterface}, new InvocationHandler() {
 
             @Override
             public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                return new MethodInvocation<C>(method, args == null ? EMPTY_ARRAY : args, PARANAMER.lookupParameterNames(method),
-                        interceptors, methodHandler, context.create()).proceed();
+                ProxyMethod<C> proxyMethod = methods.get(method);
+                if (proxyMethod == null) {
+                    proxyMethod = new ProxyMethod<C>(method, interceptors);
+                }
+                return new MethodInvocation<C>(method, args == null ? EMPTY_ARRAY : args, proxyMethod.parameterNames,
+                        proxyMethod.interceptors, methodHandler, context.create()).proceed();
             }
         });
     }
 
+    private static class ProxyMethod<C> {
+        final String[] parameterNames;
+        final MethodInterceptor<C>[] interceptors;
+
+        ProxyMethod(Method method, List<MethodInterceptor<C>> interceptors) {
+            this.parameterNames = PARANAMER.lookupParameterNames(method);
+            this.interceptors = MethodInterceptors.forMethod(interceptors, method);
+        }
+    }
+
     public interface ContextFactory<T> {
         T create();
     }
@@ -26,13 +26,26 @@ import java.lang.reflect.InvocationTargetException;
 
 public class TargetMethodHandler<T> implements MethodHandler<T> {
     private final Object target;
+    private final MethodInvoker invoker;
 
     public TargetMethodHandler(Object target) {
+        this(target, null);
+    }
+
+    /**
+     * Creates a handler for a single method of the target, delegating to the given invoker
+     */
+    public TargetMethodHandler(Object target, MethodInvoker invoker) {
         this.target = target;
+        this.invoker = invoker;
     }
 
     @Override
     public Object invoke(MethodInvocation<T> methodInvocation) throws Throwable {
+        if (invoker != null) {
+            return invoker.invoke(methodInvocation.getParameters());
+        }
+
         try {
             return methodInvocation.getMethod().invoke(target, methodInvocation.getParameters());
         } catch (InvocationTargetException e) {
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.reactive;
+
+import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.util.Validators;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Iterates over the elements of a publisher, blocking until each arrives. Elements are requested in batches of
+ * half the prefetch size as they are consumed, so the queue is bounded.
+ */
+class PublisherStreamed<T> extends Streamed<T> {
+    private static final Object COMPLETE = new Object();
+
+    private final Publisher<T> publisher;
+    private final int prefetch;
+    private volatile Subscription subscription;
+    private volatile boolean cancelled;
+    private boolean iterated;
+
+    PublisherStreamed(Publisher<T> publisher, int prefetch) {
+        Validators.require(prefetch > 0, "prefetch must be positive");
+        this.publisher = publisher;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Validators.check(!iterated, "Streamed values can only be iterated once");
+        iterated = true;
+
+        SubscriberIterator iterator = new SubscriberIterator();
+        publisher.subscribe(iterator);
+        return iterator;
+    }
+
+    @Override
+    public void close() throws Exception {
+        cancelled = true;
+        Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private static class Failure {
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private class SubscriberIterator implements Iterator<T>, Subscriber<T> {
+        // Holds the prefetched elements plus the terminal signal
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(prefetch + 1);
+        private final int batch = Math.max(1, prefetch / 2);
+        private Object next;
+        private int consumed;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            if (subscription != null || cancelled) {
+                s.cancel();
+                return;
+            }
+            subscription = s;
+            s.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T value) {
+            if (value == null) {
+                onError(new NullPointerException("Publishers must not signal null elements"));
+            } else if (!queue.offer(value)) {
+                subscription.cancel();
+                queue.clear();
+                queue.offer(new Failure(new IllegalStateException("Publisher signalled more elements than requested")));
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            queue.offer(new Failure(t));
+        }
+
+        @Override
+        public void onComplete() {
+            queue.offer(COMPLETE);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            if (next instanceof Failure) {
+                Throwable cause = ((Failure) next).cause;
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+            return next != COMPLETE;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T value = (T) next;
+            next = null;
+            if (++consumed == batch) {
+                consumed = 0;
+                subscription.request(batch);
+            }
+            return value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
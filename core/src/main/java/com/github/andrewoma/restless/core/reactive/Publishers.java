@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.reactive;
+
+import com.github.andrewoma.restless.core.Streamed;
+import org.reactivestreams.Publisher;
+
+/**
+ * Bridges Reactive Streams publishers to and from {@link Streamed} values. Demand is driven by the transport:
+ * elements are requested from a publisher as they are written, so a slow connection slows the producer rather than
+ * buffering, and received elements are only read from the connection as they are requested by the subscriber.
+ */
+public class Publishers {
+    /**
+     * The number of elements requested from a publisher ahead of being written
+     */
+    public static final int DEFAULT_PREFETCH = 32;
+
+    /**
+     * Returns values that subscribe to the publisher once iterated, holding at most {@code prefetch} elements
+     * that have not yet been written. Closing the values cancels the subscription.
+     */
+    public static <T> Streamed<T> toStreamed(Publisher<T> publisher, int prefetch) {
+        return new PublisherStreamed<T>(publisher, prefetch);
+    }
+
+    public static <T> Streamed<T> toStreamed(Publisher<T> publisher) {
+        return toStreamed(publisher, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Returns a publisher that reads the values as they are requested. The publisher accepts a single subscriber
+     * as the values can only be iterated once. Cancelling the subscription closes the values.
+     */
+    public static <T> Publisher<T> fromStreamed(Streamed<T> values) {
+        return new StreamedPublisher<T>(values);
+    }
+}
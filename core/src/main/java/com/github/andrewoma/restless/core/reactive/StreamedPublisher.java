@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.reactive;
+
+import com.github.andrewoma.restless.core.Streamed;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes values as they are requested, reading them on the thread calling {@link Subscription#request(long)}.
+ * Requests made while elements are being signalled add to the outstanding demand rather than recursing.
+ */
+class StreamedPublisher<T> implements Publisher<T> {
+    private final Streamed<T> values;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    StreamedPublisher(Streamed<T> values) {
+        this.values = values;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Streamed values only support a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new IteratorSubscription(subscriber));
+    }
+
+    private class IteratorSubscription implements Subscription {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private Iterator<T> iterator;
+        private volatile boolean done;
+
+        private IteratorSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (done) {
+                return;
+            }
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested elements must be positive, was " + n));
+                return;
+            }
+
+            long previous;
+            long next;
+            do {
+                previous = demand.get();
+                next = previous + n < 0 ? Long.MAX_VALUE : previous + n;
+            } while (!demand.compareAndSet(previous, next));
+
+            if (previous == 0) {
+                drain();
+            }
+        }
+
+        private void drain() {
+            long requested = demand.get();
+            long emitted = 0;
+            try {
+                if (iterator == null) {
+                    iterator = values.iterator();
+                }
+                while (true) {
+                    while (emitted != requested) {
+                        if (done) {
+                            return;
+                        }
+                        if (!iterator.hasNext()) {
+                            close();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(iterator.next());
+                        emitted++;
+                    }
+                    requested = demand.addAndGet(-emitted);
+                    emitted = 0;
+                    if (requested == 0) {
+                        return;
+                    }
+                }
+            } catch (Throwable t) {
+                if (!done) {
+                    close();
+                    subscriber.onError(t);
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!done) {
+                close();
+            }
+        }
+
+        private void close() {
+            done = true;
+            try {
+                values.close();
+            } catch (Exception e) {
+                // Ignored as the subscriber is no longer interested in the values
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import java.io.IOException;
+
+/**
+ * Writes into a pooled buffer of at most {@code limit} bytes, failing with a {@link LimitExceededException} once
+ * the limit is exceeded.
+ */
+public class BoundedOutputStream extends PooledOutputStream {
+    private final int limit;
+
+    public BoundedOutputStream(int limit) {
+        super(Math.min(limit, BufferPool.MIN_SIZE));
+        Validators.require(limit >= 0, "'limit' must not be negative");
+        this.limit = limit;
+    }
+
+    @Override
+    protected void ensureCapacity(int length) throws IOException {
+        if (size() + length > limit) {
+            throw new LimitExceededException(limit);
+        }
+        super.ensureCapacity(length);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns true if the exception, or one of its causes, was thrown as the limit was exceeded
+     */
+    public static boolean isLimitExceeded(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LimitExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class LimitExceededException extends IOException {
+        public LimitExceededException(int limit) {
+            super("Output exceeds the limit of " + limit + " bytes");
+        }
+    }
+}
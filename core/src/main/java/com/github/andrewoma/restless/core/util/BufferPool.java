@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of byte arrays in power of two size classes from {@link #MIN_SIZE} to {@link #MAX_SIZE}. Each thread
+ * caches one buffer per class, backed by a shared queue per class so that buffers released on other threads
+ * are reused. Larger buffers are allocated and discarded as usual.
+ *
+ * <p>Leak detection records where each buffer was acquired and logs those that are garbage collected without
+ * being released. It is enabled via the {@code restless.buffers.leakDetection} system property or
+ * {@link #setLeakDetection(boolean)}.
+ */
+public class BufferPool {
+    private static final Logger LOG = LoggerFactory.getLogger(BufferPool.class);
+
+    public static final int MIN_SIZE = 1024;
+    public static final int MAX_SIZE = 64 * 1024;
+
+    /**
+     * The default number of bytes held in the shared queue of each size class
+     */
+    public static final int DEFAULT_CLASS_CAPACITY = 1024 * 1024;
+
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE / MIN_SIZE) + 1;
+
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_CLASS_CAPACITY,
+            Boolean.getBoolean("restless.buffers.leakDetection"));
+
+    private final ThreadLocal<byte[][]> caches = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[CLASSES][];
+        }
+    };
+
+    private final SizeClass[] classes = new SizeClass[CLASSES];
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+
+    private volatile boolean leakDetection;
+    private final Map<byte[], Tracker> tracked = new WeakHashMap<byte[], Tracker>();
+    private final Set<Tracker> trackers = Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+    private final ReferenceQueue<byte[]> collected = new ReferenceQueue<byte[]>();
+
+    public BufferPool(int classCapacity, boolean leakDetection) {
+        Validators.require(classCapacity >= 0, "'classCapacity' must not be negative");
+        for (int i = 0; i < CLASSES; i++) {
+            classes[i] = new SizeClass(classCapacity / (MIN_SIZE << i));
+        }
+        this.leakDetection = leakDetection;
+    }
+
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a buffer of at least the given size. Buffers within the pooled sizes are rounded up to their class.
+     */
+    public byte[] acquire(int size) {
+        Validators.require(size >= 0, "'size' must not be negative");
+        acquired.incrementAndGet();
+
+        byte[] buffer = null;
+        int index = indexOf(size);
+        if (index < CLASSES) {
+            byte[][] cache = caches.get();
+            buffer = cache[index];
+            if (buffer != null) {
+                cache[index] = null;
+            } else {
+                buffer = classes[index].poll();
+            }
+        }
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            buffer = new byte[index < CLASSES ? MIN_SIZE << index : size];
+        }
+
+        if (leakDetection) {
+            track(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     */
+    public void release(byte[] buffer) {
+        released.incrementAndGet();
+        if (leakDetection) {
+            untrack(buffer);
+        }
+
+        int index = indexOf(buffer.length);
+        if (index >= CLASSES || MIN_SIZE << index != buffer.length) {
+            return;
+        }
+        byte[][] cache = caches.get();
+        if (cache[index] == null) {
+            cache[index] = buffer;
+        } else {
+            classes[index].offer(buffer);
+        }
+    }
+
+    private static int indexOf(int size) {
+        if (size <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros((size - 1) / MIN_SIZE);
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    public void setLeakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    private void track(byte[] buffer) {
+        reportLeaks();
+        Tracker tracker = new Tracker(buffer, collected);
+        trackers.add(tracker);
+        synchronized (tracked) {
+            tracked.put(buffer, tracker);
+        }
+    }
+
+    private void untrack(byte[] buffer) {
+        Tracker tracker;
+        synchronized (tracked) {
+            tracker = tracked.remove(buffer);
+        }
+        if (tracker != null) {
+            trackers.remove(tracker);
+            tracker.clear();
+        }
+    }
+
+    /**
+     * Logs buffers that have been garbage collected without being released
+     */
+    private void reportLeaks() {
+        for (Tracker tracker = (Tracker) collected.poll(); tracker != null; tracker = (Tracker) collected.poll()) {
+            if (trackers.remove(tracker)) {
+                leaked.incrementAndGet();
+                LOG.warn("A buffer was garbage collected without being released", tracker.acquiredAt);
+            }
+        }
+    }
+
+    public Statistics getStatistics() {
+        if (leakDetection) {
+            reportLeaks();
+        }
+        int pooled = 0;
+        long pooledBytes = 0;
+        for (int i = 0; i < CLASSES; i++) {
+            int size = classes[i].size.get();
+            pooled += size;
+            pooledBytes += (long) size * (MIN_SIZE << i);
+        }
+        return new Statistics(acquired.get(), allocated.get(), released.get(), leaked.get(), pooled, pooledBytes);
+    }
+
+    private static class SizeClass {
+        private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int capacity;
+
+        private SizeClass(int capacity) {
+            this.capacity = capacity;
+        }
+
+        byte[] poll() {
+            byte[] buffer = buffers.poll();
+            if (buffer != null) {
+                size.decrementAndGet();
+            }
+            return buffer;
+        }
+
+        void offer(byte[] buffer) {
+            if (size.incrementAndGet() <= capacity) {
+                buffers.offer(buffer);
+            } else {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private static class Tracker extends WeakReference<byte[]> {
+        private final Throwable acquiredAt = new Throwable("Acquired at");
+
+        private Tracker(byte[] buffer, ReferenceQueue<byte[]> queue) {
+            super(buffer, queue);
+        }
+    }
+
+    /**
+     * A snapshot of the pool's counters. Shared and thread cached buffers are not counted as outstanding.
+     */
+    public static class Statistics {
+        private final long acquired;
+        private final long allocated;
+        private final long released;
+        private final long leaked;
+        private final int pooled;
+        private final long pooledBytes;
+
+        public Statistics(long acquired, long allocated, long released, long leaked, int pooled, long pooledBytes) {
+            this.acquired = acquired;
+            this.allocated = allocated;
+            this.released = released;
+            this.leaked = leaked;
+            this.pooled = pooled;
+            this.pooledBytes = pooledBytes;
+        }
+
+        public long getAcquired() {
+            return acquired;
+        }
+
+        /**
+         * Returns the number of acquisitions that could not be satisfied from the pool
+         */
+        public long getAllocated() {
+            return allocated;
+        }
+
+        public long getReleased() {
+            return released;
+        }
+
+        /**
+         * Returns the number of buffers found to be garbage collected without being released. Only counted while
+         * leak detection is enabled.
+         */
+        public long getLeaked() {
+            return leaked;
+        }
+
+        public long getOutstanding() {
+            return acquired - released - leaked;
+        }
+
+        /**
+         * Returns the number of buffers held in the shared queues, excluding those cached by threads
+         */
+        public int getPooled() {
+            return pooled;
+        }
+
+        public long getPooledBytes() {
+            return pooledBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "acquired=" + acquired +
+                    ", allocated=" + allocated +
+                    ", released=" + released +
+                    ", leaked=" + leaked +
+                    ", pooled=" + pooled +
+                    ", pooledBytes=" + pooledBytes +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffers output of up to {@code size} bytes so that its length is known before it is written. If the stream
+ * is finished within the size, the listener is given the length before any bytes are written, allowing a
+ * Content-Length header to be set. Larger output is streamed without a length. Flushing has no effect until
+ * the size is exceeded.
+ */
+public class BufferingOutputStream extends OutputStream {
+    private final OutputStream output;
+    private final LengthListener listener;
+    private BoundedOutputStream buffer;
+    private boolean finished;
+
+    public BufferingOutputStream(OutputStream output, int size, LengthListener listener) {
+        this.output = output;
+        this.listener = listener;
+        this.buffer = new BoundedOutputStream(size);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        Validators.check(!finished, "Stream has been finished");
+        if (buffer != null) {
+            if (buffer.size() + length <= buffer.getLimit()) {
+                buffer.write(bytes, offset, length);
+                return;
+            }
+            startStreaming();
+        }
+        output.write(bytes, offset, length);
+    }
+
+    private void startStreaming() throws IOException {
+        try {
+            buffer.writeTo(output);
+        } finally {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffer == null) {
+            output.flush();
+        }
+    }
+
+    public boolean isStreaming() {
+        return buffer == null;
+    }
+
+    /**
+     * Writes any remaining data without closing the underlying stream
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (buffer != null) {
+            listener.length(buffer.size());
+            startStreaming();
+        }
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Returns any buffered output to the pool without writing it, for use when the output is abandoned
+     */
+    public void release() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
+    public interface LengthListener {
+        void length(int length);
+    }
+}
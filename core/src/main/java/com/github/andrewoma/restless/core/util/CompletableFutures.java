@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/**
+ * Isolates references to CompletableFuture so that it is only loaded on JDK 8 or later
+ */
+class CompletableFutures {
+
+    static boolean isCompletable(Future<?> future) {
+        return future instanceof CompletableFuture;
+    }
+
+    static <T> void addCallback(Future<T> future, final Callback<T> callback) {
+        ((CompletableFuture<T>) future).whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable t) {
+                if (t == null) {
+                    callback.onSuccess(value);
+                } else {
+                    callback.onFailure(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                }
+            }
+        });
+    }
+
+    static <T> Promise<T> promise() {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        return new Promise<T>() {
+            @Override
+            public void onSuccess(T value) {
+                future.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public Future<T> getFuture() {
+                return future;
+            }
+        };
+    }
+
+    static <T> Future<T> submit(Executor executor, final Callable<T> callable) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(callable.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+        });
+        return future;
+    }
+}
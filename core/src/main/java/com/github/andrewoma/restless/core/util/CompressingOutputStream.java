@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.core.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses output once it reaches a threshold, so that small bodies skip the cost of compression.
+ * Output is buffered until the threshold is reached, at which point the listener is called before any bytes
+ * are written, allowing headers such as Content-Encoding to be set. Bodies below the threshold are written
+ * uncompressed when the stream is finished. Flushing has no effect until the threshold is reached.
+ */
+public class CompressingOutputStream extends OutputStream {
+    private final OutputStream output;
+    private final String encoding;
+    private final int threshold;
+    private final Runnable listener;
+
+    private PooledOutputStream buffer;
+    private DeflaterOutputStream compressed;
+    private boolean finished;
+
+    public CompressingOutputStream(OutputStream output, String encoding, int threshold, Runnable listener) {
+        Validators.require(threshold >= 0, "'threshold' must not be negative");
+        this.output = output;
+        this.encoding = encoding;
+        this.threshold = threshold;
+        this.listener = listener;
+        this.buffer = new PooledOutputStream();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        Validators.check(!finished, "Stream has been finished");
+        if (compressed != null) {
+            compressed.write(bytes, offset, length);
+            return;
+        }
+
+        buffer.write(bytes, offset, length);
+        if (buffer.size() >= threshold) {
+            startCompressing();
+        }
+    }
+
+    private void startCompressing() throws IOException {
+        listener.run();
+        compressed = Compression.encode(encoding, output);
+        try {
+            buffer.writeTo(compressed);
+        } finally {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (compressed != null) {
+            compressed.flush();
+        }
+    }
+
+    public boolean isCompressed() {
+        return compressed != null;
+    }
+
+    /**
+     * Writes any remaining data without closing the underlying stream
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (compressed != null) {
+            compressed.finish();
+        } else {
+            try {
+                buffer.writeTo(output);
+            } finally {
+                release();
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Returns any buffered output to the pool and frees the compressor without writing the remaining output,
+     * for use when the output is abandoned. Has no effect once finished.
+     */
+    public void release() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+        if (compressed != null) {
+            Compression.end(compressed);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.core.util;
+
+import com.github.andrewoma.restless.core.Headers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Supports the gzip and deflate content encodings, negotiated via the Accept-Encoding and Content-Encoding headers
+ */
+public class Compression {
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final String IDENTITY = "identity";
+
+    /**
+     * The value of Accept-Encoding for clients that can decode all supported encodings
+     */
+    public static final String SUPPORTED = GZIP + ", " + DEFLATE;
+
+    /**
+     * A threshold that disables compression
+     */
+    public static final int DISABLED = -1;
+
+    /**
+     * Returns the supported encoding with the highest quality in the Accept-Encoding header value, preferring gzip
+     * for equal qualities. Returns null if the header is absent or no supported encoding is acceptable.
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        String result = null;
+        double best = 0;
+        for (String entry : acceptEncoding.split(",")) {
+            String encoding = entry.split(";")[0].trim();
+            double quality = Headers.quality(entry);
+            if (quality > best || (quality == best && GZIP.equalsIgnoreCase(encoding))) {
+                if (GZIP.equalsIgnoreCase(encoding) || encoding.equals("*")) {
+                    result = GZIP;
+                    best = quality;
+                } else if (DEFLATE.equalsIgnoreCase(encoding)) {
+                    result = DEFLATE;
+                    best = quality;
+                }
+            }
+        }
+        return best > 0 ? result : null;
+    }
+
+    /**
+     * Returns a stream decoding the input according to the Content-Encoding header value
+     */
+    public static InputStream decode(String contentEncoding, InputStream input) throws IOException {
+        if (contentEncoding == null || contentEncoding.trim().isEmpty()
+                || IDENTITY.equalsIgnoreCase(contentEncoding.trim())) {
+            return input;
+        } else if (GZIP.equalsIgnoreCase(contentEncoding.trim())) {
+            return new GZIPInputStream(input);
+        } else if (DEFLATE.equalsIgnoreCase(contentEncoding.trim())) {
+            return new InflaterInputStream(input);
+        }
+        throw new IOException("Unsupported Content-Encoding '" + contentEncoding + "'");
+    }
+
+    private static final boolean SYNC_FLUSH = Jdks.supportsSyncFlush();
+
+    /**
+     * Returns a stream encoding to the output. The stream must be finished or closed to write the trailing data.
+     * On JDK 7+ flushing the stream writes all data compressed so far, so streamed values are not held back.
+     * Finishing the stream frees the deflater's native memory. Streams that are abandoned before they are
+     * finished must be released with {@link #end(DeflaterOutputStream)}.
+     */
+    public static DeflaterOutputStream encode(String encoding, OutputStream output) throws IOException {
+        if (GZIP.equalsIgnoreCase(encoding)) {
+            return SYNC_FLUSH ? new GzipEncoder(output, true) : new GzipEncoder(output);
+        } else if (DEFLATE.equalsIgnoreCase(encoding)) {
+            return SYNC_FLUSH ? new DeflateEncoder(output, true) : new DeflateEncoder(output);
+        }
+        throw new IllegalArgumentException("Unsupported encoding '" + encoding + "'");
+    }
+
+    /**
+     * Frees the native memory of a stream returned by {@link #encode(String, OutputStream)} without finishing it.
+     * The stream cannot be written to afterwards.
+     */
+    public static void end(DeflaterOutputStream stream) {
+        if (stream instanceof Encoder) {
+            ((Encoder) stream).end();
+        }
+    }
+
+    private interface Encoder {
+        void end();
+    }
+
+    private static class GzipEncoder extends GZIPOutputStream implements Encoder {
+        private GzipEncoder(OutputStream output) throws IOException {
+            super(output);
+        }
+
+        private GzipEncoder(OutputStream output, boolean syncFlush) throws IOException {
+            super(output, syncFlush);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                super.finish();
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void end() {
+            def.end();
+        }
+    }
+
+    private static class DeflateEncoder extends DeflaterOutputStream implements Encoder {
+        private DeflateEncoder(OutputStream output) {
+            super(output);
+        }
+
+        private DeflateEncoder(OutputStream output, boolean syncFlush) {
+            super(output, syncFlush);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                super.finish();
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void end() {
+            def.end();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Utilities for futures that use CompletableFuture where the JDK supports it, falling back to plain futures.
+ */
+public class Futures {
+    private static final boolean COMPLETABLE = Jdks.supportsCompletableFuture();
+
+    /**
+     * Returns true if the method returns a future
+     */
+    public static boolean isAsync(Method method) {
+        return Future.class.isAssignableFrom(method.getReturnType());
+    }
+
+    /**
+     * Returns the type of the value produced by the method, i.e. {@code T} for methods returning {@code Future<T>}
+     */
+    public static Type getResultType(Method method) {
+        if (!isAsync(method)) {
+            return method.getGenericReturnType();
+        }
+        Type type = method.getGenericReturnType();
+        if (type instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+            return argument instanceof TypeVariable || argument instanceof WildcardType ? Object.class : argument;
+        }
+        return Object.class;
+    }
+
+    /**
+     * Waits for the result of the future, throwing the original exception if it failed
+     */
+    public static Object get(Future<?> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Invokes the callback once the future completes. CompletableFutures notify the callback on completion,
+     * while other futures are waited on by the calling thread.
+     */
+    public static <T> void addCallback(Future<T> future, Callback<T> callback) {
+        if (COMPLETABLE && CompletableFutures.isCompletable(future)) {
+            CompletableFutures.addCallback(future, callback);
+            return;
+        }
+
+        T value;
+        try {
+            value = future.get();
+        } catch (ExecutionException e) {
+            callback.onFailure(e.getCause());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.onFailure(e);
+            return;
+        }
+        callback.onSuccess(value);
+    }
+
+    /**
+     * Creates a promise whose future is a CompletableFuture if supported, otherwise a plain future
+     */
+    public static <T> Promise<T> promise() {
+        if (COMPLETABLE) {
+            return CompletableFutures.promise();
+        }
+        return new TaskPromise<T>();
+    }
+
+    /**
+     * Executes the callable, returning a CompletableFuture if supported, otherwise a plain future
+     */
+    public static <T> Future<T> submit(Executor executor, Callable<T> callable) {
+        if (COMPLETABLE) {
+            return CompletableFutures.submit(executor, callable);
+        }
+        FutureTask<T> task = new FutureTask<T>(callable);
+        executor.execute(task);
+        return task;
+    }
+
+    private static class TaskPromise<T> extends FutureTask<T> implements Promise<T> {
+        private static final Callable<Object> UNUSED = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        @SuppressWarnings("unchecked")
+        TaskPromise() {
+            super((Callable<T>) UNUSED);
+        }
+
+        @Override
+        public void onSuccess(T value) {
+            set(value);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            setException(t);
+        }
+
+        @Override
+        public Future<T> getFuture() {
+            return this;
+        }
+    }
+}
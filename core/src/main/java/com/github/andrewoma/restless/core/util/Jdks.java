@@ -25,8 +25,31 @@ package com.github.andrewoma.restless.core.util;
 public class Jdks {
 
     public static boolean supportsAutoCloseable() {
+        return isAvailable("java.lang.AutoCloseable");
+    }
+
+    /**
+     * Returns true if deflater streams can be created with sync flushing, which was added in JDK 7
+     */
+    public static boolean supportsSyncFlush() {
+        return supportsAutoCloseable();
+    }
+
+    public static boolean supportsMethodHandles() {
+        return isAvailable("java.lang.invoke.MethodHandle");
+    }
+
+    public static boolean supportsCompletableFuture() {
+        return isAvailable("java.util.concurrent.CompletableFuture");
+    }
+
+    public static boolean supportsStreams() {
+        return isAvailable("java.util.stream.Stream");
+    }
+
+    private static boolean isAvailable(String className) {
         try {
-            Class.forName("java.lang.AutoCloseable");
+            Class.forName(className);
             return true;
         } catch (ClassNotFoundException e) {
             return false;
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A growable buffer like {@link java.io.ByteArrayOutputStream} whose storage is taken from a {@link BufferPool}
+ * and returned by {@link #release()}. The contents can be read without copying them.
+ */
+public class PooledOutputStream extends OutputStream {
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int count;
+
+    public PooledOutputStream() {
+        this(BufferPool.MIN_SIZE);
+    }
+
+    public PooledOutputStream(int size) {
+        this(BufferPool.getDefault(), size);
+    }
+
+    public PooledOutputStream(BufferPool pool, int size) {
+        this.pool = pool;
+        this.buffer = pool.acquire(size);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    protected void ensureCapacity(int length) throws IOException {
+        Validators.check(buffer != null, "The stream has been released");
+        int required = count + length;
+        if (required > buffer.length) {
+            byte[] grown = pool.acquire(Math.max(required, buffer.length * 2));
+            System.arraycopy(buffer, 0, grown, 0, count);
+            pool.release(buffer);
+            buffer = grown;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the buffer holding the bytes written, which is only valid until the stream is released
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(buffer, 0, count);
+    }
+
+    /**
+     * Returns a stream over the bytes written, which is only valid until the stream is released
+     */
+    public InputStream toInputStream() {
+        return new ByteArrayInputStream(buffer, 0, count);
+    }
+
+    public String toString(String charset) throws IOException {
+        return new String(buffer, 0, count, charset);
+    }
+
+    /**
+     * Returns the buffer to the pool. The stream cannot be used afterwards.
+     */
+    public void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterates over values added by another thread, blocking until each arrives. Adding blocks once the queue is
+ * full, pushing back on the producer, e.g. the thread reading messages from a connection. The first of
+ * {@link #complete()} or {@link #fail(Throwable)} ends the iteration once the values already added have been
+ * returned, with failures thrown by {@link #hasNext()}. Values added after the iteration ends are discarded.
+ * Consumers that stop early must call {@link #cancel()} so that a blocked producer is released.
+ */
+public class QueueIterator<T> implements Iterator<T> {
+    private static final Object COMPLETE = new Object();
+    private static final Object WAKE = new Object();
+    private static final long RECHECK_MILLIS = 100;
+
+    private final BlockingQueue<Object> queue;
+    private volatile Object terminal;
+    private Object next;
+
+    public QueueIterator(int capacity) {
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+    }
+
+    /**
+     * Adds the value, blocking while the queue is full until it is consumed or the iteration ends
+     */
+    public void add(T value) throws InterruptedException {
+        Validators.require(value != null, "'value' must not be null");
+        while (terminal == null) {
+            if (queue.offer(value, RECHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    public void complete() {
+        terminate(COMPLETE);
+    }
+
+    public void fail(Throwable cause) {
+        terminate(new Failure(cause));
+    }
+
+    /**
+     * Ends the iteration, discarding values that have not been consumed and releasing a blocked producer
+     */
+    public void cancel() {
+        complete();
+        queue.clear();
+    }
+
+    private synchronized void terminate(Object signal) {
+        if (terminal == null) {
+            terminal = signal;
+            // Wakes a waiting consumer. If the queue is full the consumer is not waiting.
+            queue.offer(WAKE);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            // Values added before terminating are returned first as the terminal signal is read before polling
+            Object signal = terminal;
+            Object value = queue.poll();
+            if (value == null) {
+                value = signal != null ? signal : take();
+            }
+            if (value != WAKE) {
+                next = value;
+            }
+        }
+        if (next instanceof Failure) {
+            Throwable cause = ((Failure) next).cause;
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+        return next != COMPLETE;
+    }
+
+    private Object take() {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T value = (T) next;
+        next = null;
+        return value;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static class Failure {
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
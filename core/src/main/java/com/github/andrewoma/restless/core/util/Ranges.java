@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+/**
+ * Supports single byte ranges via the Range, Content-Range and Accept-Ranges headers
+ */
+public class Ranges {
+    public static final String RANGE = "Range";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String BYTES = "bytes";
+
+    private static final String PREFIX = BYTES + "=";
+
+    private Ranges() {
+    }
+
+    /**
+     * Returns the {@code [start, end]} offsets (inclusive) of the range requested by a Range header value for a
+     * stream of the given length, or null if the header is absent, malformed or requests multiple ranges so that
+     * the whole stream should be returned. Returns an empty array if the range cannot be satisfied.
+     */
+    public static long[] parse(String range, long length) {
+        if (range == null || !range.trim().startsWith(PREFIX) || range.indexOf(',') != -1) {
+            return null;
+        }
+        String spec = range.trim().substring(PREFIX.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // A suffix range of the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix == 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (last.isEmpty()) {
+                    end = length - 1;
+                } else {
+                    long requested = Long.parseLong(last);
+                    if (requested < start) {
+                        return null;
+                    }
+                    end = Math.min(requested, length - 1);
+                }
+            }
+            return start >= length ? new long[0] : new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value of a Range header requesting {@code length} bytes from {@code position}
+     */
+    public static String range(long position, long length) {
+        return PREFIX + position + "-" + (position + length - 1);
+    }
+
+    /**
+     * Returns the value of a Content-Range header for the inclusive range within a stream of the given length
+     */
+    public static String contentRange(long start, long end, long length) {
+        return BYTES + " " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * Returns the value of a Content-Range header for a range that cannot be satisfied
+     */
+    public static String unsatisfiable(long length) {
+        return BYTES + " */" + length;
+    }
+
+    /**
+     * Returns the {@code [start, end, length]} of a Content-Range header value, or null if it is malformed.
+     * The length is -1 if it is unknown.
+     */
+    public static long[] parseContentRange(String contentRange) {
+        if (contentRange == null || !contentRange.trim().startsWith(BYTES + " ")) {
+            return null;
+        }
+        String spec = contentRange.trim().substring(BYTES.length() + 1).trim();
+        int dash = spec.indexOf('-');
+        int slash = spec.indexOf('/');
+        if (dash == -1 || slash < dash) {
+            return null;
+        }
+        try {
+            String length = spec.substring(slash + 1).trim();
+            return new long[]{Long.parseLong(spec.substring(0, dash).trim()),
+                    Long.parseLong(spec.substring(dash + 1, slash).trim()),
+                    length.equals("*") ? -1 : Long.parseLong(length)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import com.github.andrewoma.restless.core.ClosableIterator;
+import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.reactive.Publishers;
+import org.reactivestreams.Publisher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Adapts the types that are streamed element by element, namely {@link Streamed}, {@link Iterator},
+ * {@link Iterable}, {@link Publisher} and {@code java.util.stream.Stream} on JDK 8+, to and from {@link Streamed}.
+ * Other collections are serialised as a single value as usual.
+ */
+public class Streams {
+    private static final boolean STREAMS = Jdks.supportsStreams();
+
+    /**
+     * Returns true if values of the declared type are streamed element by element
+     */
+    public static boolean isStreamed(Class<?> type) {
+        return type.equals(Streamed.class) || type.equals(Iterator.class) || type.equals(Iterable.class)
+                || type.equals(Publisher.class) || (STREAMS && JdkStreams.isStream(type));
+    }
+
+    /**
+     * Returns true if parameters of the declared type are streamed element by element. Only {@link Streamed}
+     * and {@link Publisher} parameters are streamed, and they must be the last parameter.
+     */
+    public static boolean isStreamedParameter(Class<?> type) {
+        return type.equals(Streamed.class) || type.equals(Publisher.class);
+    }
+
+    /**
+     * Adapts a value to {@link Streamed}, closing the source if it is closeable once the values have been written.
+     * Publishers are subscribed to once iterated, and cancelled when closed.
+     */
+    @SuppressWarnings("unchecked")
+    public static Streamed<Object> toStreamed(Object result) {
+        if (result == null || result instanceof Streamed) {
+            return (Streamed<Object>) result;
+        } else if (result instanceof Publisher) {
+            return Publishers.toStreamed((Publisher<Object>) result);
+        } else if (result instanceof Iterator) {
+            return new Source(result, (Iterator<Object>) result);
+        } else if (result instanceof Iterable) {
+            return new Source(result, ((Iterable<Object>) result).iterator());
+        }
+        Validators.require(STREAMS && JdkStreams.isStream(result.getClass()), "Cannot stream " + result.getClass());
+        return new Source(result, JdkStreams.iterator(result));
+    }
+
+    /**
+     * Adapts values read from a request or response to the declared type. Closing the adapted value, or
+     * cancelling the subscription to a publisher, releases the request or response.
+     */
+    public static Object fromStreamed(final Streamed<Object> values, Class<?> type) {
+        if (type.equals(Iterator.class)) {
+            final Iterator<Object> iterator = values.iterator();
+            return new ClosableIterator<Object>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    return iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    Streams.close(values);
+                }
+            };
+        } else if (type.equals(Publisher.class)) {
+            return Publishers.fromStreamed(values);
+        } else if (STREAMS && JdkStreams.isStream(type)) {
+            return JdkStreams.create(values.iterator(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Streams.close(values);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        return values;
+    }
+
+    private static void close(Streamed<?> values) throws IOException {
+        try {
+            values.close();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static class Source extends Streamed<Object> {
+        private final Object source;
+        private Iterator<Object> iterator;
+
+        private Source(Object source, Iterator<Object> iterator) {
+            this.source = source;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            Validators.check(iterator != null, "Streamed values can only be iterated once");
+            Iterator<Object> values = iterator;
+            iterator = null;
+            return values;
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (source instanceof Closeable) {
+                ((Closeable) source).close();
+            } else if (STREAMS && JdkStreams.isStream(source.getClass())) {
+                JdkStreams.close(source);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core;
+
+import com.github.andrewoma.restless.core.exception.PayloadTooLargeException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class SpooledByteStreamTest {
+
+    @Test
+    public void shouldHoldSmallStreamsInMemory() throws Exception {
+        byte[] bytes = randomBytes(20000);
+        SpooledByteStream stream = SpooledByteStream.spool(new ByteArrayInputStream(bytes), 32 * 1024, 1024 * 1024);
+        try {
+            assertThat(stream.isInMemory()).isTrue();
+            assertThat(stream.getLength()).isEqualTo(bytes.length);
+            assertThat(read(stream.input())).isEqualTo(bytes);
+            assertThat(read(stream.input())).isEqualTo(bytes);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void shouldSpoolLargeStreamsToFiles() throws Exception {
+        byte[] bytes = randomBytes(100000);
+        SpooledByteStream stream = SpooledByteStream.spool(new ByteArrayInputStream(bytes), 32 * 1024, 1024 * 1024);
+        assertThat(stream.isInMemory()).isFalse();
+        assertThat(stream.getLength()).isEqualTo(bytes.length);
+        assertThat(read(stream.input())).isEqualTo(bytes);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        stream.output(output);
+        assertThat(output.toByteArray()).isEqualTo(bytes);
+
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        int spooled = countSpooledFiles(directory);
+        stream.close();
+        assertThat(countSpooledFiles(directory)).isEqualTo(spooled - 1);
+
+        try {
+            stream.input();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("closed");
+        }
+    }
+
+    @Test
+    public void shouldRejectStreamsExceedingMaxSize() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        int spooled = countSpooledFiles(directory);
+        try {
+            SpooledByteStream.spool(new ByteArrayInputStream(randomBytes(100000)), 1024, 50000);
+            fail("Expected exception");
+        } catch (PayloadTooLargeException e) {
+            assertThat(e.getStatus()).isEqualTo(413);
+        }
+        assertThat(countSpooledFiles(directory)).isEqualTo(spooled);
+    }
+
+    private int countSpooledFiles(File directory) {
+        int count = 0;
+        for (String name : directory.list()) {
+            if (name.startsWith("restless-spool")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+
+    private byte[] read(InputStream input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        input.close();
+        return output.toByteArray();
+    }
+}
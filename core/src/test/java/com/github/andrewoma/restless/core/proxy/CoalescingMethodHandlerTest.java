@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.core.proxy;
+
+import com.github.andrewoma.restless.annotations.Batchable;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.DefaultContext;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class CoalescingMethodHandlerTest {
+    private final List<List<Integer>> bulkCalls = Collections.synchronizedList(new ArrayList<List<Integer>>());
+    private final List<String> bulkCallers = Collections.synchronizedList(new ArrayList<String>());
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private volatile CountDownLatch bulkCallsReleased;
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldSendFullBatchesImmediately() throws Exception {
+        final Blogs blogs = createProxy(60000, 5);
+
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < 5; i++) {
+            final int id = i;
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return blogs.getBlog(id);
+                }
+            }));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(results.get(i).get()).isEqualTo("Blog " + i);
+        }
+        assertThat(bulkCalls).hasSize(1);
+        assertThat(bulkCalls.get(0)).hasSize(5);
+    }
+
+    @Test
+    public void shouldSendPartialBatchesOnceTheWindowElapses() throws Exception {
+        Blogs blogs = createProxy(10, 100);
+
+        assertThat(blogs.getTitle(1)).isEqualTo("Title 1");
+        assertThat(bulkCalls).hasSize(1);
+    }
+
+    @Test
+    public void shouldNotSendTheNextBatchWhenTheWindowOfAFullBatchElapses() throws Exception {
+        Blogs blogs = createProxy(500, 2);
+
+        Future<String> first = blogs.getBlogAsync(1);
+        Future<String> second = blogs.getBlogAsync(2);
+        assertThat(first.get()).isEqualTo("Blog 1");
+        assertThat(second.get()).isEqualTo("Blog 2");
+
+        Thread.sleep(250);
+        Future<String> third = blogs.getBlogAsync(3);
+        Thread.sleep(350);
+        assertThat(third.isDone()).isFalse();
+
+        assertThat(third.get()).isEqualTo("Blog 3");
+        assertThat(bulkCalls).hasSize(2);
+    }
+
+    @Test
+    public void shouldOnlyCoalesceCallsWithTheSameHeaders() throws Exception {
+        CoalescingMethodHandler<Context> handler = createHandler(100, 2);
+        Blogs alice = createProxy(handler, "alice");
+        Blogs bob = createProxy(handler, "bob");
+
+        Future<String> first = alice.getBlogAsync(1);
+        Future<String> second = bob.getBlogAsync(2);
+        assertThat(first.get()).isEqualTo("Blog 1");
+        assertThat(second.get()).isEqualTo("Blog 2");
+
+        assertThat(bulkCalls).hasSize(2);
+        assertThat(bulkCallers).containsOnly("alice", "bob");
+    }
+
+    @Test
+    public void shouldNotWaitForFullBatchesOfAsyncMethods() throws Exception {
+        Blogs blogs = createProxy(60000, 2);
+        bulkCallsReleased = new CountDownLatch(1);
+
+        Future<String> first = blogs.getBlogAsync(1);
+        Future<String> second = blogs.getBlogAsync(2);
+        assertThat(second.isDone()).isFalse();
+
+        bulkCallsReleased.countDown();
+        assertThat(first.get()).isEqualTo("Blog 1");
+        assertThat(second.get()).isEqualTo("Blog 2");
+    }
+
+    @Test
+    public void shouldRequestDuplicateValuesOnce() throws Exception {
+        final Blogs blogs = createProxy(60000, 3);
+
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (final int id : new int[]{1, 2, 1}) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return blogs.getBlog(id);
+                }
+            }));
+        }
+
+        assertThat(results.get(0).get()).isEqualTo("Blog 1");
+        assertThat(results.get(1).get()).isEqualTo("Blog 2");
+        assertThat(results.get(2).get()).isEqualTo("Blog 1");
+        assertThat(bulkCalls).hasSize(1);
+        assertThat(bulkCalls.get(0)).containsOnly(1, 2);
+    }
+
+    @Test
+    public void shouldReturnFuturesForAsyncMethods() throws Exception {
+        Blogs blogs = createProxy(60000, 2);
+
+        Future<String> first = blogs.getBlogAsync(1);
+        Future<String> second = blogs.getBlogAsync(2);
+
+        assertThat(first.get()).isEqualTo("Blog 1");
+        assertThat(second.get()).isEqualTo("Blog 2");
+        assertThat(bulkCalls).hasSize(1);
+    }
+
+    @Test
+    public void shouldFailAllCallersIfTheBulkCallFails() throws Exception {
+        Blogs blogs = createProxy(60000, 2);
+
+        Future<String> first = blogs.getBlogAsync(1);
+        Future<String> second = blogs.getBlogAsync(-1);
+
+        for (Future<String> future : Arrays.asList(first, second)) {
+            try {
+                future.get();
+                fail("Expected exception");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+            }
+        }
+    }
+
+    private Blogs createProxy(long windowMillis, int maxBatchSize) {
+        return createProxy(createHandler(windowMillis, maxBatchSize), "user");
+    }
+
+    private CoalescingMethodHandler<Context> createHandler(long windowMillis, int maxBatchSize) {
+        final BlogsImpl impl = new BlogsImpl();
+        MethodHandler<Context> handler = new MethodHandler<Context>() {
+            @Override
+            public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                bulkCallers.add(invocation.getContext().getRequestHeaders().get("x-user"));
+                try {
+                    return invocation.getMethod().invoke(impl, invocation.getParameters());
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return new CoalescingMethodHandler<Context>(handler, Blogs.class, executor, windowMillis, maxBatchSize);
+    }
+
+    private Blogs createProxy(CoalescingMethodHandler<Context> handler, final String user) {
+        return ProxyFactory.createProxy(Blogs.class, Collections.<MethodInterceptor<Context>>emptyList(), handler,
+                new ProxyFactory.ContextFactory<Context>() {
+                    @Override
+                    public Context create() {
+                        DefaultContext context = new DefaultContext("blogs");
+                        context.getRequestHeaders().put("x-user", user);
+                        return context;
+                    }
+                });
+    }
+
+    public interface Blogs {
+        @Batchable("getBlogs")
+        String getBlog(int id);
+
+        @Batchable("getBlogs")
+        Future<String> getBlogAsync(int id);
+
+        Map<Integer, String> getBlogs(List<Integer> ids);
+
+        @Batchable("getTitles")
+        String getTitle(int id);
+
+        List<String> getTitles(List<Integer> ids);
+    }
+
+    public class BlogsImpl implements Blogs {
+        @Override
+        public String getBlog(int id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<String> getBlogAsync(int id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<Integer, String> getBlogs(List<Integer> ids) {
+            if (bulkCallsReleased != null) {
+                try {
+                    bulkCallsReleased.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            bulkCalls.add(ids);
+            Map<Integer, String> blogs = new HashMap<Integer, String>();
+            for (Integer id : ids) {
+                if (id < 0) {
+                    throw new IllegalArgumentException("Invalid id " + id);
+                }
+                blogs.put(id, "Blog " + id);
+            }
+            return blogs;
+        }
+
+        @Override
+        public String getTitle(int id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> getTitles(List<Integer> ids) {
+            bulkCalls.add(ids);
+            List<String> titles = new ArrayList<String>();
+            for (Integer id : ids) {
+                titles.add("Title " + id);
+            }
+            return titles;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.proxy;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class MethodInvokerFactoryTest {
+
+    @Test
+    public void shouldInvokeViaReflection() throws Throwable {
+        verify(new ReflectiveMethodInvokerFactory());
+    }
+
+    @Test
+    public void shouldInvokeViaMethodHandles() throws Throwable {
+        verify(new MethodHandleInvokerFactory());
+    }
+
+    private void verify(MethodInvokerFactory factory) throws Throwable {
+        Target target = new TargetImpl();
+
+        assertThat(invoker(factory, target, "noArgs").invoke(new Object[0])).isEqualTo("none");
+        assertThat(invoker(factory, target, "oneArg").invoke(new Object[]{"a"})).isEqualTo("a");
+        assertThat(invoker(factory, target, "fiveArgs").invoke(new Object[]{1, 2L, "3", true, 5.0})).isEqualTo("123true5.0");
+        assertThat(invoker(factory, target, "primitive").invoke(new Object[]{41})).isEqualTo(42);
+        assertThat(invoker(factory, target, "noResult").invoke(new Object[0])).isNull();
+
+        try {
+            invoker(factory, target, "throwsException").invoke(new Object[0]);
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("Broken");
+        }
+    }
+
+    private MethodInvoker invoker(MethodInvokerFactory factory, Object target, String name) {
+        for (Method method : Target.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return factory.create(target, method);
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    public interface Target {
+        String noArgs();
+
+        String oneArg(String value);
+
+        String fiveArgs(int a, long b, String c, boolean d, double e);
+
+        int primitive(int value);
+
+        void noResult();
+
+        void throwsException();
+    }
+
+    public static class TargetImpl implements Target {
+        @Override
+        public String noArgs() {
+            return "none";
+        }
+
+        @Override
+        public String oneArg(String value) {
+            return value;
+        }
+
+        @Override
+        public String fiveArgs(int a, long b, String c, boolean d, double e) {
+            return "" + a + b + c + d + e;
+        }
+
+        @Override
+        public int primitive(int value) {
+            return value + 1;
+        }
+
+        @Override
+        public void noResult() {
+        }
+
+        @Override
+        public void throwsException() {
+            throw new IllegalStateException("Broken");
+        }
+    }
+}
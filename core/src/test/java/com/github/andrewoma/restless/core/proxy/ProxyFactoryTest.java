@@ -25,6 +25,12 @@ package com.github.andrewoma.restless.core.proxy;
 import org.junit.Test;
 
 import javax.inject.Named;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class ProxyFactoryTest {
     @Test
@@ -55,8 +61,46 @@ public class ProxyFactoryTest {
 
     }
 
+    @Test
+    public void shouldOnlyApplySelectiveInterceptorsToMatchingMethods() throws Exception {
+        final List<String> calls = new ArrayList<String>();
+        MethodInterceptor<Object> all = new MethodInterceptor<Object>() {
+            @Override
+            public Object invoke(MethodInvocation<Object> invocation) throws Throwable {
+                calls.add("all:" + invocation.getMethod().getName());
+                return invocation.proceed();
+            }
+        };
+        MethodInterceptor<Object> barOnly = new SelectiveMethodInterceptor<Object>() {
+            @Override
+            public boolean appliesTo(Method method) {
+                return method.getName().equals("bar");
+            }
+
+            @Override
+            public Object invoke(MethodInvocation<Object> invocation) throws Throwable {
+                calls.add("barOnly:" + invocation.getMethod().getName());
+                return invocation.proceed();
+            }
+        };
+
+        Foo foo = ProxyFactory.createProxy(Foo.class, Arrays.asList(all, barOnly), new TargetMethodHandler<Object>(new FooImpl()),
+                new ProxyFactory.ContextFactory<Object>() {
+                    @Override
+                    public Object create() {
+                        return null;
+                    }
+                });
+
+        assertThat(foo.bar("a")).isEqualTo("baz:a");
+        assertThat(foo.qux()).isEqualTo("qux");
+        assertThat(calls).containsExactly("all:bar", "barOnly:bar", "all:qux");
+    }
+
     public interface Foo {
         String bar(@Named("value") String value);
+
+        String qux();
     }
 
     public static class FooImpl implements Foo {
@@ -64,5 +108,10 @@ public class ProxyFactoryTest {
         public String bar(String value) {
             return "baz:" + value;
         }
+
+        @Override
+        public String qux() {
+            return "qux";
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.reactive;
+
+import com.github.andrewoma.restless.core.Streamed;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class PublishersTest {
+
+    @Test
+    public void shouldOnlyRequestPrefetchedElements() throws Exception {
+        RangePublisher publisher = new RangePublisher(100);
+        Iterator<Integer> iterator = Publishers.toStreamed(publisher, 8).iterator();
+
+        assertThat(publisher.requested.get()).isEqualTo(8);
+        List<Integer> values = new ArrayList<Integer>();
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+            assertThat(publisher.requested.get() - values.size()).isLessThanOrEqualTo(8);
+        }
+        assertThat(values).hasSize(100).startsWith(0, 1).endsWith(99);
+    }
+
+    @Test
+    public void shouldCancelSubscriptionOnClose() throws Exception {
+        RangePublisher publisher = new RangePublisher(100);
+        Streamed<Integer> streamed = Publishers.toStreamed(publisher, 8);
+
+        assertThat(streamed.iterator().next()).isEqualTo(0);
+        streamed.close();
+        assertThat(publisher.cancelled.get()).isTrue();
+    }
+
+    @Test
+    public void shouldPropagatePublisherErrors() {
+        Iterator<Object> iterator = Publishers.toStreamed(new Publisher<Object>() {
+            @Override
+            public void subscribe(Subscriber<? super Object> subscriber) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Broken"));
+            }
+        }).iterator();
+
+        try {
+            iterator.hasNext();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("Broken");
+        }
+    }
+
+    @Test
+    public void shouldPublishValuesAsRequested() {
+        final List<String> received = new ArrayList<String>();
+        final AtomicBoolean completed = new AtomicBoolean();
+        final Subscription[] subscription = new Subscription[1];
+
+        Publishers.fromStreamed(Streamed.of(Arrays.asList("a", "b", "c"))).subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(String value) {
+                received.add(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail("Unexpected error", t);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.set(true);
+            }
+        });
+
+        assertThat(received).isEmpty();
+        subscription[0].request(2);
+        assertThat(received).containsExactly("a", "b");
+        assertThat(completed.get()).isFalse();
+        subscription[0].request(2);
+        assertThat(received).containsExactly("a", "b", "c");
+        assertThat(completed.get()).isTrue();
+    }
+
+    @Test
+    public void shouldNotRecurseWhenRequestingFromOnNext() {
+        final List<Integer> received = new ArrayList<Integer>();
+        final Streamed<Integer> values = Publishers.toStreamed(new RangePublisher(10000), 8);
+
+        Publishers.fromStreamed(values).subscribe(new Subscriber<Integer>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(Integer value) {
+                received.add(value);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail("Unexpected error", t);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertThat(received).hasSize(10000);
+    }
+
+    @Test
+    public void shouldCloseValuesOnCancel() {
+        final AtomicBoolean closed = new AtomicBoolean();
+        Streamed<String> values = new Streamed<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return Arrays.asList("a", "b").iterator();
+            }
+
+            @Override
+            public void close() throws Exception {
+                closed.set(true);
+            }
+        };
+
+        Publishers.fromStreamed(values).subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.cancel();
+            }
+
+            @Override
+            public void onNext(String value) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertThat(closed.get()).isTrue();
+    }
+
+    /**
+     * Publishes integers synchronously as they are requested, recording the demand
+     */
+    private static class RangePublisher implements Publisher<Integer> {
+        private final int count;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private RangePublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(final Subscriber<? super Integer> subscriber) {
+            subscriber.onSubscribe(new RangeSubscription(subscriber, count) {
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                    super.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled.set(true);
+                    super.cancel();
+                }
+            });
+        }
+    }
+
+    private static class RangeSubscription implements Subscription {
+        private final Subscriber<? super Integer> subscriber;
+        private final int count;
+        private int next;
+        private boolean cancelled;
+
+        private RangeSubscription(Subscriber<? super Integer> subscriber, int count) {
+            this.subscriber = subscriber;
+            this.count = count;
+        }
+
+        @Override
+        public void request(long n) {
+            for (long i = 0; i < n && next < count && !cancelled; i++) {
+                subscriber.onNext(next++);
+            }
+            if (next == count && !cancelled) {
+                cancelled = true;
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
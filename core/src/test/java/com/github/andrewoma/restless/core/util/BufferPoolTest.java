@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BufferPoolTest {
+
+    @Test
+    public void shouldRoundSizesUpToTheirClass() {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_CLASS_CAPACITY, false);
+
+        assertThat(pool.acquire(0).length).isEqualTo(BufferPool.MIN_SIZE);
+        assertThat(pool.acquire(1025).length).isEqualTo(2048);
+        assertThat(pool.acquire(BufferPool.MAX_SIZE).length).isEqualTo(BufferPool.MAX_SIZE);
+        assertThat(pool.acquire(BufferPool.MAX_SIZE + 1).length).isEqualTo(BufferPool.MAX_SIZE + 1);
+    }
+
+    @Test
+    public void shouldReuseReleasedBuffers() {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_CLASS_CAPACITY, false);
+
+        byte[] first = pool.acquire(3000);
+        byte[] second = pool.acquire(3000);
+        pool.release(first);
+        pool.release(second);
+
+        // The first is cached by the thread while the second is shared
+        assertThat(pool.acquire(4096)).isSameAs(first);
+        assertThat(pool.acquire(4000)).isSameAs(second);
+        assertThat(pool.acquire(4000)).isNotSameAs(first).isNotSameAs(second);
+
+        BufferPool.Statistics statistics = pool.getStatistics();
+        assertThat(statistics.getAcquired()).isEqualTo(5);
+        assertThat(statistics.getAllocated()).isEqualTo(3);
+        assertThat(statistics.getReleased()).isEqualTo(2);
+        assertThat(statistics.getOutstanding()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldLimitTheSharedBuffers() {
+        BufferPool pool = new BufferPool(2 * BufferPool.MIN_SIZE, false);
+
+        byte[][] buffers = new byte[4][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire(1);
+        }
+        for (byte[] buffer : buffers) {
+            pool.release(buffer);
+        }
+
+        assertThat(pool.getStatistics().getPooled()).isEqualTo(2);
+        assertThat(pool.getStatistics().getPooledBytes()).isEqualTo(2 * BufferPool.MIN_SIZE);
+    }
+
+    @Test
+    public void shouldDetectBuffersThatAreNotReleased() throws Exception {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_CLASS_CAPACITY, true);
+        pool.release(pool.acquire(100));
+        pool.acquire(100);
+
+        for (int i = 0; i < 50 && pool.getStatistics().getLeaked() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(pool.getStatistics().getLeaked()).isEqualTo(1);
+        assertThat(pool.getStatistics().getOutstanding()).isZero();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class BufferingOutputStreamTest {
+
+    @Test
+    public void shouldReportLengthOfBodiesWithinTheSize() throws Exception {
+        final int[] length = {-1};
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BufferingOutputStream stream = createStream(output, length);
+
+        stream.write("small".getBytes("UTF-8"));
+        stream.flush();
+        assertThat(output.size()).isZero();
+        stream.finish();
+
+        assertThat(length[0]).isEqualTo(5);
+        assertThat(output.toString("UTF-8")).isEqualTo("small");
+    }
+
+    @Test
+    public void shouldStreamBodiesExceedingTheSize() throws Exception {
+        final int[] length = {-1};
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BufferingOutputStream stream = createStream(output, length);
+
+        byte[] body = new byte[1500];
+        stream.write(body, 0, 600);
+        assertThat(output.size()).isZero();
+        stream.write(body, 600, 900);
+        assertThat(stream.isStreaming()).isTrue();
+        assertThat(output.size()).isEqualTo(1500);
+        stream.finish();
+
+        assertThat(length[0]).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldFailWhenBoundedOutputExceedsTheLimit() throws Exception {
+        BoundedOutputStream stream = new BoundedOutputStream(2000);
+        try {
+            stream.write(new byte[1500]);
+            assertThat(stream.size()).isEqualTo(1500);
+            stream.write(new byte[501]);
+            fail("Expected exception");
+        } catch (BoundedOutputStream.LimitExceededException e) {
+            assertThat(BoundedOutputStream.isLimitExceeded(new RuntimeException(e))).isTrue();
+        } finally {
+            stream.release();
+        }
+    }
+
+    private BufferingOutputStream createStream(ByteArrayOutputStream output, final int[] length) {
+        return new BufferingOutputStream(output, 1000, new BufferingOutputStream.LengthListener() {
+            @Override
+            public void length(int value) {
+                length[0] = value;
+            }
+        });
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.core.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static com.github.andrewoma.restless.core.util.Compression.negotiate;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class CompressionTest {
+
+    @Test
+    public void shouldNegotiateEncoding() {
+        assertThat(negotiate(null)).isNull();
+        assertThat(negotiate("br")).isNull();
+        assertThat(negotiate("gzip")).isEqualTo("gzip");
+        assertThat(negotiate("deflate, gzip")).isEqualTo("gzip");
+        assertThat(negotiate("gzip;q=0.5, deflate")).isEqualTo("deflate");
+        assertThat(negotiate("gzip;q=0")).isNull();
+        assertThat(negotiate("*")).isEqualTo("gzip");
+    }
+
+    @Test
+    public void shouldWriteSmallBodiesUncompressed() throws Exception {
+        final boolean[] compressing = new boolean[1];
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CompressingOutputStream stream = createStream(output, compressing);
+
+        stream.write("small".getBytes("UTF-8"));
+        stream.finish();
+
+        assertThat(compressing[0]).isFalse();
+        assertThat(output.toString("UTF-8")).isEqualTo("small");
+    }
+
+    @Test
+    public void shouldCompressBodiesReachingTheThreshold() throws Exception {
+        final boolean[] compressing = new boolean[1];
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CompressingOutputStream stream = createStream(output, compressing);
+
+        byte[] body = new byte[1000];
+        stream.write(body, 0, 600);
+        assertThat(output.size()).isZero();
+        stream.write(body, 600, 400);
+        stream.finish();
+
+        assertThat(compressing[0]).isTrue();
+        assertThat(output.size()).isLessThan(body.length);
+        assertThat(read(Compression.decode("gzip", new ByteArrayInputStream(output.toByteArray())))).isEqualTo(body);
+    }
+
+    @Test
+    public void shouldFreeTheDeflaterOnceFinished() throws Exception {
+        for (String encoding : new String[]{Compression.GZIP, Compression.DEFLATE}) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            DeflaterOutputStream stream = Compression.encode(encoding, output);
+            stream.write("value".getBytes("UTF-8"));
+            stream.finish();
+
+            assertThat(read(Compression.decode(encoding, new ByteArrayInputStream(output.toByteArray()))))
+                    .isEqualTo("value".getBytes("UTF-8"));
+            Field field = DeflaterOutputStream.class.getDeclaredField("def");
+            field.setAccessible(true);
+            try {
+                ((Deflater) field.get(stream)).getBytesRead();
+                fail("Expected exception");
+            } catch (NullPointerException e) {
+                assertThat(e.getMessage()).contains("closed");
+            }
+        }
+    }
+
+    private CompressingOutputStream createStream(ByteArrayOutputStream output, final boolean[] compressing) {
+        return new CompressingOutputStream(output, Compression.GZIP, 1000, new Runnable() {
+            @Override
+            public void run() {
+                compressing[0] = true;
+            }
+        });
+    }
+
+    private byte[] read(InputStream input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.core.util;
+
+import org.junit.Test;
+
+import static com.github.andrewoma.restless.core.util.Ranges.parse;
+import static com.github.andrewoma.restless.core.util.Ranges.parseContentRange;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RangesTest {
+
+    @Test
+    public void shouldParseRanges() {
+        assertThat(parse("bytes=0-99", 1000)).containsExactly(0, 99);
+        assertThat(parse("bytes=500-", 1000)).containsExactly(500, 999);
+        assertThat(parse("bytes=900-2000", 1000)).containsExactly(900, 999);
+        assertThat(parse("bytes=-100", 1000)).containsExactly(900, 999);
+        assertThat(parse("bytes=-2000", 1000)).containsExactly(0, 999);
+    }
+
+    @Test
+    public void shouldIgnoreUnsupportedRanges() {
+        assertThat(parse(null, 1000)).isNull();
+        assertThat(parse("items=0-99", 1000)).isNull();
+        assertThat(parse("bytes=0-99,200-299", 1000)).isNull();
+        assertThat(parse("bytes=99-0", 1000)).isNull();
+        assertThat(parse("bytes=a-b", 1000)).isNull();
+    }
+
+    @Test
+    public void shouldRejectUnsatisfiableRanges() {
+        assertThat(parse("bytes=1000-", 1000)).isEmpty();
+        assertThat(parse("bytes=-0", 1000)).isEmpty();
+    }
+
+    @Test
+    public void shouldFormatAndParseContentRanges() {
+        assertThat(Ranges.range(100, 50)).isEqualTo("bytes=100-149");
+        assertThat(Ranges.contentRange(100, 149, 1000)).isEqualTo("bytes 100-149/1000");
+        assertThat(parseContentRange("bytes 100-149/1000")).containsExactly(100, 149, 1000);
+        assertThat(parseContentRange("bytes 100-149/*")).containsExactly(100, 149, -1);
+        assertThat(parseContentRange("bytes */1000")).isNull();
+    }
+}
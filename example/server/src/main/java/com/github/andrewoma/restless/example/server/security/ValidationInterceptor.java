@@ -25,26 +25,35 @@ package com.github.andrewoma.restless.example.server.security;
 import com.github.andrewoma.restless.core.Context;
 import com.github.andrewoma.restless.core.Contexts;
 import com.github.andrewoma.restless.core.exception.ValidationException;
-import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
 import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.proxy.SelectiveMethodInterceptor;
 import com.github.andrewoma.restless.core.proxy.TargetMethodHandler;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Path;
 import javax.validation.Validator;
 import javax.validation.executable.ExecutableValidator;
+import javax.validation.metadata.MethodDescriptor;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
-public class ValidationInterceptor implements MethodInterceptor<Context> {
+public class ValidationInterceptor implements SelectiveMethodInterceptor<Context> {
     private final Validator validator;
 
     public ValidationInterceptor(Validator validator) {
         this.validator = validator;
     }
 
+    @Override
+    public boolean appliesTo(Method method) {
+        MethodDescriptor descriptor = validator.getConstraintsForClass(method.getDeclaringClass())
+                .getConstraintsForMethod(method.getName(), method.getParameterTypes());
+        return descriptor != null && descriptor.hasConstrainedParameters();
+    }
+
     @Override
     public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
         TargetMethodHandler<Context> handler = (TargetMethodHandler<Context>) invocation.getHandler();
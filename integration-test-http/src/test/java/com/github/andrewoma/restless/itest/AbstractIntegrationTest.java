@@ -44,7 +44,9 @@ public class AbstractIntegrationTest {
         ServletHandler handler = new ServletHandler();
         server.setHandler(handler);
         servlet = new RestlessServlet(null);
-        handler.addServletWithMapping(new ServletHolder(servlet), "/rpc/*");
+        ServletHolder holder = new ServletHolder(servlet);
+        holder.setAsyncSupported(true);
+        handler.addServletWithMapping(holder, "/rpc/*");
         server.start();
     }
 
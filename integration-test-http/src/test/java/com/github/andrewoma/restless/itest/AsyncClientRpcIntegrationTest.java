@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.itest;
+
+import com.github.andrewoma.restless.client.DefaultClientExceptionHandler;
+import com.github.andrewoma.restless.client.http.async.AsyncHttpClientMethodHandler;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.server.DefaultServerExceptionHandler;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.Service;
+import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncClientRpcIntegrationTest extends RpcIntegrationTest {
+    private CloseableHttpAsyncClient asyncClient = HttpAsyncClients.createDefault();
+
+    @Before
+    public void startAsyncClient() {
+        asyncClient.start();
+    }
+
+    @After
+    public void stopAsyncClient() throws Exception {
+        asyncClient.close();
+    }
+
+    @Override
+    protected MethodHandler<Context> createClientHandler(URI uri) throws Exception {
+        return new AsyncHttpClientMethodHandler<Context>(asyncClient, uri, objectMapper, new DefaultClientExceptionHandler());
+    }
+
+    @Test
+    public void shouldStreamRequestsWhileTheyAreWritten() throws Exception {
+        firstValueReceived = new CountDownLatch(1);
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        // Values larger than the buffers push the first value to the server before the source finishes
+        final String large = Strings.repeat("x", 1024 * 1024);
+        String joined = proxy.join(new Streamed<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new AbstractIterator<String>() {
+                    private int next;
+
+                    @Override
+                    protected String computeNext() {
+                        switch (next++) {
+                            case 0:
+                            case 1:
+                                return large;
+                            case 2:
+                                try {
+                                    return String.valueOf(firstValueReceived.await(5, TimeUnit.SECONDS));
+                                } catch (InterruptedException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            default:
+                                return endOfData();
+                        }
+                    }
+                };
+            }
+        });
+        assertThat(joined).isEqualTo("1048576,1048576,true,");
+    }
+
+    @Override
+    protected boolean isBlockingHttpClient() {
+        return false;
+    }
+}
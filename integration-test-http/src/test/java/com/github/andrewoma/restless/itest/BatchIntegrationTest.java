@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.itest;
+
+import com.github.andrewoma.restless.annotations.Batchable;
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.client.Batch;
+import com.github.andrewoma.restless.client.http.HttpClientBuilder;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.exception.RemoteException;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class BatchIntegrationTest extends AbstractIntegrationTest {
+    @Before
+    public void setHandler() {
+        BlogServiceImpl.bulkCalls.set(0);
+        servlet.setHandler(new ServerHandlerBuilder().service(new BlogServiceImpl()).build());
+    }
+
+    @Test
+    public void shouldExecuteCallsInASingleRequest() throws Exception {
+        assertBatch(new HttpClientBuilder().httpClient(client).uri(server.getURI().resolve("/rpc")).batch());
+    }
+
+    @Test
+    public void shouldExecuteBatchesUsingBinaryCodecs() throws Exception {
+        assertBatch(new HttpClientBuilder().httpClient(client).uri(server.getURI().resolve("/rpc"))
+                .codec(Codecs.smile()).batch());
+    }
+
+    @Test
+    public void shouldExecuteBatchesWithNonBlockingIo() throws Exception {
+        servlet.setAsyncEnabled(true);
+        assertBatch(new HttpClientBuilder().httpClient(client).uri(server.getURI().resolve("/rpc")).batch());
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentCalls() throws Exception {
+        final BlogService blogs = new HttpClientBuilder().httpClient(client).uri(server.getURI().resolve("/rpc"))
+                .coalesce(60000, 4).build(BlogService.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> titles = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                final int id = i;
+                titles.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return blogs.getTitle(id);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < 4; i++) {
+                assertThat(titles.get(i).get()).isEqualTo("Blog " + i);
+            }
+            assertThat(BlogServiceImpl.bulkCalls.get()).isEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertBatch(Batch batch) throws Exception {
+        BlogService blogs = batch.proxy(BlogService.class);
+
+        List<Future<String>> titles = new ArrayList<Future<String>>();
+        for (int i = 0; i < 10; i++) {
+            titles.add(batch.result(blogs.getTitle(i)));
+        }
+        Future<Integer> count = batch.result(blogs.count());
+        Future<String> missing = batch.result(blogs.getTitle(-1));
+
+        batch.execute();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(titles.get(i).get()).isEqualTo("Blog " + i);
+        }
+        assertThat(count.get()).isEqualTo(10);
+        try {
+            missing.get();
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(RemoteException.class);
+            assertThat(e.getCause().getMessage()).isEqualTo("No blog -1");
+        }
+    }
+
+    @Service("blogs")
+    public interface BlogService {
+        @Batchable("getTitles")
+        String getTitle(@Named("id") int id);
+
+        List<String> getTitles(@Named("ids") List<Integer> ids);
+
+        int count();
+    }
+
+    public static class BlogServiceImpl implements BlogService {
+        private static final AtomicInteger bulkCalls = new AtomicInteger();
+
+        @Override
+        public List<String> getTitles(List<Integer> ids) {
+            bulkCalls.incrementAndGet();
+            List<String> titles = new ArrayList<String>();
+            for (Integer id : ids) {
+                titles.add(getTitle(id));
+            }
+            return titles;
+        }
+
+        @Override
+        public String getTitle(int id) {
+            if (id < 0) {
+                throw new IllegalArgumentException("No blog " + id);
+            }
+            return "Blog " + id;
+        }
+
+        @Override
+        public int count() {
+            return 10;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.github.andrewoma.restless.itest;
+
+import com.github.andrewoma.restless.client.DefaultClientExceptionHandler;
+import com.github.andrewoma.restless.client.http.HttpClientMethodHandler;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.DefaultContext;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.AsyncMethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.proxy.ProxyFactory;
+import com.github.andrewoma.restless.core.util.Compression;
+import com.github.andrewoma.restless.server.DefaultServerExceptionHandler;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.Service;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.CharStreams;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the RPC tests with compressed requests and responses. The http client's own decompression is disabled
+ * so that the client handler's decoding is exercised.
+ */
+public class CompressionRpcIntegrationTest extends RpcIntegrationTest {
+    @Before
+    public void enableCompression() throws Exception {
+        servlet.setCompressionThreshold(0);
+        client.close();
+        client = HttpClients.custom().disableContentCompression().build();
+    }
+
+    @Override
+    protected MethodHandler<Context> createClientHandler(URI uri) throws Exception {
+        return new AsyncMethodHandler<Context>(new HttpClientMethodHandler<Context>(client, uri, objectMapper,
+                new DefaultClientExceptionHandler(), Codecs.json(), 0), executor);
+    }
+
+    @Test
+    public void shouldOnlyCompressResponsesReachingTheThreshold() throws Exception {
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        servlet.setCompressionThreshold(1024);
+        CloseableHttpResponse response = post("{\"value\":\"boo\"}");
+        try {
+            assertThat(response.getFirstHeader(Compression.CONTENT_ENCODING)).isNull();
+        } finally {
+            response.close();
+        }
+
+        servlet.setCompressionThreshold(0);
+        response = post("{\"value\":\"boo\"}");
+        try {
+            assertThat(response.getFirstHeader(Compression.CONTENT_ENCODING).getValue()).isEqualTo(Compression.GZIP);
+            String body = CharStreams.toString(new InputStreamReader(
+                    Compression.decode(Compression.GZIP, response.getEntity().getContent()), Charsets.UTF_8));
+            assertThat(body).isEqualTo("\"value=boo\"");
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void shouldStreamLargeCompressedRequests() throws Exception {
+        final List<String> requestHeaders = Collections.synchronizedList(new ArrayList<String>());
+        MethodInterceptor<Context> interceptor = new MethodInterceptor<Context>() {
+            @Override
+            public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                Map<String, String> headers = invocation.getContext().getRequestHeaders();
+                requestHeaders.add(Headers.get(headers, Codecs.CONTENT_LENGTH) + " "
+                        + Headers.get(headers, Compression.CONTENT_ENCODING));
+                return invocation.proceed();
+            }
+        };
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.of(interceptor), objectMapper, new DefaultServerExceptionHandler()));
+
+        Foo proxy = ProxyFactory.createProxy(Foo.class, ImmutableList.<MethodInterceptor<Context>>of(),
+                new HttpClientMethodHandler<Context>(client, server.getURI().resolve("/rpc"), objectMapper,
+                        new DefaultClientExceptionHandler(), Codecs.json(), 0, 1024),
+                new ProxyFactory.ContextFactory<Context>() {
+                    @Override
+                    public Context create() {
+                        return new DefaultContext("Foo");
+                    }
+                });
+
+        // Bodies beyond the buffer size are compressed as they are written rather than buffered
+        String value = Strings.repeat("x", 100000);
+        assertThat(proxy.bar(value)).isEqualTo("value=" + value);
+        assertThat(requestHeaders.get(0)).isEqualTo("null gzip");
+
+        assertThat(proxy.bar("boo")).isEqualTo("value=boo");
+        assertThat(requestHeaders.get(1)).endsWith(" gzip").doesNotStartWith("null");
+    }
+
+    private CloseableHttpResponse post(String body) throws Exception {
+        HttpPost request = new HttpPost(server.getURI().resolve("/rpc/Foo/bar"));
+        request.setHeader(Compression.ACCEPT_ENCODING, Compression.GZIP);
+        request.setEntity(new StringEntity(body, Charsets.UTF_8));
+        return client.execute(request);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.itest;
+
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.exception.PayloadTooLargeException;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.server.DefaultServerExceptionHandler;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.Service;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Runs the RPC tests with the servlet in non-blocking mode. Streaming calls fall back to blocking I/O.
+ */
+public class NonBlockingRpcIntegrationTest extends RpcIntegrationTest {
+    @Before
+    public void enableNonBlocking() {
+        servlet.setAsyncEnabled(true);
+    }
+
+    @Test
+    public void shouldRejectRequestsExceedingTheMaximumSize() throws Exception {
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+        servlet.setMaxRequestSize(1024);
+
+        assertThat(proxy.bar("small")).isEqualTo("value=small");
+        try {
+            proxy.bar(Strings.repeat("large", 1000));
+            fail("Expected exception");
+        } catch (PayloadTooLargeException e) {
+            assertThat(e.getMessage()).contains("maximum size");
+        }
+    }
+
+    @Test
+    public void shouldCloseTheConnectionRatherThanDrainLargeRequests() throws Exception {
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+        servlet.setMaxRequestSize(1024);
+
+        String response = postPartially("/rpc/Foo/bar", 256 * 1024);
+        assertThat(response).startsWith("HTTP/1.1 413").containsIgnoringCase("Connection: close");
+    }
+}
@@ -23,36 +23,73 @@
 package com.github.andrewoma.restless.itest;
 
 import com.github.andrewoma.restless.client.DefaultClientExceptionHandler;
+import com.github.andrewoma.restless.client.Downloads;
 import com.github.andrewoma.restless.client.http.HttpClientMethodHandler;
 import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.ClosableIterator;
 import com.github.andrewoma.restless.core.Context;
 import com.github.andrewoma.restless.core.Contexts;
 import com.github.andrewoma.restless.core.DefaultContext;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.SeekableByteStream;
 import com.github.andrewoma.restless.core.Streamed;
 import com.github.andrewoma.restless.core.StreamedType;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.exception.PayloadTooLargeException;
 import com.github.andrewoma.restless.core.exception.RemoteException;
+import com.github.andrewoma.restless.core.proxy.AsyncMethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
 import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
 import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.proxy.MethodInvokers;
 import com.github.andrewoma.restless.core.proxy.ProxyFactory;
+import com.github.andrewoma.restless.core.reactive.Publishers;
 import com.github.andrewoma.restless.server.DefaultServerExceptionHandler;
-import com.github.andrewoma.restless.server.MapServiceProvider;
 import com.github.andrewoma.restless.server.ServerHandler;
 import com.github.andrewoma.restless.server.Service;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
 import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 import javax.inject.Named;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.net.Socket;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 
 public class RpcIntegrationTest extends AbstractIntegrationTest {
     private MethodInterceptor<Context> interceptor1 = new MethodInterceptor<Context>() {
@@ -82,20 +119,36 @@ public class RpcIntegrationTest extends AbstractIntegrationTest {
         }
     };
 
+    protected ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    /**
+     * Creates the client side handler for the given uri, allowing subclasses to test other transports
+     */
+    protected MethodHandler<Context> createClientHandler(URI uri) throws Exception {
+        return new AsyncMethodHandler<Context>(new HttpClientMethodHandler<Context>(client, uri, objectMapper,
+                new DefaultClientExceptionHandler()), executor);
+    }
+
+    protected Foo createProxy(List<MethodInterceptor<Context>> interceptors) throws Exception {
+        return ProxyFactory.createProxy(Foo.class, interceptors, createClientHandler(server.getURI().resolve("/rpc")),
+                new ProxyFactory.ContextFactory<Context>() {
+                    @Override
+                    public Context create() {
+                        return new DefaultContext("Foo");
+                    }
+                });
+    }
+
     @Test
     public void shouldHandleSuccessfulRequests() throws Exception {
-        URI resolve = server.getURI().resolve("/rpc");
-        HttpClientMethodHandler<Context> handler = new HttpClientMethodHandler<Context>(client, resolve, objectMapper,
-                new DefaultClientExceptionHandler());
+        Foo proxy = createProxy(ImmutableList.of(interceptor1, interceptor2));
 
-        Foo proxy = ProxyFactory.createProxy(Foo.class, ImmutableList.of(interceptor1, interceptor2), handler, new ProxyFactory.ContextFactory<Context>() {
-            @Override
-            public Context create() {
-                return new DefaultContext("Foo");
-            }
-        });
-
-        servlet.setHandler(new ServerHandler(new MapServiceProvider(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl()))),
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
                 ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
 
         assertThat(proxy.bar("boo")).isEqualTo("value=boo");
@@ -124,18 +177,329 @@ public class RpcIntegrationTest extends AbstractIntegrationTest {
         } finally {
             output.close();
         }
+    }
+
+    @Test
+    public void shouldSendFiles() throws Exception {
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        byte[] bytes = new byte[1024 * 1024];
+        new Random(1).nextBytes(bytes);
+        File file = File.createTempFile("restless", ".bin");
+        File copy = File.createTempFile("restless", ".bin");
+        try {
+            Files.write(bytes, file);
+
+            ByteStream output = proxy.file(file.getPath());
+            try {
+                output.toFile(copy);
+            } finally {
+                output.close();
+            }
+            assertThat(copy).hasBinaryContent(bytes);
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+
+    @Test
+    public void shouldDownloadRangesOfFiles() throws Exception {
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        byte[] bytes = new byte[(int) (3 * Downloads.MIN_SEGMENT_SIZE + 1000)];
+        new Random(1).nextBytes(bytes);
+        File file = File.createTempFile("restless", ".bin");
+        File copy = File.createTempFile("restless", ".bin");
+        try {
+            Files.write(bytes, file);
+
+            ByteStream output = proxy.file(file.getPath());
+            assertThat(output instanceof SeekableByteStream).isEqualTo(isBlockingHttpClient());
+            if (output instanceof SeekableByteStream) {
+                SeekableByteStream slice = ((SeekableByteStream) output).slice(100, 50);
+                try {
+                    assertThat(ByteStreams.toByteArray(slice.input())).isEqualTo(Arrays.copyOfRange(bytes, 100, 150));
+                } finally {
+                    slice.close();
+                }
+            }
+
+            Downloads.toFile(output, copy);
+            assertThat(copy).hasBinaryContent(bytes);
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+
+    /**
+     * Returns true if the client is the blocking http client, which buffers small requests and returns seekable
+     * streams for results that accept ranges
+     */
+    protected boolean isBlockingHttpClient() {
+        return true;
+    }
+
+    @Test
+    public void shouldSendSmallBodiesWithContentLength() throws Exception {
+        final List<String> requestLengths = Collections.synchronizedList(new ArrayList<String>());
+        MethodInterceptor<Context> interceptor = new MethodInterceptor<Context>() {
+            @Override
+            public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                requestLengths.add(Headers.get(invocation.getContext().getRequestHeaders(), Codecs.CONTENT_LENGTH));
+                return invocation.proceed();
+            }
+        };
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.of(interceptor), objectMapper, new DefaultServerExceptionHandler()));
+
+        assertThat(proxy.bar("boo")).isEqualTo("value=boo");
+        assertThat(requestLengths.get(0)).isNotNull();
+
+        HttpPost request = new HttpPost(server.getURI().resolve("/rpc/Foo/bar"));
+        request.setEntity(new StringEntity("{\"value\":\"boo\"}", Charsets.UTF_8));
+        CloseableHttpResponse response = client.execute(request);
+        try {
+            assertThat(response.getFirstHeader(Codecs.CONTENT_LENGTH).getValue()).isEqualTo(
+                    String.valueOf(EntityUtils.toByteArray(response.getEntity()).length));
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void shouldSpoolByteStreamParameters() throws Exception {
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler(),
+                MethodInvokers.defaultFactory(), Codecs.defaults(), null, ServerHandler.DEFAULT_MAX_BATCH_SIZE,
+                1024, 64 * 1024));
+
+        final byte[] bytes = new byte[32 * 1024];
+        new Random(1).nextBytes(bytes);
+        assertThat(proxy.length(new ByteStream() {
+            @Override
+            public void output(OutputStream output) throws Exception {
+                output.write(bytes);
+            }
+        })).isEqualTo(bytes.length);
+
+        try {
+            proxy.length(new ByteStream() {
+                @Override
+                public void output(OutputStream output) throws Exception {
+                    output.write(bytes);
+                    output.write(bytes);
+                    output.write(bytes);
+                }
+            });
+            fail("Expected exception");
+        } catch (PayloadTooLargeException e) {
+            assertThat(e.getMessage()).contains("maximum size");
+        }
+    }
+
+    @Test
+    public void shouldCloseTheConnectionRatherThanDrainLargeRejectedBodies() throws Exception {
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler(),
+                MethodInvokers.defaultFactory(), Codecs.defaults(), null, ServerHandler.DEFAULT_MAX_BATCH_SIZE,
+                1024, 64 * 1024));
+
+        String response = postPartially("/rpc/Foo/length", 256 * 1024);
+        assertThat(response).startsWith("HTTP/1.1 413").containsIgnoringCase("Connection: close");
+    }
+
+    /**
+     * Posts part of a body declared to be much larger, returning the response headers. Fails by timing out if
+     * the server waits for the rest of the body.
+     */
+    protected String postPartially(String path, int length) throws Exception {
+        Socket socket = new Socket(server.getURI().getHost(), server.getURI().getPort());
+        try {
+            socket.setSoTimeout(10000);
+            OutputStream output = socket.getOutputStream();
+            output.write(("POST " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + (1024 * 1024 * 1024)
+                    + "\r\n\r\n").getBytes(Charsets.US_ASCII));
+            output.write(new byte[length]);
+            output.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    Charsets.US_ASCII));
+            StringBuilder headers = new StringBuilder();
+            for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                headers.append(line).append("\n");
+            }
+            return headers.toString();
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void shouldStreamValues() throws Exception {
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            values.add("value" + i);
+        }
+
+        Streamed<String> result = proxy.streaming(Streamed.of(values));
+        List<String> received = new ArrayList<String>();
+        try {
+            for (String value : result) {
+                received.add(value);
+            }
+        } finally {
+            result.close();
+        }
+
+        assertThat(received).hasSize(1000);
+        assertThat(received.get(0)).isEqualTo("VALUE0");
+        assertThat(received.get(999)).isEqualTo("VALUE999");
+
+        assertThat(proxy.streaming(Streamed.of(Collections.<String>emptyList()))).isEmpty();
+    }
+
+    @Test
+    public void shouldFlushValuesFromSlowSources() throws Exception {
+        firstValueReceived = new CountDownLatch(1);
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        Iterator<String> values = proxy.slowValues();
+        assertThat(values.next()).isEqualTo("first");
+        firstValueReceived.countDown();
+
+        // The source reports whether the first value arrived before it finished
+        assertThat(values.next()).isEqualTo("true");
+        assertThat(values.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldStreamPublishers() throws Exception {
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            values.add("value" + i);
+        }
+
+        final List<String> received = new ArrayList<String>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        proxy.echo(Publishers.fromStreamed(Streamed.of(values))).subscribe(new Subscriber<String>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(String value) {
+                received.add(value);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                error.set(t);
+                completed.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        assertThat(completed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(error.get()).isNull();
+        assertThat(received).isEqualTo(values);
+    }
+
+    @Test
+    public void shouldStreamIteratorsLazily() throws Exception {
+        Foo proxy = createProxy(ImmutableList.<MethodInterceptor<Context>>of());
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        sourceClosed = new CountDownLatch(1);
+        Iterator<String> iterator = proxy.iterator(500);
+        assertThat(iterator instanceof ClosableIterator).isTrue();
+        List<String> received = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            received.add(iterator.next());
+        }
+        assertThat(received).hasSize(500).startsWith("0", "1").endsWith("499");
+        assertThat(sourceClosed.await(10, TimeUnit.SECONDS)).isTrue();
 
+        Iterable<FooResponse> responses = proxy.iterable(3);
+        List<Integer> bars = new ArrayList<Integer>();
+        for (FooResponse response : responses) {
+            bars.add(response.bar);
+        }
+        assertThat(bars).containsExactly(0, 1, 2);
 
-//        Streamed<String> result = proxy.streaming(new Streamed<String>(String.class) {
-//            @Override
-//            public Iterator<String> iterator() {
-//                return Arrays.asList("hello", "there").iterator();
-//            }
-//        });
-//
-//        for (String next : result) {
-//            System.out.println(next);
-//        }
+        Stream<String> values = proxy.values(3);
+        try {
+            assertThat(values.iterator()).containsExactly("a0", "a1", "a2");
+        } finally {
+            values.close();
+        }
+
+        // Closing early releases the response
+        ClosableIterator<String> partial = (ClosableIterator<String>) proxy.iterator(1000);
+        assertThat(partial.next()).isEqualTo("0");
+        partial.close();
+        assertThat(proxy.bar("boo")).isEqualTo("value=boo");
+    }
+
+    @Test
+    public void shouldHandleAsyncRequests() throws Exception {
+        Foo proxy = createProxy(ImmutableList.of(interceptor1));
+
+        servlet.setHandler(new ServerHandler(ImmutableMap.of("Foo", new Service(Foo.class, new FooImpl())),
+                ImmutableList.<MethodInterceptor<Context>>of(), objectMapper, new DefaultServerExceptionHandler()));
+
+        CompletableFuture<FooResponse> future = proxy.async(FooRequest.create("boo", 2));
+        FooResponse response = future.get(10, TimeUnit.SECONDS);
+        assertThat(response.bar).isEqualTo(200);
+        assertThat(response.foo).isEqualTo("foo=boo");
+
+        try {
+            proxy.asyncFailure().get(10, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(RemoteException.class);
+            assertThat(e.getCause().getMessage()).isEqualTo("Async broken");
+        }
+
+        // Futures without a result type are read as values rather than streams that hold the response open
+        assertThat(proxy.asyncUntyped().get(10, TimeUnit.SECONDS)).isEqualTo("untyped");
+        assertThat(proxy.bar("boo")).isEqualTo("value=boo");
     }
 
     public interface Foo {
@@ -152,6 +516,28 @@ public class RpcIntegrationTest extends AbstractIntegrationTest {
         Streamed<String> streaming(@StreamedType(String.class) @Named("request") Streamed<String> strings);
 
         ByteStream stream(ByteStream byteStream);
+
+        ByteStream file(@Named("path") String path);
+
+        long length(ByteStream byteStream);
+
+        Iterator<String> iterator(@Named("count") int count);
+
+        Iterator<String> slowValues();
+
+        String join(@StreamedType(String.class) @Named("values") Streamed<String> values);
+
+        Iterable<FooResponse> iterable(@Named("count") int count);
+
+        Stream<String> values(@Named("count") int count);
+
+        Publisher<String> echo(@Named("values") Publisher<String> values);
+
+        CompletableFuture<FooResponse> async(@Named("request") FooRequest request);
+
+        Future<String> asyncFailure();
+
+        Future<?> asyncUntyped();
     }
 
     public static class FooRequest {
@@ -178,7 +564,81 @@ public class RpcIntegrationTest extends AbstractIntegrationTest {
         public int bar;
     }
 
+    private static volatile CountDownLatch sourceClosed = new CountDownLatch(1);
+    protected static volatile CountDownLatch firstValueReceived = new CountDownLatch(1);
+
     public static class FooImpl implements Foo {
+        @Override
+        public Publisher<String> echo(Publisher<String> values) {
+            return values;
+        }
+
+        @Override
+        public Iterator<String> iterator(final int count) {
+            return new CountingIterator(count);
+        }
+
+        @Override
+        public String join(Streamed<String> values) {
+            StringBuilder joined = new StringBuilder();
+            for (String value : values) {
+                if (joined.length() == 0) {
+                    firstValueReceived.countDown();
+                }
+                joined.append(value.length() > 10 ? value.length() : value).append(",");
+            }
+            return joined.toString();
+        }
+
+        @Override
+        public Iterator<String> slowValues() {
+            // Simulates a slow source that only produces the second value once the client has received the first
+            return new Iterator<String>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < 2;
+                }
+
+                @Override
+                public String next() {
+                    try {
+                        if (next++ == 0) {
+                            Thread.sleep(200);
+                            return "first";
+                        }
+                        return String.valueOf(firstValueReceived.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public Iterable<FooResponse> iterable(int count) {
+            List<FooResponse> responses = new ArrayList<FooResponse>();
+            for (int i = 0; i < count; i++) {
+                responses.add(FooResponse.create("foo", i));
+            }
+            return responses;
+        }
+
+        @Override
+        public Stream<String> values(int count) {
+            List<String> values = new ArrayList<String>();
+            for (int i = 0; i < count; i++) {
+                values.add("a" + i);
+            }
+            return values.stream();
+        }
+
         @Override
         public String bar(String value) {
             Context context = Contexts.get();
@@ -221,20 +681,113 @@ public class RpcIntegrationTest extends AbstractIntegrationTest {
         }
 
         @Override
-        public Streamed<String> streaming(Streamed<String> strings) {
-            List<String> received = new ArrayList<String>();
-            for (String value : strings) {
-                received.add(value);
+        public ByteStream file(String path) {
+            return ByteStream.fromFile(new File(path));
+        }
+
+        @Override
+        public long length(ByteStream byteStream) {
+            // Spooled streams can be read more than once
+            try {
+                long length = ByteStreams.copy(byteStream.input(), ByteStreams.nullOutputStream());
+                assertThat(ByteStreams.copy(byteStream.input(), ByteStreams.nullOutputStream())).isEqualTo(length);
+                return length;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
             }
+        }
+
+        @Override
+        public CompletableFuture<FooResponse> async(final FooRequest request) {
+            final CompletableFuture<FooResponse> future = new CompletableFuture<FooResponse>();
+            new Thread() {
+                @Override
+                public void run() {
+                    future.complete(quk(request));
+                }
+            }.start();
+            return future;
+        }
 
-            return null;
-//
-//            return new Streamed<String>(String.class) {
-//                @Override
-//                public Iterator<String> iterator() {
-//                    return super.iterator();
-//                }
-//            };
+        @Override
+        public Future<String> asyncFailure() {
+            final CompletableFuture<String> future = new CompletableFuture<String>();
+            new Thread() {
+                @Override
+                public void run() {
+                    future.completeExceptionally(new IllegalArgumentException("Async broken"));
+                }
+            }.start();
+            return future;
+        }
+
+        @Override
+        public Future<?> asyncUntyped() {
+            return CompletableFuture.completedFuture("untyped");
+        }
+
+        @Override
+        public Streamed<String> streaming(final Streamed<String> strings) {
+            // Transforms each value as it is read from the request and written to the response
+            return new Streamed<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    final Iterator<String> iterator = strings.iterator();
+                    return new Iterator<String>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public String next() {
+                            return iterator.next().toUpperCase();
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public void close() throws Exception {
+                    strings.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * Simulates a cursor, generating values as they are read and recording when it is closed
+     */
+    private static class CountingIterator implements Iterator<String>, Closeable {
+        private final int count;
+        private int next;
+
+        private CountingIterator(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public String next() {
+            return String.valueOf(next++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            sourceClosed.countDown();
         }
     }
 }
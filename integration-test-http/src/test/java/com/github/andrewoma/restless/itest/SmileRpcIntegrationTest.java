@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.itest;
+
+import com.github.andrewoma.restless.client.DefaultClientExceptionHandler;
+import com.github.andrewoma.restless.client.http.HttpClientMethodHandler;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.AsyncMethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+
+import java.net.URI;
+
+public class SmileRpcIntegrationTest extends RpcIntegrationTest {
+    @Override
+    protected MethodHandler<Context> createClientHandler(URI uri) throws Exception {
+        return new AsyncMethodHandler<Context>(new HttpClientMethodHandler<Context>(client, uri, objectMapper,
+                new DefaultClientExceptionHandler(), Codecs.smile()), executor);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.itest;
+
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.client.http.HttpClientBuilder;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Contexts;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.StreamingHandler;
+import com.github.andrewoma.restless.core.exception.ConflictException;
+import com.github.andrewoma.restless.core.exception.ServerException;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.util.QueueIterator;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import com.github.andrewoma.restless.server.http.RestlessServlet;
+import com.github.andrewoma.restless.server.http.RestlessWebSocketEndpoint;
+import com.google.common.base.Strings;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.websocket.jsr356.server.deploy.WebSocketServerContainerInitializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Named;
+import javax.websocket.server.ServerContainer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class WebSocketIntegrationTest {
+    private Server server;
+    private CloseableHttpClient client = HttpClients.createDefault();
+    private PriceService prices;
+    private AtomicInteger intercepted = new AtomicInteger();
+
+    @Before
+    public void start() throws Exception {
+        ServerHandler handler = new ServerHandlerBuilder().service(new PriceServiceImpl())
+                .interceptor(new MethodInterceptor<Context>() {
+                    @Override
+                    public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                        intercepted.incrementAndGet();
+                        return invocation.proceed();
+                    }
+                }).build();
+
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        server.setHandler(context);
+        context.addServlet(new ServletHolder(new RestlessServlet(handler)), "/rpc/*");
+        ServerContainer container = WebSocketServerContainerInitializer.configureContext(context);
+        container.addEndpoint(RestlessWebSocketEndpoint.config(RestlessWebSocketEndpoint.DEFAULT_PATH, handler));
+        server.start();
+
+        URI uri = server.getURI();
+        prices = new HttpClientBuilder().httpClient(client).uri(uri.resolve("/rpc"))
+                .webSocketUri(new URI("ws", null, uri.getHost(), uri.getPort(), "/rpc-ws", null, null))
+                .interceptor(new MethodInterceptor<Context>() {
+                    @Override
+                    public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                        invocation.getContext().getRequestHeaders().put("x-desk", "fx");
+                        return invocation.proceed();
+                    }
+                }).build(PriceService.class);
+    }
+
+    @After
+    public void stop() throws Exception {
+        server.stop();
+        client.close();
+    }
+
+    @Test
+    public void shouldExchangeMessagesInBothDirections() {
+        ClientHandler handler = new ClientHandler(Arrays.asList(Quote.create("AUD", 0), Quote.create("USD", 0),
+                Quote.create("EUR", 0)));
+        prices.quotes(10, handler);
+
+        assertThat(handler.received).hasSize(4);
+        assertThat(handler.received.get(0).symbol).isEqualTo("AUD");
+        assertThat(handler.received.get(0).price).isEqualTo(10);
+        assertThat(handler.received.get(2).symbol).isEqualTo("EUR");
+        assertThat(handler.received.get(2).price).isEqualTo(12);
+
+        // The context carries the handshake headers, so interceptors behave as for other calls
+        assertThat(handler.received.get(3).symbol).isEqualTo("fx");
+        assertThat(intercepted.get()).isEqualTo(1);
+
+        assertThat(prices.ping("hello")).isEqualTo("hello");
+    }
+
+    @Test
+    public void shouldThrowServerFailures() {
+        try {
+            prices.broken(new ClientHandler(new ArrayList<Quote>()));
+            fail("Expected exception");
+        } catch (ServerException e) {
+            assertThat(e.getMessage()).isEqualTo("Broken");
+        }
+    }
+
+    @Test
+    public void shouldMapFailuresWithLongNonAsciiMessages() {
+        try {
+            prices.conflicted(new ClientHandler(new ArrayList<Quote>()));
+            fail("Expected exception");
+        } catch (ConflictException e) {
+            assertThat(e.getMessage()).isEqualTo(Strings.repeat("\u00fc", 200));
+        }
+    }
+
+    @Test
+    public void shouldReleaseTheReaderWhenMessagesAreIgnored() throws Exception {
+        List<Quote> requests = new ArrayList<Quote>();
+        for (int i = 0; i < 1000; i++) {
+            requests.add(Quote.create("AUD", i));
+        }
+        ClientHandler handler = new ClientHandler(requests);
+        prices.ignore(handler);
+        assertThat(handler.received).isEmpty();
+
+        // The server's reading thread must not remain blocked adding messages that will never be received
+        long deadline = System.currentTimeMillis() + 5000;
+        while (isAddingMessages() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(isAddingMessages()).isFalse();
+    }
+
+    private static boolean isAddingMessages() {
+        for (StackTraceElement[] stack : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement element : stack) {
+                if (element.getClassName().equals(QueueIterator.class.getName()) && element.getMethodName().equals("add")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Service("prices")
+    public interface PriceService {
+        String ping(@Named("value") String value);
+
+        void quotes(@Named("base") int base, StreamingHandler<Quote> handler);
+
+        void broken(StreamingHandler<Quote> handler);
+
+        void ignore(StreamingHandler<Quote> handler);
+
+        void conflicted(StreamingHandler<Quote> handler);
+    }
+
+    public static class Quote {
+        public static Quote create(String symbol, int price) {
+            Quote quote = new Quote();
+            quote.symbol = symbol;
+            quote.price = price;
+            return quote;
+        }
+
+        public String symbol;
+        public int price;
+    }
+
+    public static class PriceServiceImpl implements PriceService {
+        @Override
+        public String ping(String value) {
+            return value;
+        }
+
+        @Override
+        public void quotes(int base, StreamingHandler<Quote> handler) {
+            int count = 0;
+            Iterator<Quote> requests = handler.receive();
+            while (requests.hasNext()) {
+                Quote request = requests.next();
+                handler.send(Arrays.asList(Quote.create(request.symbol, base + count++)).iterator());
+            }
+            String desk = Headers.get(Contexts.get().getRequestHeaders(), "x-desk");
+            handler.send(Arrays.asList(Quote.create(desk, 0)).iterator());
+        }
+
+        @Override
+        public void broken(StreamingHandler<Quote> handler) {
+            throw new IllegalStateException("Broken");
+        }
+
+        @Override
+        public void conflicted(StreamingHandler<Quote> handler) {
+            throw new ConflictException(null, Strings.repeat("\u00fc", 200), null);
+        }
+
+        @Override
+        public void ignore(StreamingHandler<Quote> handler) {
+            // Returns without receiving, giving the client time to fill the queue of incoming messages
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Sends the requests and records the quotes sent by the server
+     */
+    private static class ClientHandler implements StreamingHandler<Quote> {
+        private final List<Quote> requests;
+        private final List<Quote> received = new ArrayList<Quote>();
+
+        private ClientHandler(List<Quote> requests) {
+            this.requests = requests;
+        }
+
+        @Override
+        public Iterator<Quote> receive() {
+            return requests.iterator();
+        }
+
+        @Override
+        public void send(Iterator<Quote> values) {
+            while (values.hasNext()) {
+                received.add(values.next());
+            }
+        }
+    }
+}
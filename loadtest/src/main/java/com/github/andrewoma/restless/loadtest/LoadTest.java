@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loadtest;
+
+import com.github.andrewoma.restless.client.http.HttpClientBuilder;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import com.github.andrewoma.restless.server.http.RestlessServlet;
+import com.github.andrewoma.restless.server.netty.NettyServer;
+import com.github.andrewoma.restless.server.netty.NettyServerBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a LoadTestService at a fixed rate and reports latency percentiles per operation.
+ * <p/>
+ * Arguments are given as key=value pairs:
+ * <ul>
+ * <li>rate - requests per second (default 1000)</li>
+ * <li>duration - seconds to measure for (default 60)</li>
+ * <li>warmup - seconds to run before measuring (default 10)</li>
+ * <li>threads - client worker threads and connections (default 64)</li>
+ * <li>sleep - milliseconds the sleep operation waits on the server (default 5)</li>
+ * <li>uri - the base URI of a server exposing LoadTestService. If omitted an embedded server is started.</li>
+ * <li>server - the embedded server to start, either jetty or netty (default jetty)</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int rate = Integer.parseInt(option(options, "rate", "1000"));
+        int duration = Integer.parseInt(option(options, "duration", "60"));
+        int warmup = Integer.parseInt(option(options, "warmup", "10"));
+        int threads = Integer.parseInt(option(options, "threads", "64"));
+        final int sleep = Integer.parseInt(option(options, "sleep", "5"));
+        String uri = options.get("uri");
+
+        String serverType = option(options, "server", "jetty");
+
+        Server server = null;
+        NettyServer nettyServer = null;
+        if (uri == null && serverType.equals("netty")) {
+            nettyServer = new NettyServerBuilder().handler(createHandler()).port(0).build();
+            nettyServer.start();
+            uri = nettyServer.getUri().toString();
+        } else if (uri == null) {
+            server = startServer();
+            uri = server.getURI().toString();
+        }
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setMaxConnTotal(threads)
+                .setMaxConnPerRoute(threads)
+                .build();
+        try {
+            final LoadTestService service = new HttpClientBuilder()
+                    .httpClient(httpClient)
+                    .uri(uri)
+                    .build(LoadTestService.class);
+
+            final LoadTestService.Payload payload = LoadTestService.Payload.create("payload", 3, Arrays.asList(1.0, 2.0, 3.0));
+            List<Operation> operations = Arrays.asList(
+                    new Operation("ping") {
+                        @Override
+                        public void call() {
+                            service.ping();
+                        }
+                    },
+                    new Operation("echo") {
+                        @Override
+                        public void call() {
+                            service.echo("hello");
+                        }
+                    },
+                    new Operation("payload") {
+                        @Override
+                        public void call() {
+                            service.payload(payload);
+                        }
+                    },
+                    new Operation("sleep") {
+                        @Override
+                        public void call() {
+                            service.sleep(sleep);
+                        }
+                    }
+            );
+
+            OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(rate, warmup, duration, TimeUnit.SECONDS, threads);
+            generator.report(generator.run(operations), System.out);
+        } finally {
+            httpClient.close();
+            if (server != null) {
+                server.stop();
+            }
+            if (nettyServer != null) {
+                nettyServer.stop();
+            }
+        }
+    }
+
+    private static Server startServer() throws Exception {
+        Server server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        server.setHandler(handler);
+        handler.addServletWithMapping(new ServletHolder(new RestlessServlet(createHandler())), "/*");
+        server.start();
+        return server;
+    }
+
+    private static ServerHandler createHandler() {
+        return new ServerHandlerBuilder()
+                .service(new LoadTestServiceImpl())
+                .build();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected arguments of the form key=value but got '" + arg + "'");
+            }
+            options.put(parts[0], parts[1]);
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loadtest;
+
+import com.github.andrewoma.restless.annotations.Service;
+
+import javax.inject.Named;
+import java.util.List;
+
+@Service("load")
+public interface LoadTestService {
+    void ping();
+
+    String echo(@Named("value") String value);
+
+    Payload payload(@Named("payload") Payload payload);
+
+    /**
+     * Simulates a service that waits on a downstream dependency
+     */
+    void sleep(@Named("millis") int millis);
+
+    class Payload {
+        public String name;
+        public int count;
+        public List<Double> values;
+
+        public static Payload create(String name, int count, List<Double> values) {
+            Payload payload = new Payload();
+            payload.name = name;
+            payload.count = count;
+            payload.values = values;
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Issues requests at a fixed arrival rate regardless of how quickly responses return (an open loop).
+ * <p/>
+ * Requests are scheduled at fixed intervals and handed to a pool of worker threads. If the server slows down
+ * requests queue rather than being sent later, so the reported response times include queueing delay in the
+ * same way real users would experience it. Operations are issued in round-robin order.
+ */
+public class OpenLoopLoadGenerator {
+    private final double ratePerSecond;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final int threads;
+
+    public OpenLoopLoadGenerator(double ratePerSecond, long warmup, long duration, TimeUnit unit, int threads) {
+        this.ratePerSecond = ratePerSecond;
+        this.warmupNanos = unit.toNanos(warmup);
+        this.durationNanos = unit.toNanos(duration);
+        this.threads = threads;
+    }
+
+    public List<OperationStats> run(List<Operation> operations) throws InterruptedException {
+        final List<OperationStats> stats = new ArrayList<OperationStats>();
+        for (Operation operation : operations) {
+            stats.add(new OperationStats(operation.getName()));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+            long start = System.nanoTime();
+            final long measureStart = start + warmupNanos;
+            long end = measureStart + durationNanos;
+
+            for (long i = 0; ; i++) {
+                final long intendedStart = start + i * intervalNanos;
+                if (intendedStart >= end) {
+                    break;
+                }
+                sleepUntil(intendedStart);
+
+                final int index = (int) (i % operations.size());
+                final Operation operation = operations.get(index);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long actualStart = System.nanoTime();
+                        boolean success = false;
+                        try {
+                            operation.call();
+                            success = true;
+                        } catch (Exception e) {
+                            // Counted as an error below
+                        } finally {
+                            if (intendedStart >= measureStart) {
+                                stats.get(index).record(intendedStart, actualStart, System.nanoTime(), success);
+                            }
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return stats;
+    }
+
+    private void sleepUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    public void report(List<OperationStats> stats, PrintStream out) {
+        double seconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        out.printf("Target rate: %.0f/s, duration: %.0fs, threads: %d%n", ratePerSecond, seconds, threads);
+        out.printf("Latencies in ms. Response time includes queueing from the scheduled start, service time does not.%n%n");
+        out.printf("%-16s %9s %7s %10s | %8s %8s %8s %8s | %8s %8s %8s %8s%n", "operation", "count", "errors",
+                "rate/s", "p50", "p99", "p99.9", "max", "svc p50", "svc p99", "svc 99.9", "svc max");
+
+        Histogram allResponses = new Histogram(3);
+        Histogram allService = new Histogram(3);
+        long allErrors = 0;
+        for (OperationStats stat : stats) {
+            Histogram responses = stat.getResponseTimes();
+            Histogram service = stat.getServiceTimes();
+            allResponses.add(responses);
+            allService.add(service);
+            allErrors += stat.getErrors();
+            print(out, stat.getName(), responses, service, stat.getErrors(), seconds);
+        }
+        print(out, "all", allResponses, allService, allErrors, seconds);
+    }
+
+    private void print(PrintStream out, String name, Histogram responses, Histogram service, long errors, double seconds) {
+        out.printf("%-16s %9d %7d %10.1f | %8.2f %8.2f %8.2f %8.2f | %8.2f %8.2f %8.2f %8.2f%n", name,
+                responses.getTotalCount(), errors, responses.getTotalCount() / seconds,
+                millis(responses.getValueAtPercentile(50)), millis(responses.getValueAtPercentile(99)),
+                millis(responses.getValueAtPercentile(99.9)), millis(responses.getMaxValue()),
+                millis(service.getValueAtPercentile(50)), millis(service.getValueAtPercentile(99)),
+                millis(service.getValueAtPercentile(99.9)), millis(service.getMaxValue()));
+    }
+
+    private double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records latencies for an operation in microseconds. Response time is measured from when the request was
+ * scheduled to be sent, so time spent queued behind slow requests is included (correcting for coordinated
+ * omission). Service time is measured from when the request was actually sent.
+ */
+public class OperationStats {
+    private final String name;
+    private final Recorder responseTimes = new Recorder(3);
+    private final Recorder serviceTimes = new Recorder(3);
+    private final AtomicLong errors = new AtomicLong();
+
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long intendedStartNanos, long startNanos, long endNanos, boolean success) {
+        responseTimes.recordValue((endNanos - intendedStartNanos) / 1000);
+        serviceTimes.recordValue((endNanos - startNanos) / 1000);
+        if (!success) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public Histogram getResponseTimes() {
+        return responseTimes.getIntervalHistogram();
+    }
+
+    public Histogram getServiceTimes() {
+        return serviceTimes.getIntervalHistogram();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+}
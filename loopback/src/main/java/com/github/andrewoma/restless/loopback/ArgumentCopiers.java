@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loopback;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.lang.reflect.Type;
+
+public class ArgumentCopiers {
+    /**
+     * Shares values between client and service without copying. Only safe if values are immutable or neither
+     * side modifies them.
+     */
+    public static final ArgumentCopier NONE = new ArgumentCopier() {
+        @Override
+        public Object copy(Object value, Type type) {
+            return value;
+        }
+    };
+
+    /**
+     * Deep copies values by serialising them to a token buffer and reading them back with the ObjectMapper,
+     * so copies match what a remote call would produce without encoding any bytes. Unlike
+     * ObjectMapper.convertValue, values are copied even if they are already of the target type.
+     */
+    public static ArgumentCopier jackson(final ObjectMapper objectMapper) {
+        return new ArgumentCopier() {
+            @Override
+            public Object copy(Object value, Type type) throws Exception {
+                if (value == null) {
+                    return null;
+                }
+                TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+                objectMapper.writeValue(buffer, value);
+                return objectMapper.readValue(buffer.asParser(), objectMapper.getTypeFactory().constructType(type));
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loopback;
+
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.DefaultContext;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.ProxyFactory;
+import com.github.andrewoma.restless.core.util.Validators;
+import com.github.andrewoma.restless.server.ServerHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builds clients that invoke services registered with a ServerHandler in the same JVM directly, without
+ * serialisation. By default parameters and results are not copied.
+ */
+public class LocalClientBuilder {
+    private List<MethodInterceptor<Context>> interceptors = new ArrayList<MethodInterceptor<Context>>();
+    private ServerHandler handler;
+    private ArgumentCopier copier = ArgumentCopiers.NONE;
+
+    public LocalClientBuilder interceptor(MethodInterceptor<Context> interceptor) {
+        interceptors.add(interceptor);
+        return this;
+    }
+
+    public LocalClientBuilder interceptors(Collection<MethodInterceptor<Context>> interceptors) {
+        this.interceptors.addAll(interceptors);
+        return this;
+    }
+
+    public LocalClientBuilder handler(ServerHandler handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    /**
+     * Sets how parameters and results are copied, e.g. {@link ArgumentCopiers#jackson} for deep copies
+     */
+    public LocalClientBuilder copier(ArgumentCopier copier) {
+        this.copier = copier;
+        return this;
+    }
+
+    public <P> P build(Class<P> type) {
+        Validators.require(type.isInterface(), "'type' must be an interface");
+        Validators.require(handler != null, "'handler' is required");
+
+        final Service service = type.getAnnotation(Service.class);
+        Validators.require(service != null, "'type' must have a 'Service' annotation");
+
+        LocalMethodHandler<Context> methodHandler = new LocalMethodHandler<Context>(handler, type, service.value(), copier);
+
+        return ProxyFactory.createProxy(type, interceptors, methodHandler, new ProxyFactory.ContextFactory<Context>() {
+            @Override
+            public Context create() {
+                return new DefaultContext(service.value());
+            }
+        });
+    }
+}
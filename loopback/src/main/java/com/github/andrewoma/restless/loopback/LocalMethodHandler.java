@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loopback;
+
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.proxy.MethodHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.core.util.Callback;
+import com.github.andrewoma.restless.core.util.Futures;
+import com.github.andrewoma.restless.core.util.Promise;
+import com.github.andrewoma.restless.core.util.Validators;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServiceMethod;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Invokes a service registered with a ServerHandler in the same JVM without serialising the call. The server
+ * interceptors are applied and exceptions are mapped as for remote calls. Parameters and results are passed
+ * through the copier, except for ByteStreams and Streamed values which are passed as is.
+ */
+public class LocalMethodHandler<T extends Context> implements MethodHandler<T> {
+    private final ServerHandler handler;
+    private final String service;
+    private final ArgumentCopier copier;
+    private final Map<Method, LocalMethod> methods = new HashMap<Method, LocalMethod>();
+
+    public LocalMethodHandler(ServerHandler handler, Class<?> type, String service, ArgumentCopier copier) {
+        this.handler = handler;
+        this.service = service;
+        this.copier = copier;
+
+        for (Method method : type.getMethods()) {
+            ServiceMethod serviceMethod = handler.findServiceMethod(service, method.getName());
+            Validators.require(serviceMethod != null, "Method '" + method.getName() + "' is not registered for service '"
+                    + service + "'");
+            methods.put(method, new LocalMethod(serviceMethod, method));
+        }
+    }
+
+    @Override
+    public Object invoke(MethodInvocation<T> methodInvocation) throws Throwable {
+        LocalMethod method = methods.get(methodInvocation.getMethod());
+
+        Object[] parameters = methodInvocation.getParameters();
+        Object[] copies = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            copies[i] = copy(parameters[i], method.parameterTypes[i]);
+        }
+
+        Object result = handler.invokeLocal(service, method.serviceMethod,
+                methodInvocation.getContext().getRequestHeaders(), copies);
+
+        if (copier == ArgumentCopiers.NONE) {
+            return result;
+        }
+        if (result instanceof Future) {
+            return copyFuture((Future<?>) result, method.resultType);
+        }
+        return copy(result, method.resultType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Future<Object> copyFuture(Future<?> future, final Type resultType) {
+        final Promise<Object> promise = Futures.promise();
+        Futures.addCallback((Future<Object>) future, new Callback<Object>() {
+            @Override
+            public void onSuccess(Object value) {
+                Object copy;
+                try {
+                    copy = copy(value, resultType);
+                } catch (Exception e) {
+                    promise.onFailure(e);
+                    return;
+                }
+                promise.onSuccess(copy);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                promise.onFailure(t);
+            }
+        });
+        return promise.getFuture();
+    }
+
+    private Object copy(Object value, Type type) throws Exception {
+        if (value == null || value instanceof ByteStream || value instanceof Streamed) {
+            return value;
+        }
+        return copier.copy(value, type);
+    }
+
+    private static class LocalMethod {
+        private final ServiceMethod serviceMethod;
+        private final Type[] parameterTypes;
+        private final Type resultType;
+
+        LocalMethod(ServiceMethod serviceMethod, Method method) {
+            this.serviceMethod = serviceMethod;
+            this.parameterTypes = method.getGenericParameterTypes();
+            this.resultType = Futures.getResultType(method);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loopback;
+
+import com.github.andrewoma.restless.client.ClientRequest;
+import com.github.andrewoma.restless.client.ClientRequestHandler;
+import com.github.andrewoma.restless.client.ClientResponse;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerRequest;
+import com.github.andrewoma.restless.server.ServerResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Connects clients directly to a ServerHandler in the same JVM. Requests and responses are serialised as they
+ * would be over HTTP, so headers, exception mapping and streams behave the same, but no sockets are involved.
+ * Response bodies are buffered in memory.
+ */
+public class LoopbackClientRequestHandler implements ClientRequestHandler {
+    private final ServerHandler handler;
+
+    public LoopbackClientRequestHandler(ServerHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public ClientResponse handleRequest(ClientRequest request) {
+        ServerResponse response = handler.handleRequest(new ServerRequest(request.getService(), request.getMethod(),
+                request.getHeaders(), request.getRequest()));
+
+        Buffer body = new Buffer();
+        try {
+            response.getOutput().write(body);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return new ClientResponse(response.getHeaders(), body.toInputStream());
+    }
+
+    /**
+     * A ByteArrayOutputStream that can be read without copying its contents
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        ByteArrayInputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loopback;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Contexts;
+import com.github.andrewoma.restless.core.exception.ServerException;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import org.junit.Test;
+
+import javax.inject.Named;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class LocalMethodHandlerTest {
+    private static volatile Foo nested;
+
+    private List<String> intercepted = new ArrayList<String>();
+
+    private ServerHandler handler = new ServerHandlerBuilder()
+            .service(new FooImpl())
+            .interceptor(new MethodInterceptor<Context>() {
+                @Override
+                public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                    intercepted.add(invocation.getMethod().getName());
+                    return invocation.proceed();
+                }
+            })
+            .build();
+
+    @Test
+    public void shouldShareValuesWithoutCopying() throws Exception {
+        Foo client = new LocalClientBuilder().handler(handler).build(Foo.class);
+
+        Bar bar = Bar.create("a", 1, 2);
+        Bar result = client.increment(bar);
+
+        assertThat(result).isSameAs(bar);
+        assertThat(bar.values).containsExactly(2, 3);
+    }
+
+    @Test
+    public void shouldDeepCopyWithJackson() throws Exception {
+        Foo client = new LocalClientBuilder()
+                .handler(handler)
+                .copier(ArgumentCopiers.jackson(new ObjectMapper()))
+                .build(Foo.class);
+
+        Bar bar = Bar.create("a", 1, 2);
+        Bar result = client.increment(bar);
+
+        assertThat(result).isNotSameAs(bar);
+        assertThat(result.values).containsExactly(2, 3);
+        assertThat(bar.values).containsExactly(1, 2);
+
+        List<Bar> bars = client.all(Arrays.asList(bar));
+        assertThat(bars.get(0)).isInstanceOf(Bar.class).isNotSameAs(bar);
+    }
+
+    @Test
+    public void shouldUseCustomCopier() throws Exception {
+        final List<Type> copied = new ArrayList<Type>();
+        Foo client = new LocalClientBuilder()
+                .handler(handler)
+                .copier(new ArgumentCopier() {
+                    @Override
+                    public Object copy(Object value, Type type) {
+                        copied.add(type);
+                        return value;
+                    }
+                })
+                .build(Foo.class);
+
+        client.increment(Bar.create("a"));
+        assertThat(copied).containsExactly(Bar.class, Bar.class);
+    }
+
+    @Test
+    public void shouldApplyServerInterceptorsAndHeaders() throws Exception {
+        Foo client = new LocalClientBuilder()
+                .handler(handler)
+                .interceptor(new MethodInterceptor<Context>() {
+                    @Override
+                    public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                        invocation.getContext().getRequestHeaders().put("X-Caller", "local");
+                        return invocation.proceed();
+                    }
+                })
+                .build(Foo.class);
+
+        assertThat(client.header("X-Caller")).isEqualTo("local");
+        assertThat(intercepted).containsExactly("header");
+    }
+
+    @Test
+    public void shouldRestoreTheCallersContextAfterNestedCalls() throws Exception {
+        nested = new LocalClientBuilder().handler(handler).build(Foo.class);
+        Foo client = new LocalClientBuilder()
+                .handler(handler)
+                .interceptor(new MethodInterceptor<Context>() {
+                    @Override
+                    public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                        invocation.getContext().getRequestHeaders().put("X-Caller", "outer");
+                        return invocation.proceed();
+                    }
+                })
+                .build(Foo.class);
+
+        assertThat(client.nested("X-Caller")).isEqualTo("null/outer");
+        assertThat(intercepted).containsExactly("nested", "header");
+        assertThat(Contexts.get()).isNull();
+    }
+
+    @Test
+    public void shouldMapExceptions() throws Exception {
+        Foo client = new LocalClientBuilder().handler(handler).build(Foo.class);
+        try {
+            client.fail("Broken");
+            fail("Expected exception");
+        } catch (ServerException e) {
+            assertThat(e.getMessage()).isEqualTo("Broken");
+        }
+    }
+
+    @Service("foo")
+    public interface Foo {
+        Bar increment(@Named("bar") Bar bar);
+
+        List<Bar> all(@Named("bars") List<Bar> bars);
+
+        String header(@Named("name") String name);
+
+        String nested(@Named("name") String name);
+
+        void fail(@Named("message") String message);
+    }
+
+    public static class Bar {
+        public String name;
+        public List<Integer> values;
+
+        public static Bar create(String name, Integer... values) {
+            Bar bar = new Bar();
+            bar.name = name;
+            bar.values = new ArrayList<Integer>(Arrays.asList(values));
+            return bar;
+        }
+    }
+
+    public static class FooImpl implements Foo {
+        @Override
+        public Bar increment(Bar bar) {
+            for (int i = 0; i < bar.values.size(); i++) {
+                bar.values.set(i, bar.values.get(i) + 1);
+            }
+            return bar;
+        }
+
+        @Override
+        public List<Bar> all(List<Bar> bars) {
+            return bars;
+        }
+
+        @Override
+        public String header(String name) {
+            return Contexts.get().getRequestHeaders().get(name);
+        }
+
+        @Override
+        public String nested(String name) {
+            String inner = nested.header(name);
+            return inner + "/" + Contexts.get().getRequestHeaders().get(name);
+        }
+
+        @Override
+        public void fail(String message) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.loopback;
+
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.client.Batch;
+import com.github.andrewoma.restless.client.ClientBuilder;
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Contexts;
+import com.github.andrewoma.restless.core.exception.NotFoundException;
+import com.github.andrewoma.restless.core.exception.RemoteException;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.MethodInvocation;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import org.junit.Test;
+
+import javax.inject.Named;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class LoopbackClientRequestHandlerTest {
+    private ClientBuilder builder = new ClientBuilder()
+            .requestHandler(new LoopbackClientRequestHandler(new ServerHandlerBuilder().service(new FooImpl()).build()))
+            .interceptor(new MethodInterceptor<Context>() {
+                @Override
+                public Object invoke(MethodInvocation<Context> invocation) throws Throwable {
+                    invocation.getContext().getRequestHeaders().put("X-Caller", "loopback");
+                    return invocation.proceed();
+                }
+            });
+    private Foo client = builder.build(Foo.class);
+
+    @Test
+    public void shouldRoundTripParametersAndResults() throws Exception {
+        assertThat(client.echo("hello")).isEqualTo("hello");
+        assertThat(client.reverse(Arrays.asList(1, 2, 3))).containsExactly(3, 2, 1);
+        client.noResult();
+    }
+
+    @Test
+    public void shouldPassHeaders() throws Exception {
+        assertThat(client.header("X-Caller")).isEqualTo("loopback");
+    }
+
+    @Test
+    public void shouldMapExceptions() throws Exception {
+        try {
+            client.fail("Broken");
+            fail("Expected exception");
+        } catch (NotFoundException e) {
+            assertThat(e.getMessage()).isEqualTo("Broken");
+        }
+
+        try {
+            client.echo(null);
+            fail("Expected exception");
+        } catch (RemoteException e) {
+            assertThat(e.getStatus()).isEqualTo(500);
+        }
+    }
+
+    @Test
+    public void shouldStreamBytes() throws Exception {
+        ByteStream result = client.upperCase(new ByteStream() {
+            @Override
+            public void output(OutputStream output) throws Exception {
+                output.write("hello".getBytes("UTF-8"));
+            }
+        });
+        try {
+            assertThat(read(result.input())).isEqualTo("HELLO");
+        } finally {
+            result.close();
+        }
+    }
+
+    @Test
+    public void shouldExecuteBatches() throws Exception {
+        Batch batch = builder.batch();
+        Foo foo = batch.proxy(Foo.class);
+
+        Future<String> echo = batch.result(foo.echo("hello"));
+        Future<String> header = batch.result(foo.header("X-Caller"));
+        foo.fail("Broken");
+        Future<Void> failure = batch.result();
+        assertThat(batch.size()).isEqualTo(3);
+
+        batch.execute();
+
+        assertThat(echo.get()).isEqualTo("hello");
+        assertThat(header.get()).isEqualTo("loopback");
+        try {
+            failure.get();
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(NotFoundException.class);
+        }
+    }
+
+    private static String read(InputStream input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toString("UTF-8");
+    }
+
+    @Service("foo")
+    public interface Foo {
+        String echo(@Named("value") String value);
+
+        List<Integer> reverse(@Named("values") List<Integer> values);
+
+        void noResult();
+
+        String header(@Named("name") String name);
+
+        void fail(@Named("message") String message);
+
+        ByteStream upperCase(ByteStream input);
+    }
+
+    public static class FooImpl implements Foo {
+        @Override
+        public String echo(String value) {
+            if (value == null) {
+                throw new IllegalStateException("Null value");
+            }
+            return value;
+        }
+
+        @Override
+        public List<Integer> reverse(List<Integer> values) {
+            Integer[] reversed = new Integer[values.size()];
+            for (int i = 0; i < reversed.length; i++) {
+                reversed[i] = values.get(values.size() - 1 - i);
+            }
+            return Arrays.asList(reversed);
+        }
+
+        @Override
+        public void noResult() {
+        }
+
+        @Override
+        public String header(String name) {
+            Context context = Contexts.get();
+            return context.getRequestHeaders().get(name);
+        }
+
+        @Override
+        public void fail(String message) {
+            throw new NotFoundException("", message, null);
+        }
+
+        @Override
+        public ByteStream upperCase(final ByteStream input) {
+            return new ByteStream() {
+                @Override
+                public void output(OutputStream output) throws Exception {
+                    output.write(read(input.input()).toUpperCase().getBytes("UTF-8"));
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server.http;
+
+import com.github.andrewoma.restless.core.FileByteStream;
+
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sends files without copying them through heap buffers. Jetty's output accepts a memory mapped buffer via
+ * {@code sendContent(ByteBuffer)} which it writes directly to the socket. A buffer is limited to
+ * {@code Integer.MAX_VALUE} bytes, so larger files are mapped and written in segments via {@code write(ByteBuffer)}.
+ * Otherwise the file is transferred into the output stream's channel.
+ */
+class FileSender {
+    static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private FileSender() {
+    }
+
+    static void send(OutputStream output, FileByteStream stream) throws Exception {
+        boolean segmented = stream.getLength() > MAX_SEGMENT_SIZE;
+        Method method = findMethod(output, segmented ? "write" : "sendContent");
+        if (method == null) {
+            stream.output(output);
+            return;
+        }
+
+        FileChannel channel = stream.openChannel();
+        try {
+            // sendContent writes the whole buffer and completes the response, so a file that fits is mapped as a whole
+            long position = stream.getPosition();
+            long end = position + stream.getLength();
+            do {
+                long size = Math.min(end - position, MAX_SEGMENT_SIZE);
+                method.invoke(output, channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+                position += size;
+            } while (position < end);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static Method findMethod(OutputStream output, String name) {
+        try {
+            return output.getClass().getMethod(name, ByteBuffer.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -22,6 +22,11 @@
 
 package com.github.andrewoma.restless.server.http;
 
+import com.github.andrewoma.restless.core.SpooledByteStream;
+import com.github.andrewoma.restless.core.util.BufferPool;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -36,10 +41,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -50,77 +54,104 @@ import java.util.concurrent.atomic.AtomicReference;
 /**
  * A stop-gap filter for logging requests and responses - this will be replaced with a LoggingInterceptor
  * that is aware of the structure of content (e.g. doesn't log streams, can hide fields such as passwords, etc).
+ * Request bodies are spooled so that large uploads do not fill the heap, and responses are written through
+ * to the client. Only the first {@link #MAX_LOGGED_BYTES} bytes of each body are logged.
  */
 public class LoggingFilter implements Filter {
+    public static final int MAX_LOGGED_BYTES = 4096;
+
     private Set<String> EXCLUDED_HEADERS = new HashSet<String>(
             Arrays.asList("Transfer-Encoding", "Connection", "User-Agent", "Host", "Accept-Encoding", "Date", "Content-Type")
     );
 
-    private static class ByteArrayServletStream extends ServletOutputStream {
-        ByteArrayOutputStream baos;
-
-        ByteArrayServletStream(ByteArrayOutputStream baos) {
-            this.baos = baos;
+    /**
+     * Writes through to the response, capturing the start of the body for logging
+     */
+    private static class CapturingServletStream extends ServletOutputStream {
+        private final ServletOutputStream output;
+        private byte[] captured = BufferPool.getDefault().acquire(MAX_LOGGED_BYTES);
+        private int count;
+        private long length;
+
+        CapturingServletStream(ServletOutputStream output) {
+            this.output = output;
         }
 
-        public void write(int param) throws IOException {
-            baos.write(param);
+        public void write(int value) throws IOException {
+            output.write(value);
+            capture(new byte[]{(byte) value}, 0, 1);
         }
 
         @Override
-        public boolean isReady() {
-            return true;
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            output.write(bytes, offset, count);
+            capture(bytes, offset, count);
         }
 
-        @Override
-        public void setWriteListener(WriteListener writeListener) {
+        private synchronized void capture(byte[] bytes, int offset, int length) {
+            if (captured != null && count < MAX_LOGGED_BYTES) {
+                int captures = Math.min(length, MAX_LOGGED_BYTES - count);
+                System.arraycopy(bytes, offset, captured, count, captures);
+                count += captures;
+            }
+            this.length += length;
         }
-    }
-
-    private static class ByteArrayPrintWriter {
 
-        private ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        private PrintWriter pw = new PrintWriter(baos);
+        /**
+         * Returns the capture buffer to the pool. Later writes are no longer captured.
+         */
+        synchronized void release() {
+            if (captured != null) {
+                BufferPool.getDefault().release(captured);
+                captured = null;
+            }
+        }
 
-        private ServletOutputStream sos = new ByteArrayServletStream(baos);
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
 
-        public PrintWriter getWriter() {
-            return pw;
+        @Override
+        public void close() throws IOException {
+            output.close();
         }
 
-        public ServletOutputStream getStream() {
-            return sos;
+        @Override
+        public boolean isReady() {
+            return output.isReady();
         }
 
-        byte[] toByteArray() {
-            return baos.toByteArray();
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            output.setWriteListener(writeListener);
         }
     }
 
-    private class BufferedServletInputStream extends ServletInputStream {
+    private static class SpooledServletInputStream extends ServletInputStream {
+        private final InputStream input;
+        private boolean finished;
 
-        ByteArrayInputStream bais;
-
-        public BufferedServletInputStream(ByteArrayInputStream bais) {
-            this.bais = bais;
+        SpooledServletInputStream(InputStream input) {
+            this.input = input;
         }
 
-        public int available() {
-            return bais.available();
+        public int read() throws IOException {
+            return finish(input.read());
         }
 
-        public int read() {
-            return bais.read();
+        public int read(byte[] buf, int off, int len) throws IOException {
+            return finish(input.read(buf, off, len));
         }
 
-        public int read(byte[] buf, int off, int len) {
-            return bais.read(buf, off, len);
+        private int finish(int read) {
+            finished = read == -1;
+            return read;
         }
 
         @Override
         public boolean isFinished() {
-            return bais.available() == 0;
+            return finished;
         }
 
         @Override
@@ -128,82 +159,109 @@ public class LoggingFilter implements Filter {
             return true;
         }
 
+        /**
+         * The body has already been read, so the listener is notified immediately
+         */
         @Override
         public void setReadListener(ReadListener readListener) {
+            try {
+                readListener.onDataAvailable();
+                readListener.onAllDataRead();
+            } catch (IOException e) {
+                readListener.onError(e);
+            }
         }
     }
 
-    private class BufferedRequestWrapper extends HttpServletRequestWrapper {
-
-        ByteArrayInputStream bais;
-
-        ByteArrayOutputStream baos;
-
-        BufferedServletInputStream bsis;
+    private static class SpooledRequestWrapper extends HttpServletRequestWrapper {
+        private final SpooledByteStream body;
 
-        byte[] buffer;
-
-        public BufferedRequestWrapper(HttpServletRequest req) throws IOException {
-            super(req);
-            InputStream is = req.getInputStream();
-            baos = new ByteArrayOutputStream();
-            byte buf[] = new byte[1024];
-            int letti;
-            while ((letti = is.read(buf)) > 0) {
-                baos.write(buf, 0, letti);
-            }
-            buffer = baos.toByteArray();
+        public SpooledRequestWrapper(HttpServletRequest request) throws IOException {
+            super(request);
+            body = SpooledByteStream.spool(request.getInputStream(), SpooledByteStream.DEFAULT_MEMORY_THRESHOLD, Long.MAX_VALUE);
         }
 
-        public ServletInputStream getInputStream() {
-            try {
-                bais = new ByteArrayInputStream(buffer);
-                bsis = new BufferedServletInputStream(bais);
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
-
-            return bsis;
+        public ServletInputStream getInputStream() throws IOException {
+            return new SpooledServletInputStream(body.input());
         }
 
-        public byte[] getBuffer() {
-            return buffer;
+        public SpooledByteStream getBody() {
+            return body;
         }
-
     }
 
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
             FilterChain filterChain) throws IOException, ServletException {
 
         final HttpServletRequest httpRequest = (HttpServletRequest) servletRequest;
-        BufferedRequestWrapper bufferedRequest = new BufferedRequestWrapper(httpRequest);
+        final SpooledRequestWrapper spooledRequest = new SpooledRequestWrapper(httpRequest);
+        try {
+            doFilter(spooledRequest, (HttpServletResponse) servletResponse, filterChain);
+        } finally {
+            if (spooledRequest.isAsyncStarted()) {
+                spooledRequest.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        spooledRequest.getBody().close();
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                spooledRequest.getBody().close();
+            }
+        }
+    }
+
+    private void doFilter(SpooledRequestWrapper request, final HttpServletResponse response, FilterChain filterChain)
+            throws IOException, ServletException {
 
         StringBuilder sb = new StringBuilder();
         sb.append(">>> \n");
-        sb.append(((HttpServletRequest) servletRequest).getMethod()).append(" ").append(((HttpServletRequest) servletRequest).getRequestURI()).append("\n");
-        Enumeration<String> headerNames = ((HttpServletRequest) servletRequest).getHeaderNames();
+        sb.append(request.getMethod()).append(" ").append(request.getRequestURI()).append("\n");
+        Enumeration<String> headerNames = request.getHeaderNames();
 
         while (headerNames.hasMoreElements()) {
             String header = headerNames.nextElement();
             if (!EXCLUDED_HEADERS.contains(header)) {
-                String value = ((HttpServletRequest) servletRequest).getHeader(header);
+                String value = request.getHeader(header);
                 sb.append(header).append(": ").append(value).append("\n");
             }
         }
 
-        sb.append(new String(bufferedRequest.getBuffer())).append("\n");
-
-        final HttpServletResponse response = (HttpServletResponse) servletResponse;
+        byte[] head = BufferPool.getDefault().acquire(MAX_LOGGED_BYTES);
+        try {
+            appendBody(sb, head, head(request.getBody(), head), request.getBody().getLength());
+        } finally {
+            BufferPool.getDefault().release(head);
+        }
 
         final AtomicReference<Integer> status = new AtomicReference<Integer>(0);
-        final ByteArrayPrintWriter pw = new ByteArrayPrintWriter();
+        final AtomicReference<CapturingServletStream> output = new AtomicReference<CapturingServletStream>();
+        final AtomicReference<PrintWriter> writer = new AtomicReference<PrintWriter>();
         HttpServletResponse wrappedResp = new HttpServletResponseWrapper(response) {
-            public PrintWriter getWriter() {
-                return pw.getWriter();
+            public PrintWriter getWriter() throws IOException {
+                if (writer.get() == null) {
+                    writer.set(new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding())));
+                }
+                return writer.get();
             }
 
-            public ServletOutputStream getOutputStream() {
-                return pw.getStream();
+            public ServletOutputStream getOutputStream() throws IOException {
+                if (output.get() == null) {
+                    output.set(new CapturingServletStream(response.getOutputStream()));
+                }
+                return output.get();
             }
 
             @Override
@@ -213,26 +271,66 @@ public class LoggingFilter implements Filter {
             }
         };
 
-        filterChain.doFilter(bufferedRequest, wrappedResp);
+        try {
+            filterChain.doFilter(request, wrappedResp);
+            if (writer.get() != null) {
+                writer.get().flush();
+            }
+            logResponse(sb, response, status.get(), output.get());
+        } finally {
+            if (output.get() != null) {
+                output.get().release();
+            }
+        }
+    }
 
-        byte[] bytes = pw.toByteArray();
-        response.getOutputStream().write(bytes);
+    private void logResponse(StringBuilder sb, HttpServletResponse response, int status, CapturingServletStream captured) {
 
         sb.append("<<<\n");
-        sb.append("Status: ").append(status.get()).append("\n");
+        sb.append("Status: ").append(status).append("\n");
 
-        for (String header : ((HttpServletResponse) servletResponse).getHeaderNames()) {
+        for (String header : response.getHeaderNames()) {
             if (!EXCLUDED_HEADERS.contains(header)) {
-                String value = ((HttpServletRequest) servletRequest).getHeader(header);
+                String value = response.getHeader(header);
                 sb.append(header).append(": ").append(value).append("\n");
             }
         }
 
-        sb.append(new String(bytes)).append("\n");
+        if (captured != null) {
+            synchronized (captured) {
+                appendBody(sb, captured.captured, captured.count, captured.length);
+            }
+        }
         sb.append("---");
         System.out.println(sb.toString());
     }
 
+    /**
+     * Reads the start of the body into the buffer, returning the number of bytes read
+     */
+    private int head(SpooledByteStream body, byte[] bytes) throws IOException {
+        InputStream input = body.input();
+        try {
+            int count = (int) Math.min(body.getLength(), MAX_LOGGED_BYTES);
+            int offset = 0;
+            int read;
+            while (offset < count && (read = input.read(bytes, offset, count - offset)) != -1) {
+                offset += read;
+            }
+            return offset;
+        } finally {
+            input.close();
+        }
+    }
+
+    private void appendBody(StringBuilder sb, byte[] bytes, int count, long length) {
+        sb.append(new String(bytes, 0, count));
+        if (length > count) {
+            sb.append("... (").append(length).append(" bytes)");
+        }
+        sb.append("\n");
+    }
+
     public void destroy() {
     }
 
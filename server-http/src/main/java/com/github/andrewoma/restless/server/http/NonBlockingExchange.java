@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server.http;
+
+import com.github.andrewoma.restless.core.exception.PayloadTooLargeException;
+import com.github.andrewoma.restless.core.util.BufferPool;
+import com.github.andrewoma.restless.core.util.Compression;
+import com.github.andrewoma.restless.core.util.PooledOutputStream;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerRequest;
+import com.github.andrewoma.restless.server.ServerResponse;
+import com.github.andrewoma.restless.server.ServerResponseCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Handles a single request using Servlet 3.1 non-blocking I/O. The request body is buffered as it arrives,
+ * the request is handled once the body is complete and the buffered response is written as the client
+ * accepts it. No thread is held while waiting on the client in either direction.
+ */
+class NonBlockingExchange implements ReadListener, WriteListener {
+    private static final Logger LOG = LoggerFactory.getLogger(NonBlockingExchange.class);
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final RestlessServlet servlet;
+    private final ServerHandler handler;
+    private final Executor executor;
+    private final String service;
+    private final String method;
+    private final Map<String, String> headers;
+    private final String contentEncoding;
+    private final String responseEncoding;
+    private final HttpServletResponse response;
+    private final AsyncContext asyncContext;
+    private final ServletInputStream input;
+    private final long maxRequestSize;
+    private PooledOutputStream body;
+    private boolean tooLarge;
+    private long drained;
+    private boolean rejected;
+    private boolean completed;
+
+    private ServletOutputStream output;
+    private PooledOutputStream responseBody;
+    private boolean written;
+
+    NonBlockingExchange(RestlessServlet servlet, ServerHandler handler, Executor executor, String service, String method,
+            Map<String, String> headers, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        this.servlet = servlet;
+        this.handler = handler;
+        this.executor = executor;
+        this.service = service;
+        this.method = method;
+        this.headers = headers;
+        this.contentEncoding = request.getHeader(Compression.CONTENT_ENCODING);
+        this.responseEncoding = servlet.getResponseEncoding(request);
+        this.response = response;
+        this.asyncContext = servlet.startAsync(request);
+        this.input = request.getInputStream();
+        this.maxRequestSize = servlet.getMaxRequestSize();
+        this.body = new PooledOutputStream(Math.min(Math.max(request.getContentLength(), 0), BufferPool.MAX_SIZE));
+    }
+
+    void start() {
+        input.setReadListener(this);
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        byte[] buffer = BufferPool.getDefault().acquire(READ_BUFFER_SIZE);
+        try {
+            while (input.isReady()) {
+                int read = input.read(buffer);
+                if (read < 0) {
+                    return;
+                }
+                if (!tooLarge && body.size() + (long) read > maxRequestSize) {
+                    tooLarge = true;
+                    body.release();
+                }
+                // Oversized bodies are drained so that the client reads the response rather than a reset
+                // connection, up to a limit beyond which the connection is closed instead
+                if (!tooLarge) {
+                    body.write(buffer, 0, read);
+                } else if ((drained += read) > RestlessServlet.MAX_DRAIN_SIZE) {
+                    reject(true);
+                    return;
+                }
+            }
+        } finally {
+            BufferPool.getDefault().release(buffer);
+        }
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException {
+        if (tooLarge) {
+            reject(false);
+            return;
+        }
+        if (executor == null) {
+            handle();
+        } else {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle();
+                }
+            });
+        }
+    }
+
+    private void reject(boolean close) {
+        if (rejected) {
+            return;
+        }
+        rejected = true;
+        if (close) {
+            response.setHeader(RestlessServlet.CONNECTION, RestlessServlet.CLOSE);
+        }
+        write(handler.handleException(new PayloadTooLargeException(null,
+                "Request body exceeds the maximum size of " + maxRequestSize + " bytes", null)));
+    }
+
+    private void handle() {
+        InputStream requestBody;
+        try {
+            requestBody = Compression.decode(contentEncoding, body.toInputStream());
+        } catch (IOException e) {
+            LOG.warn("Unable to decode request for {}/{}", service, method, e);
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            complete();
+            return;
+        }
+
+        handler.handleRequest(new ServerRequest(service, method, headers, requestBody), new ServerResponseCallback() {
+            @Override
+            public void complete(ServerResponse response) {
+                write(response);
+            }
+        });
+    }
+
+    private void write(ServerResponse serverResponse) {
+        try {
+            responseBody = new PooledOutputStream();
+            serverResponse.getOutput().write(responseBody);
+
+            servlet.setResponseHeaders(response, serverResponse);
+            if (isCompressible(serverResponse)) {
+                compressResponse();
+            }
+            response.setContentLength(responseBody.size());
+            output = response.getOutputStream();
+            output.setWriteListener(this);
+        } catch (Exception e) {
+            LOG.error("Unable to write response", e);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            complete();
+        }
+    }
+
+    private boolean isCompressible(ServerResponse serverResponse) {
+        return responseEncoding != null && responseBody.size() >= servlet.getCompressionThreshold()
+                && !serverResponse.getHeaders().containsKey(Compression.CONTENT_ENCODING);
+    }
+
+    private void compressResponse() throws IOException {
+        PooledOutputStream compressed = new PooledOutputStream(responseBody.size() / 4);
+        DeflaterOutputStream output = Compression.encode(responseEncoding, compressed);
+        try {
+            responseBody.writeTo(output);
+            output.finish();
+        } catch (IOException e) {
+            compressed.release();
+            throw e;
+        } finally {
+            Compression.end(output);
+        }
+
+        responseBody.release();
+        responseBody = compressed;
+        response.setHeader(Compression.CONTENT_ENCODING, responseEncoding);
+        response.addHeader("Vary", Compression.ACCEPT_ENCODING);
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        while (output.isReady()) {
+            if (written) {
+                complete();
+                return;
+            }
+            responseBody.writeTo(output);
+            written = true;
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        LOG.warn("Non-blocking I/O failed for {}/{}", service, method, t);
+        complete();
+    }
+
+    /**
+     * Completes the exchange, returning the buffers to the pool. Only the first call has an effect, as errors
+     * may be reported after the exchange has completed.
+     */
+    private synchronized void complete() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            LOG.debug("Exchange for {}/{} has already completed", service, method, e);
+        }
+        if (body != null) {
+            body.release();
+            body = null;
+        }
+        if (responseBody != null) {
+            responseBody.release();
+            responseBody = null;
+        }
+    }
+}
@@ -22,28 +22,63 @@
 
 package com.github.andrewoma.restless.server.http;
 
+import com.github.andrewoma.restless.core.Batches;
 import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.SpooledByteStream;
+import com.github.andrewoma.restless.core.Status;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.exception.PayloadTooLargeException;
+import com.github.andrewoma.restless.core.util.BufferPool;
+import com.github.andrewoma.restless.core.util.BufferingOutputStream;
 import com.github.andrewoma.restless.core.util.CaseConverter;
+import com.github.andrewoma.restless.core.util.CompressingOutputStream;
+import com.github.andrewoma.restless.core.util.Compression;
 import com.github.andrewoma.restless.core.util.Validators;
+import com.github.andrewoma.restless.server.FileOutput;
 import com.github.andrewoma.restless.server.ServerHandler;
 import com.github.andrewoma.restless.server.ServerRequest;
 import com.github.andrewoma.restless.server.ServerResponse;
+import com.github.andrewoma.restless.server.ServerResponseCallback;
+import com.github.andrewoma.restless.server.ServiceMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class RestlessServlet extends HttpServlet {
+    private static final Logger LOG = LoggerFactory.getLogger(RestlessServlet.class);
+
+    public static final int DEFAULT_RESPONSE_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The most of a rejected body that is read so the client can read the response. The connection is closed
+     * rather than reading more, so that the request size limit also bounds the data read.
+     */
+    static final long MAX_DRAIN_SIZE = 64 * 1024;
+    static final String CONNECTION = "Connection";
+    static final String CLOSE = "close";
+
     public void setHandler(ServerHandler handler) {
         this.handler = handler;
     }
 
     private ServerHandler handler;
+    private boolean asyncEnabled;
+    private Executor executor;
+    private long asyncTimeout;
+    private int compressionThreshold = Compression.DISABLED;
+    private int responseBufferSize = DEFAULT_RESPONSE_BUFFER_SIZE;
+    private long maxRequestSize = SpooledByteStream.DEFAULT_MAX_SIZE;
 
     public RestlessServlet(ServerHandler handler) {
         this.handler = handler;
@@ -53,20 +88,172 @@ public class RestlessServlet extends HttpServlet {
         return handler;
     }
 
+    /**
+     * Enables non-blocking I/O for requests that do not stream. The request body is read as it arrives and the
+     * response is written as the client accepts it, so slow clients do not hold a container thread.
+     * The servlet must be registered with async support, otherwise requests are handled with blocking I/O.
+     */
+    public void setAsyncEnabled(boolean asyncEnabled) {
+        this.asyncEnabled = asyncEnabled;
+    }
+
+    /**
+     * Sets the executor used to handle requests in async mode once the body has been read. By default requests
+     * are handled on the container thread that completed the read.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the timeout in milliseconds for requests that are suspended waiting for a method returning a future,
+     * or for non-blocking I/O. If not set, the container's default is used.
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    /**
+     * Compresses responses of at least the given size in bytes for clients accepting gzip or deflate.
+     * Compressed requests are always accepted. Disabled by default.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Buffers responses of up to the given size in bytes so that they are sent with a Content-Length rather than
+     * chunked. Larger responses are streamed. Defaults to {@link #DEFAULT_RESPONSE_BUFFER_SIZE}.
+     */
+    public void setResponseBufferSize(int responseBufferSize) {
+        this.responseBufferSize = responseBufferSize;
+    }
+
+    /**
+     * Rejects request bodies that are buffered in memory in non-blocking mode once they exceed the given size
+     * in bytes, replying with a {@link PayloadTooLargeException}.
+     * Defaults to {@link SpooledByteStream#DEFAULT_MAX_SIZE}.
+     */
+    public void setMaxRequestSize(long maxRequestSize) {
+        Validators.require(maxRequestSize >= 0 && maxRequestSize < Integer.MAX_VALUE,
+                "'maxRequestSize' must be between 0 and " + Integer.MAX_VALUE);
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    long getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         String[] parts = request.getPathInfo().split("/");
-        Validators.require(parts.length == 3, "Invalid path of '/<service>/<method>' but got '" + request.getPathInfo() + "'");
+        boolean batch = parts.length == 2 && parts[1].equals(Batches.SERVICE);
+        Validators.require(parts.length == 3 || batch, "Invalid path of '/<service>/<method>' but got '" + request.getPathInfo() + "'");
         String service = parts[1];
-        String method = CaseConverter.lowerDashToLowerCamel(parts[2]);
-        ServerRequest serverRequest = new ServerRequest(service, method, getHeaders(request), request.getInputStream());
+        String method = batch ? null : CaseConverter.lowerDashToLowerCamel(parts[2]);
+
+        if (isNonBlocking(request, service, method)) {
+            new NonBlockingExchange(this, handler, executor, service, method, getHeaders(request), request, response).start();
+            return;
+        }
+
+        InputStream input;
+        try {
+            input = Compression.decode(request.getHeader(Compression.CONTENT_ENCODING), request.getInputStream());
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        ServerRequest serverRequest = new ServerRequest(service, method, getHeaders(request), input);
+        String encoding = getResponseEncoding(request);
+        boolean streamed = isStreamedResult(service, method);
+
+        if (isSuspendable(request, service, method)) {
+            handleAsync(request, serverRequest, encoding, streamed);
+            return;
+        }
 
         ServerResponse serverResponse = handler.handleRequest(serverRequest);
+        if (Status.PAYLOAD_TOO_LARGE.getValue().equals(serverResponse.getHeaders().get(Headers.STATUS.getValue()))) {
+            // Rejected bodies are drained so that the client reads the response rather than a reset connection
+            if (!drain(request.getInputStream())) {
+                response.setHeader(CONNECTION, CLOSE);
+            }
+        }
+
+        handleResponse(response, serverResponse, encoding, streamed);
+    }
 
-        handleResponse(response, serverResponse);
+    private boolean isNonBlocking(HttpServletRequest request, String service, String method) {
+        if (!asyncEnabled || !request.isAsyncSupported()) {
+            return false;
+        }
+        ServiceMethod serviceMethod = handler.findServiceMethod(service, method);
+        return serviceMethod == null || !serviceMethod.isStreaming();
+    }
+
+    private boolean isSuspendable(HttpServletRequest request, String service, String method) {
+        if (!request.isAsyncSupported()) {
+            return false;
+        }
+        ServiceMethod serviceMethod = handler.findServiceMethod(service, method);
+        return serviceMethod != null && serviceMethod.isAsync();
     }
 
-    private void handleResponse(HttpServletResponse response, ServerResponse serverResponse) {
+    /**
+     * Discards up to {@link #MAX_DRAIN_SIZE} bytes of the input, returning true if the end was reached
+     */
+    private static boolean drain(InputStream input) throws IOException {
+        byte[] buffer = BufferPool.getDefault().acquire(BufferPool.MIN_SIZE);
+        try {
+            long drained = 0;
+            while (drained <= MAX_DRAIN_SIZE) {
+                int read = input.read(buffer);
+                if (read == -1) {
+                    return true;
+                }
+                drained += read;
+            }
+            return false;
+        } finally {
+            BufferPool.getDefault().release(buffer);
+        }
+    }
+
+    private boolean isStreamedResult(String service, String method) {
+        ServiceMethod serviceMethod = handler.findServiceMethod(service, method);
+        return serviceMethod != null && serviceMethod.isStreamedResult();
+    }
+
+    /**
+     * Suspends the request until the future returned by the method completes, releasing the container thread
+     */
+    private void handleAsync(HttpServletRequest request, ServerRequest serverRequest, final String encoding,
+            final boolean streamed) {
+        final AsyncContext asyncContext = startAsync(request);
+        handler.handleRequest(serverRequest, new ServerResponseCallback() {
+            @Override
+            public void complete(ServerResponse serverResponse) {
+                try {
+                    handleResponse((HttpServletResponse) asyncContext.getResponse(), serverResponse, encoding, streamed);
+                    asyncContext.complete();
+                } catch (IllegalStateException e) {
+                    LOG.warn("Unable to write response as the request has already completed", e);
+                }
+            }
+        });
+    }
+
+    AsyncContext startAsync(HttpServletRequest request) {
+        AsyncContext asyncContext = request.startAsync();
+        if (asyncTimeout > 0) {
+            asyncContext.setTimeout(asyncTimeout);
+        }
+        return asyncContext;
+    }
+
+    void setResponseHeaders(HttpServletResponse response, ServerResponse serverResponse) {
         response.setStatus(Integer.parseInt(serverResponse.getHeaders().get(Headers.STATUS.getValue())));
 
         for (Map.Entry<String, String> entry : serverResponse.getHeaders().entrySet()) {
@@ -74,9 +261,76 @@ public class RestlessServlet extends HttpServlet {
                 response.setHeader(entry.getKey(), entry.getValue());
             }
         }
+    }
+
+    /**
+     * Returns the encoding to compress the response with, or null if the response should not be compressed
+     */
+    String getResponseEncoding(HttpServletRequest request) {
+        if (compressionThreshold == Compression.DISABLED) {
+            return null;
+        }
+        return Compression.negotiate(request.getHeader(Compression.ACCEPT_ENCODING));
+    }
+
+    int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Writes the response, buffering small responses so they are sent with a Content-Length. Streamed results
+     * are written unbuffered so that values flushed from slow sources reach the client promptly.
+     */
+    private void handleResponse(final HttpServletResponse response, ServerResponse serverResponse, final String encoding,
+            boolean streamed) {
+        setResponseHeaders(response, serverResponse);
 
         try {
-            serverResponse.getOutput().write(response.getOutputStream());
+            // Responses with a known length, such as ranges of seekable streams, are sent as is
+            if (serverResponse.getHeaders().containsKey(Codecs.CONTENT_LENGTH)) {
+                if (serverResponse.getOutput() instanceof FileOutput) {
+                    FileSender.send(response.getOutputStream(), ((FileOutput) serverResponse.getOutput()).getStream());
+                } else {
+                    serverResponse.getOutput().write(response.getOutputStream());
+                }
+                return;
+            }
+
+            BufferingOutputStream buffered = new BufferingOutputStream(response.getOutputStream(),
+                    streamed ? 0 : responseBufferSize,
+                    new BufferingOutputStream.LengthListener() {
+                        @Override
+                        public void length(int length) {
+                            response.setContentLength(length);
+                        }
+                    });
+
+            try {
+                if (encoding == null || serverResponse.getHeaders().containsKey(Compression.CONTENT_ENCODING)) {
+                    serverResponse.getOutput().write(buffered);
+                    buffered.finish();
+                    return;
+                }
+
+                CompressingOutputStream output = new CompressingOutputStream(buffered, encoding,
+                        streamed ? 0 : compressionThreshold, new Runnable() {
+                            @Override
+                            public void run() {
+                                response.setHeader(Compression.CONTENT_ENCODING, encoding);
+                                response.addHeader("Vary", Compression.ACCEPT_ENCODING);
+                            }
+                        });
+                try {
+                    serverResponse.getOutput().write(output);
+                    output.finish();
+                } finally {
+                    output.release();
+                }
+                buffered.finish();
+            } finally {
+                // Returns the pooled buffers if the response failed part way through
+                buffered.release();
+            }
         } catch (Exception e) {
             // TODO ... what to do here
             throw new RuntimeException(e);
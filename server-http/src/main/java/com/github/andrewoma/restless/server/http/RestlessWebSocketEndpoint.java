@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server.http;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.StreamingHandler;
+import com.github.andrewoma.restless.core.util.CaseConverter;
+import com.github.andrewoma.restless.core.util.QueueIterator;
+import com.github.andrewoma.restless.core.util.Validators;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerRequest;
+import com.github.andrewoma.restless.server.ServerResponse;
+import com.github.andrewoma.restless.server.ServiceMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.HandshakeResponse;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.server.HandshakeRequest;
+import javax.websocket.server.ServerEndpointConfig;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves bidirectional streaming methods, i.e. those taking a {@link StreamingHandler}, over WebSockets.
+ * Register it with the container's {@link javax.websocket.server.ServerContainer} using {@link #config}
+ * with a path containing {@code {service}} and {@code {method}} parameters, such as {@link #DEFAULT_PATH}.
+ *
+ * <p>The first text message holds the method's other parameters as a JSON object. Each following message is a
+ * JSON value returned by {@link StreamingHandler#receive()}, with an empty message ending the client's stream.
+ * The connection is closed once the method returns. If it fails, the exception is mapped by the server's
+ * exception handler and sent as a final binary message holding the mapped error, followed by an error close
+ * code with the mapped status as the reason. Methods run on their own threads with the handshake headers as the
+ * context's request headers, so interceptors apply as for other calls.
+ */
+public class RestlessWebSocketEndpoint extends Endpoint {
+    private static final Logger LOG = LoggerFactory.getLogger(RestlessWebSocketEndpoint.class);
+
+    public static final String DEFAULT_PATH = "/rpc-ws/{service}/{method}";
+
+    private static final String HEADERS = RestlessWebSocketEndpoint.class.getName() + ".headers";
+    private static final String EXCHANGE = RestlessWebSocketEndpoint.class.getName() + ".exchange";
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int MAX_REASON_BYTES = 123;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ServerHandler handler;
+    private final Executor executor;
+
+    public RestlessWebSocketEndpoint(ServerHandler handler, Executor executor) {
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    public static ServerEndpointConfig config(String path, ServerHandler handler) {
+        return config(path, handler, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Returns the configuration for an endpoint at the given path, running methods on the given executor.
+     * The executor requires a thread per open connection.
+     */
+    public static ServerEndpointConfig config(String path, ServerHandler handler, Executor executor) {
+        final RestlessWebSocketEndpoint endpoint = new RestlessWebSocketEndpoint(handler, executor);
+        return ServerEndpointConfig.Builder.create(RestlessWebSocketEndpoint.class, path)
+                .configurator(new ServerEndpointConfig.Configurator() {
+                    @Override
+                    public <T> T getEndpointInstance(Class<T> type) {
+                        return type.cast(endpoint);
+                    }
+
+                    @Override
+                    public void modifyHandshake(ServerEndpointConfig config, HandshakeRequest request,
+                            HandshakeResponse response) {
+                        Map<String, String> headers = new HashMap<String, String>();
+                        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+                            if (!header.getValue().isEmpty()) {
+                                headers.put(header.getKey(), header.getValue().get(0));
+                            }
+                        }
+                        config.getUserProperties().put(HEADERS, headers);
+                    }
+                }).build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onOpen(Session session, EndpointConfig config) {
+        String service = session.getPathParameters().get("service");
+        String method = CaseConverter.lowerDashToLowerCamel(String.valueOf(session.getPathParameters().get("method")));
+
+        ServiceMethod serviceMethod = handler.findServiceMethod(service, method);
+        if (serviceMethod == null || serviceMethod.getStreamingHandlerIndex() == -1) {
+            close(session, CloseReason.CloseCodes.CANNOT_ACCEPT, "Unknown streaming method '" + method + "' on "
+                    + service);
+            return;
+        }
+
+        Map<String, String> headers = (Map<String, String>) config.getUserProperties().get(HEADERS);
+        Exchange exchange = new Exchange(session, service, method,
+                headers == null ? new HashMap<String, String>() : headers,
+                serviceMethod.getParameterReaders()[serviceMethod.getStreamingHandlerIndex()]);
+        session.getUserProperties().put(EXCHANGE, exchange);
+        session.addMessageHandler(exchange);
+    }
+
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        Exchange exchange = (Exchange) session.getUserProperties().get(EXCHANGE);
+        if (exchange != null) {
+            exchange.incoming.complete();
+        }
+    }
+
+    @Override
+    public void onError(Session session, Throwable t) {
+        Exchange exchange = (Exchange) session.getUserProperties().get(EXCHANGE);
+        if (exchange != null) {
+            exchange.incoming.fail(t);
+        }
+    }
+
+    private static void close(Session session, CloseReason.CloseCode code, String reason) {
+        try {
+            session.close(new CloseReason(code, truncate(reason)));
+        } catch (IOException e) {
+            LOG.debug("Unable to close session", e);
+        } catch (RuntimeException e) {
+            LOG.debug("Unable to close session", e);
+        }
+    }
+
+    /**
+     * Truncates the reason to the number of UTF-8 bytes allowed in a close frame, without splitting characters
+     */
+    private static String truncate(String reason) {
+        if (reason == null || reason.getBytes(UTF_8).length <= MAX_REASON_BYTES) {
+            return reason;
+        }
+        int bytes = 0;
+        int end = 0;
+        while (end < reason.length()) {
+            int next = reason.offsetByCodePoints(end, 1);
+            bytes += reason.substring(end, next).getBytes(UTF_8).length;
+            if (bytes > MAX_REASON_BYTES) {
+                break;
+            }
+            end = next;
+        }
+        return reason.substring(0, end);
+    }
+
+    private class Exchange implements MessageHandler.Whole<String>, StreamingHandler<Object> {
+        private final Session session;
+        private final String service;
+        private final String method;
+        private final Map<String, String> headers;
+        private final ObjectReader reader;
+        private final ObjectWriter writer;
+        private final QueueIterator<Object> incoming = new QueueIterator<Object>(QUEUE_CAPACITY);
+        private boolean started;
+        private boolean received;
+
+        private Exchange(Session session, String service, String method, Map<String, String> headers,
+                ObjectReader reader) {
+            this.session = session;
+            this.service = service;
+            this.method = method;
+            this.headers = headers;
+            this.reader = reader;
+            this.writer = handler.getObjectMapper().writer();
+        }
+
+        @Override
+        public void onMessage(String message) {
+            if (!started) {
+                started = true;
+                start(message);
+            } else if (message.isEmpty()) {
+                incoming.complete();
+            } else {
+                try {
+                    incoming.add(reader.readValue(message));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    incoming.fail(e);
+                } catch (Exception e) {
+                    incoming.fail(e);
+                }
+            }
+        }
+
+        private void start(String parameters) {
+            final ServerRequest request = new ServerRequest(service, method, headers,
+                    new ByteArrayInputStream(parameters.getBytes(UTF_8)));
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ServerResponse failure = handler.handleStreaming(request, Exchange.this);
+                        if (failure == null) {
+                            close(session, CloseReason.CloseCodes.NORMAL_CLOSURE, null);
+                        } else {
+                            fail(failure);
+                        }
+                    } catch (Throwable t) {
+                        LOG.debug("Streaming method failed", t);
+                        close(session, CloseReason.CloseCodes.UNEXPECTED_CONDITION, null);
+                    } finally {
+                        // Releases the reading thread if the method returned without receiving every message
+                        incoming.cancel();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Sends the mapped error, then closes with its status so the client can map it to the same exception
+         */
+        private void fail(ServerResponse failure) throws Exception {
+            ByteArrayOutputStream error = new ByteArrayOutputStream();
+            failure.getOutput().write(error);
+            synchronized (this) {
+                session.getBasicRemote().sendBinary(ByteBuffer.wrap(error.toByteArray()));
+            }
+            close(session, CloseReason.CloseCodes.UNEXPECTED_CONDITION,
+                    failure.getHeaders().get(Headers.STATUS.getValue()));
+        }
+
+        @Override
+        public Iterator<Object> receive() {
+            Validators.check(!received, "Messages can only be received once");
+            received = true;
+            return incoming;
+        }
+
+        @Override
+        public synchronized void send(Iterator<Object> values) {
+            try {
+                while (values.hasNext()) {
+                    session.getBasicRemote().sendText(writer.writeValueAsString(values.next()));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Lazily creates the default executor so that servers without streaming methods do not start threads
+     */
+    private static class DefaultExecutor {
+        private static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "restless-websocket-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server.netty;
+
+import com.github.andrewoma.restless.server.ServerHandler;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a ServerHandler over HTTP using Netty, without a servlet container. Requests are aggregated up to
+ * a maximum content length, so ByteStreams are buffered rather than streamed. Connections are kept alive
+ * unless the client requests otherwise.
+ *
+ * <p>Service methods are invoked on a pool of worker threads so that blocking methods do not stall the I/O
+ * event loops. If the worker pool size is 0, methods are invoked directly on the event loop, which is only
+ * suitable for methods that never block.
+ */
+public class NettyServer {
+    private static final Logger LOG = LoggerFactory.getLogger(NettyServer.class);
+
+    private final ServerHandler handler;
+    private final String host;
+    private final int port;
+    private final String path;
+    private final int ioThreads;
+    private final int workerThreads;
+    private final int maxContentLength;
+    private final boolean epoll;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup ioGroup;
+    private EventExecutorGroup workerGroup;
+    private Channel channel;
+
+    NettyServer(ServerHandler handler, String host, int port, String path, int ioThreads, int workerThreads,
+            int maxContentLength, boolean epoll) {
+        this.handler = handler;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.ioThreads = ioThreads;
+        this.workerThreads = workerThreads;
+        this.maxContentLength = maxContentLength;
+        this.epoll = epoll && Epoll.isAvailable();
+    }
+
+    public synchronized void start() throws InterruptedException {
+        Class<? extends ServerChannel> channelType;
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(1);
+            ioGroup = new EpollEventLoopGroup(ioThreads);
+            channelType = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(1);
+            ioGroup = new NioEventLoopGroup(ioThreads);
+            channelType = NioServerSocketChannel.class;
+        }
+        workerGroup = workerThreads > 0 ? new DefaultEventExecutorGroup(workerThreads) : null;
+
+        final RestlessChannelHandler channelHandler = new RestlessChannelHandler(handler, path);
+
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, ioGroup)
+                .channel(channelType)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        ChannelPipeline pipeline = channel.pipeline();
+                        pipeline.addLast("codec", new HttpServerCodec());
+                        pipeline.addLast("aggregator", new HttpObjectAggregator(maxContentLength));
+                        pipeline.addLast(workerGroup, "restless", channelHandler);
+                    }
+                });
+
+        channel = (host == null ? bootstrap.bind(port) : bootstrap.bind(host, port)).sync().channel();
+        LOG.info("Started Netty server on {} using {} transport", channel.localAddress(), epoll ? "epoll" : "nio");
+    }
+
+    public synchronized void stop() {
+        if (channel != null) {
+            channel.close().syncUninterruptibly();
+            channel = null;
+        }
+        shutdown(bossGroup);
+        shutdown(ioGroup);
+        shutdown(workerGroup);
+    }
+
+    private void shutdown(EventExecutorGroup group) {
+        if (group != null) {
+            group.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    /**
+     * Returns the port the server is bound to, which differs from the configured port if it was 0
+     */
+    public int getPort() {
+        return ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    /**
+     * Returns the base URI of the server for use by clients
+     */
+    public URI getUri() {
+        return URI.create("http://" + (host == null ? "localhost" : host) + ":" + getPort() + path);
+    }
+
+    public boolean isEpoll() {
+        return epoll;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server.netty;
+
+import com.github.andrewoma.restless.core.util.Validators;
+import com.github.andrewoma.restless.server.ServerHandler;
+
+public class NettyServerBuilder {
+    private ServerHandler handler;
+    private String host;
+    private int port = 8080;
+    private String path = "/";
+    private int ioThreads = 0;
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 8;
+    private int maxContentLength = 10 * 1024 * 1024;
+    private boolean epoll = true;
+
+    public NettyServerBuilder handler(ServerHandler handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    /**
+     * Sets the host to bind to. Defaults to all interfaces.
+     */
+    public NettyServerBuilder host(String host) {
+        this.host = host;
+        return this;
+    }
+
+    /**
+     * Sets the port to bind to. Use 0 to bind to an ephemeral port.
+     */
+    public NettyServerBuilder port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Sets the path that requests are served under. Defaults to "/".
+     */
+    public NettyServerBuilder path(String path) {
+        this.path = path;
+        return this;
+    }
+
+    /**
+     * Sets the number of I/O event loop threads. Defaults to 0, meaning Netty's default of twice the number of cores.
+     */
+    public NettyServerBuilder ioThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    /**
+     * Sets the number of worker threads that invoke service methods. If 0, methods are invoked on the I/O event loop.
+     */
+    public NettyServerBuilder workerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size of a request body in bytes
+     */
+    public NettyServerBuilder maxContentLength(int maxContentLength) {
+        this.maxContentLength = maxContentLength;
+        return this;
+    }
+
+    /**
+     * Sets whether to use the native epoll transport when it is available. Defaults to true.
+     */
+    public NettyServerBuilder epoll(boolean epoll) {
+        this.epoll = epoll;
+        return this;
+    }
+
+    public NettyServer build() {
+        Validators.require(handler != null, "'handler' is required");
+        Validators.require(path.startsWith("/") && path.endsWith("/"), "'path' must start and end with '/'");
+        Validators.require(ioThreads >= 0 && workerThreads >= 0, "Thread counts must not be negative");
+
+        return new NettyServer(handler, host, port, path, ioThreads, workerThreads, maxContentLength, epoll);
+    }
+}
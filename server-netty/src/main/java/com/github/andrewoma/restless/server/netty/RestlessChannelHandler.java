@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server.netty;
+
+import com.github.andrewoma.restless.core.Batches;
+import com.github.andrewoma.restless.core.FileByteStream;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.util.CaseConverter;
+import com.github.andrewoma.restless.server.FileOutput;
+import com.github.andrewoma.restless.server.ServerHandler;
+import com.github.andrewoma.restless.server.ServerRequest;
+import com.github.andrewoma.restless.server.ServerResponse;
+import com.github.andrewoma.restless.server.ServerResponseCallback;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dispatches aggregated HTTP requests of the form {@code POST <path><service>/<method>} to the ServerHandler,
+ * writing the response into a buffer from the channel's allocator. File results are sent as file regions.
+ */
+@ChannelHandler.Sharable
+class RestlessChannelHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+    private static final Logger LOG = LoggerFactory.getLogger(RestlessChannelHandler.class);
+
+    private final ServerHandler handler;
+    private final String path;
+
+    RestlessChannelHandler(ServerHandler handler, String path) {
+        this.handler = handler;
+        this.path = path;
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final FullHttpRequest request) throws Exception {
+        final boolean keepAlive = HttpHeaders.isKeepAlive(request);
+
+        if (!request.getDecoderResult().isSuccess()) {
+            sendError(ctx, HttpResponseStatus.BAD_REQUEST, false);
+            return;
+        }
+        if (!request.getMethod().equals(HttpMethod.POST)) {
+            sendError(ctx, HttpResponseStatus.METHOD_NOT_ALLOWED, keepAlive);
+            return;
+        }
+
+        String[] parts = parsePath(request.getUri());
+        if (parts == null) {
+            sendError(ctx, HttpResponseStatus.NOT_FOUND, keepAlive);
+            return;
+        }
+
+        Map<String, String> headers = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : request.headers()) {
+            headers.put(entry.getKey(), entry.getValue());
+        }
+
+        // Retained until the response is written as the method may read the body after returning a future
+        request.content().retain();
+        ServerRequest serverRequest = new ServerRequest(parts[0], CaseConverter.lowerDashToLowerCamel(parts[1]),
+                headers, new ByteBufInputStream(request.content()));
+
+        handler.handleRequest(serverRequest, new ServerResponseCallback() {
+            @Override
+            public void complete(ServerResponse response) {
+                try {
+                    write(ctx, response, keepAlive);
+                } finally {
+                    request.content().release();
+                }
+            }
+        });
+    }
+
+    private String[] parsePath(String uri) {
+        int query = uri.indexOf('?');
+        String requestPath = query == -1 ? uri : uri.substring(0, query);
+        if (!requestPath.startsWith(path)) {
+            return null;
+        }
+
+        String[] parts = requestPath.substring(path.length()).split("/");
+        if (parts.length == 1 && parts[0].equals(Batches.SERVICE)) {
+            return new String[]{Batches.SERVICE, null};
+        }
+        return parts.length == 2 && !parts[0].isEmpty() && !parts[1].isEmpty() ? parts : null;
+    }
+
+    private void write(ChannelHandlerContext ctx, ServerResponse serverResponse, boolean keepAlive) {
+        if (serverResponse.getOutput() instanceof FileOutput) {
+            writeFile(ctx, serverResponse, ((FileOutput) serverResponse.getOutput()).getStream(), keepAlive);
+            return;
+        }
+
+        ByteBuf content = ctx.alloc().buffer();
+        try {
+            serverResponse.getOutput().write(new ByteBufOutputStream(content));
+        } catch (Exception e) {
+            content.release();
+            LOG.error("Unable to write response", e);
+            sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, false);
+            return;
+        }
+
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, getStatus(serverResponse), content);
+        setHeaders(response, serverResponse);
+        send(ctx, response, keepAlive);
+    }
+
+    /**
+     * Writes the file as a region so that it is sent from the page cache to the socket without copying
+     */
+    private void writeFile(ChannelHandlerContext ctx, ServerResponse serverResponse, FileByteStream stream, boolean keepAlive) {
+        FileChannel channel;
+        try {
+            channel = stream.openChannel();
+        } catch (IOException e) {
+            LOG.error("Unable to open file", e);
+            sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, false);
+            return;
+        }
+
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, getStatus(serverResponse));
+        setHeaders(response, serverResponse);
+        HttpHeaders.setContentLength(response, stream.getLength());
+        HttpHeaders.setKeepAlive(response, keepAlive);
+
+        ctx.write(response);
+        ctx.write(new DefaultFileRegion(channel, stream.getPosition(), stream.getLength()));
+        ChannelFuture future = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        if (!keepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private HttpResponseStatus getStatus(ServerResponse serverResponse) {
+        return HttpResponseStatus.valueOf(Integer.parseInt(serverResponse.getHeaders().get(Headers.STATUS.getValue())));
+    }
+
+    private void setHeaders(HttpResponse response, ServerResponse serverResponse) {
+        for (Map.Entry<String, String> entry : serverResponse.getHeaders().entrySet()) {
+            if (!entry.getKey().equals(Headers.STATUS.getValue())) {
+                response.headers().set(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void sendError(ChannelHandlerContext ctx, HttpResponseStatus status, boolean keepAlive) {
+        send(ctx, new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status), keepAlive);
+    }
+
+    private void send(ChannelHandlerContext ctx, FullHttpResponse response, boolean keepAlive) {
+        HttpHeaders.setContentLength(response, response.content().readableBytes());
+        HttpHeaders.setKeepAlive(response, keepAlive);
+
+        if (keepAlive) {
+            ctx.writeAndFlush(response, ctx.voidPromise());
+        } else {
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        LOG.warn("Closing channel after unexpected exception", cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server.netty;
+
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.client.http.HttpClientBuilder;
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.exception.RemoteException;
+import com.github.andrewoma.restless.server.ServerHandlerBuilder;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Named;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class NettyServerTest {
+    private NettyServer server;
+    private CloseableHttpClient httpClient = HttpClients.createDefault();
+    private Foo client;
+
+    @Before
+    public void start() throws Exception {
+        server = new NettyServerBuilder()
+                .handler(new ServerHandlerBuilder().service(new FooImpl()).build())
+                .port(0)
+                .path("/rpc/")
+                .workerThreads(2)
+                .build();
+        server.start();
+
+        client = new HttpClientBuilder()
+                .httpClient(httpClient)
+                .uri(server.getUri())
+                .build(Foo.class);
+    }
+
+    @After
+    public void stop() throws Exception {
+        httpClient.close();
+        server.stop();
+    }
+
+    @Test
+    public void shouldHandleRequestsOnKeptAliveConnections() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertThat(client.echo("hello" + i)).isEqualTo("hello" + i);
+        }
+        assertThat(client.sum(Arrays.asList(1, 2, 3))).isEqualTo(6);
+    }
+
+    @Test
+    public void shouldSendFiles() throws Exception {
+        byte[] bytes = new byte[256 * 1024];
+        new Random(1).nextBytes(bytes);
+        File file = File.createTempFile("restless", ".bin");
+        File copy = File.createTempFile("restless", ".bin");
+        try {
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                output.write(bytes);
+            } finally {
+                output.close();
+            }
+
+            client.file(file.getPath()).toFile(copy);
+            assertThat(copy).hasBinaryContent(bytes);
+            assertThat(client.echo("after")).isEqualTo("after");
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+
+    @Test
+    public void shouldMapExceptions() throws Exception {
+        try {
+            client.fail("Broken");
+            fail("Expected exception");
+        } catch (RemoteException e) {
+            assertThat(e.getMessage()).isEqualTo("Broken");
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidRequests() throws Exception {
+        assertThat(status(new HttpPost(server.getUri().resolve("foo")))).isEqualTo(404);
+        assertThat(status(new HttpPost(server.getUri().resolve("/other/foo/echo")))).isEqualTo(404);
+        assertThat(status(new HttpGet(server.getUri().resolve("foo/echo")))).isEqualTo(405);
+    }
+
+    private int status(HttpUriRequest request) throws Exception {
+        CloseableHttpResponse response = httpClient.execute(request);
+        try {
+            return response.getStatusLine().getStatusCode();
+        } finally {
+            response.close();
+        }
+    }
+
+    @Service("foo")
+    public interface Foo {
+        String echo(@Named("value") String value);
+
+        int sum(@Named("values") List<Integer> values);
+
+        void fail(@Named("message") String message);
+
+        ByteStream file(@Named("path") String path);
+    }
+
+    public static class FooImpl implements Foo {
+        @Override
+        public String echo(String value) {
+            return value;
+        }
+
+        @Override
+        public int sum(List<Integer> values) {
+            int sum = 0;
+            for (Integer value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        @Override
+        public void fail(String message) {
+            throw new IllegalArgumentException(message);
+        }
+
+        @Override
+        public ByteStream file(String path) {
+            return ByteStream.fromFile(new File(path));
+        }
+    }
+}
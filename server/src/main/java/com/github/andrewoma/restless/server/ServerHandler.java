@@ -22,22 +22,41 @@
 
 package com.github.andrewoma.restless.server;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.databind.MappingJsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.andrewoma.restless.core.Batches;
 import com.github.andrewoma.restless.core.ByteStream;
 import com.github.andrewoma.restless.core.Context;
 import com.github.andrewoma.restless.core.DefaultContext;
+import com.github.andrewoma.restless.core.FileByteStream;
 import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.SeekableByteStream;
+import com.github.andrewoma.restless.core.SpooledByteStream;
 import com.github.andrewoma.restless.core.Status;
 import com.github.andrewoma.restless.core.Streamed;
-import com.github.andrewoma.restless.core.StreamedType;
+import com.github.andrewoma.restless.core.StreamedJsonValue;
+import com.github.andrewoma.restless.core.StreamingHandler;
+import com.github.andrewoma.restless.core.codec.Codec;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.exception.ClientException;
 import com.github.andrewoma.restless.core.exception.NotFoundException;
+import com.github.andrewoma.restless.core.exception.PayloadTooLargeException;
+import com.github.andrewoma.restless.core.exception.ServiceUnavailableException;
 import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
 import com.github.andrewoma.restless.core.proxy.MethodInvocation;
-import com.github.andrewoma.restless.core.proxy.TargetMethodHandler;
-import com.github.andrewoma.restless.core.util.Paranamers;
+import com.github.andrewoma.restless.core.proxy.MethodInvokerFactory;
+import com.github.andrewoma.restless.core.proxy.MethodInvokers;
+import com.github.andrewoma.restless.core.util.Callback;
+import com.github.andrewoma.restless.core.util.CaseConverter;
+import com.github.andrewoma.restless.core.util.Futures;
+import com.github.andrewoma.restless.core.util.Promise;
+import com.github.andrewoma.restless.core.util.Ranges;
+import com.github.andrewoma.restless.core.util.Streams;
 import com.github.andrewoma.restless.core.util.Validators;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,68 +64,652 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServerHandler {
     private static final Logger LOG = LoggerFactory.getLogger(ServerHandler.class);
+    private static final long STREAMED_FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final ThreadLocal<Boolean> BATCH_CALLS = new ThreadLocal<Boolean>();
+    private static final Executor CALLING_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final int SPOOLING_DISABLED = -1;
+
+    private static final StreamingOutput EMPTY_OUTPUT = new StreamingOutput() {
+        @Override
+        public void write(OutputStream output) {
+        }
+    };
 
     private final ServiceProvider serviceProvider;
+    private final ConcurrentMap<String, Map<String, ServiceMethod>> serviceMethods =
+            new ConcurrentHashMap<String, Map<String, ServiceMethod>>();
     private final List<MethodInterceptor<Context>> methodInterceptors;
-    private final MappingJsonFactory jsonFactory;
+    private final MethodInvokerFactory invokerFactory;
+    private final Codecs codecs;
     private final ObjectMapper objectMapper;
     private final ServerExceptionHandler exceptionHandler;
+    private final boolean failOnUnknownParameters;
+    private final Executor batchExecutor;
+    private final int maxBatchSize;
+    private final int spoolMemoryThreshold;
+    private final long maxSpoolSize;
 
     public ServerHandler(ServiceProvider serviceProvider, List<MethodInterceptor<Context>> methodInterceptors,
             ObjectMapper objectMapper, ServerExceptionHandler exceptionHandler) {
+        this(serviceProvider, methodInterceptors, objectMapper, exceptionHandler, MethodInvokers.defaultFactory(),
+                Codecs.defaults(), null, DEFAULT_MAX_BATCH_SIZE, SPOOLING_DISABLED, 0);
+    }
+
+    public ServerHandler(Map<String, Service> services, List<MethodInterceptor<Context>> methodInterceptors,
+            ObjectMapper objectMapper, ServerExceptionHandler exceptionHandler) {
+        this(services, methodInterceptors, objectMapper, exceptionHandler, MethodInvokers.defaultFactory());
+    }
+
+    public ServerHandler(Map<String, Service> services, List<MethodInterceptor<Context>> methodInterceptors,
+            ObjectMapper objectMapper, ServerExceptionHandler exceptionHandler, MethodInvokerFactory invokerFactory) {
+        this(services, methodInterceptors, objectMapper, exceptionHandler, invokerFactory, Codecs.defaults());
+    }
+
+    /**
+     * Creates a handler that negotiates the wire format with clients from the given codecs. Requests are parsed
+     * using the codec matching their Content-Type, and results are written using the codec preferred by their
+     * Accept header, defaulting to the request's codec. Errors are always written as JSON.
+     */
+    public ServerHandler(Map<String, Service> services, List<MethodInterceptor<Context>> methodInterceptors,
+            ObjectMapper objectMapper, ServerExceptionHandler exceptionHandler, MethodInvokerFactory invokerFactory,
+            Codecs codecs) {
+        this(services, methodInterceptors, objectMapper, exceptionHandler, invokerFactory, codecs, null,
+                DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a handler that executes the calls in a batch in parallel using the given executor, rejecting
+     * batches of more than {@code maxBatchSize} calls. If the executor is null, a shared pool with a thread per
+     * processor is used. The executor should be bounded so that large batches cannot exhaust the server; calls it
+     * rejects fail with a ServiceUnavailableException.
+     */
+    public ServerHandler(Map<String, Service> services, List<MethodInterceptor<Context>> methodInterceptors,
+            ObjectMapper objectMapper, ServerExceptionHandler exceptionHandler, MethodInvokerFactory invokerFactory,
+            Codecs codecs, Executor batchExecutor, int maxBatchSize) {
+        this(services, methodInterceptors, objectMapper, exceptionHandler, invokerFactory, codecs, batchExecutor,
+                maxBatchSize, SPOOLING_DISABLED, 0);
+    }
+
+    /**
+     * Creates a handler that reads {@link ByteStream} parameters completely before invoking the method, so they
+     * can be read more than once. Bodies of up to {@code spoolMemoryThreshold} bytes are held in memory and larger
+     * bodies are spooled to a temporary file. Bodies of more than {@code maxSpoolSize} bytes are rejected with a
+     * {@link PayloadTooLargeException}. Spooled parameters are closed once the response has been written.
+     * If the threshold is {@link #SPOOLING_DISABLED}, parameters are read directly from the request.
+     */
+    public ServerHandler(Map<String, Service> services, List<MethodInterceptor<Context>> methodInterceptors,
+            ObjectMapper objectMapper, ServerExceptionHandler exceptionHandler, MethodInvokerFactory invokerFactory,
+            Codecs codecs, Executor batchExecutor, int maxBatchSize, int spoolMemoryThreshold, long maxSpoolSize) {
+        this(new MapServiceProvider(services), methodInterceptors, objectMapper, exceptionHandler, invokerFactory,
+                codecs, batchExecutor, maxBatchSize, spoolMemoryThreshold, maxSpoolSize);
+        for (String service : services.keySet()) {
+            getServiceMethods(service);
+        }
+    }
+
+    /**
+     * Creates a handler that looks up services from the provider as they are first called. The methods of each
+     * service are resolved on its first call and cached, so the provider must return the same service for a name
+     * each time. Unlike the map based constructors, overloaded methods are only reported when the service is called.
+     */
+    public ServerHandler(ServiceProvider serviceProvider, List<MethodInterceptor<Context>> methodInterceptors,
+            ObjectMapper objectMapper, ServerExceptionHandler exceptionHandler, MethodInvokerFactory invokerFactory,
+            Codecs codecs, Executor batchExecutor, int maxBatchSize, int spoolMemoryThreshold, long maxSpoolSize) {
+        this.spoolMemoryThreshold = spoolMemoryThreshold;
+        this.maxSpoolSize = maxSpoolSize;
+        this.batchExecutor = batchExecutor;
+        this.maxBatchSize = maxBatchSize;
         this.serviceProvider = serviceProvider;
         this.methodInterceptors = methodInterceptors;
+        this.invokerFactory = invokerFactory;
         this.exceptionHandler = exceptionHandler;
-        this.jsonFactory = new MappingJsonFactory(objectMapper);
+        this.codecs = codecs;
         this.objectMapper = objectMapper;
+        this.failOnUnknownParameters = objectMapper.isEnabled(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * Returns the methods of the named service, resolving and caching them on first use, or null if there is no
+     * such service. Unknown names are not cached so that clients cannot grow the cache.
+     */
+    private Map<String, ServiceMethod> getServiceMethods(String name) {
+        Map<String, ServiceMethod> methods = serviceMethods.get(name);
+        if (methods != null) {
+            return methods;
+        }
+
+        Service service = serviceProvider.get(name);
+        if (service == null) {
+            return null;
+        }
+
+        methods = createServiceMethods(service);
+        Map<String, ServiceMethod> existing = serviceMethods.putIfAbsent(name, methods);
+        return existing == null ? methods : existing;
     }
 
+    private Map<String, ServiceMethod> createServiceMethods(Service service) {
+        Map<String, ServiceMethod> methods = new HashMap<String, ServiceMethod>();
+        for (Method method : service.getType().getMethods()) {
+            Validators.require(!methods.containsKey(method.getName()), "Overloaded methods are not supported, but '"
+                    + service.getType().getName() + "' declares '" + method.getName() + "' more than once");
+            methods.put(method.getName(), new ServiceMethod(service, method, methodInterceptors, objectMapper, invokerFactory));
+        }
+        return Collections.unmodifiableMap(methods);
+    }
+
+    /**
+     * Handles the request, waiting for the result if the method returns a future
+     */
     public ServerResponse handleRequest(final ServerRequest request) {
-        JsonParser requestParser = null;
+        if (Batches.SERVICE.equals(request.getService())) {
+            return awaitBatch(request);
+        }
+        DefaultContext context = null;
         try {
-            DefaultContext context = createContext(request);
-            Service service = getService(request, context);
-            Method method = getMethod(request, service.getType(), context);
-            String[] parameterNames = Paranamers.DEFAULT.lookupParameterNames(method);
+            context = createContext(request);
+            Codec requestCodec = codecs.forContentType(Headers.get(request.getHeaders(), Codecs.CONTENT_TYPE));
+            Object result = invoke(request, context, requestCodec);
+            if (result instanceof Future) {
+                result = Futures.get((Future<?>) result);
+            }
+            return createResponse(context, result, responseCodec(request, requestCodec));
+        } catch (Throwable t) {
+            closeSpooled(context);
+            return handleException(t);
+        } finally {
+            DefaultContext.CONTEXTS.remove();
+        }
+    }
 
-            Object[] parameters = getByteStreamParameters(method, request);
-            if (parameters == null) {
-                requestParser = jsonFactory.createParser(request.getRequest());
-                parameters = parseParameters(requestParser, method.getParameterTypes(), parameterNames, method.getParameterAnnotations());
+    /**
+     * Handles the request, passing the response to the callback once available. If the method returns a
+     * CompletableFuture the callback is invoked by the thread that completes it, otherwise it is invoked
+     * before this method returns. Batches are completed by the thread that completes their last call.
+     */
+    @SuppressWarnings("unchecked")
+    public void handleRequest(final ServerRequest request, final ServerResponseCallback callback) {
+        if (Batches.SERVICE.equals(request.getService())) {
+            handleBatch(request, getBatchExecutor(), callback);
+            return;
+        }
+
+        final DefaultContext context;
+        final Codec responseCodec;
+        Object result;
+        try {
+            context = createContext(request);
+            Codec requestCodec = codecs.forContentType(Headers.get(request.getHeaders(), Codecs.CONTENT_TYPE));
+            responseCodec = responseCodec(request, requestCodec);
+            result = invoke(request, context, requestCodec);
+        } catch (Throwable t) {
+            callback.complete(handleException(t));
+            return;
+        } finally {
+            DefaultContext.CONTEXTS.remove();
+        }
+
+        if (!(result instanceof Future)) {
+            callback.complete(createResponse(context, result, responseCodec));
+            return;
+        }
+
+        Futures.addCallback((Future<Object>) result, new Callback<Object>() {
+            @Override
+            public void onSuccess(Object value) {
+                callback.complete(createResponse(context, value, responseCodec));
             }
 
-            final Object result = new MethodInvocation<Context>(method, parameters, parameterNames, methodInterceptors,
-                    new TargetMethodHandler<Context>(service.getInstance()), context).proceed();
+            @Override
+            public void onFailure(Throwable t) {
+                closeSpooled(context);
+                DefaultContext.CONTEXTS.set(context);
+                try {
+                    callback.complete(handleException(t));
+                } finally {
+                    DefaultContext.CONTEXTS.remove();
+                }
+            }
+        });
+    }
+
+    /**
+     * Invokes the method directly with parameters that have already been deserialised, for clients in the same
+     * JVM. Server interceptors are applied and exceptions are mapped as they would be for remote calls, with
+     * the mapped exception thrown if it is a Throwable.
+     */
+    public Object invokeLocal(String service, ServiceMethod method, Map<String, String> headers, Object[] parameters)
+            throws Throwable {
 
-            context.getResponseHeaders().put(Headers.STATUS.getValue(), Status.OK.getValue());
+        DefaultContext context = new DefaultContext(service);
+        context.getRequestHeaders().putAll(headers);
 
-            return new ServerResponse(context.getResponseHeaders(), new StreamingOutput() {
-                @Override
-                public void write(OutputStream output) throws Exception {
-                    if (result instanceof ByteStream) {
-                        ((ByteStream) result).output(output);
-                    } else {
-                        objectMapper.writeValue(output, result);
+        // Local calls are often made while serving another request, whose context is restored afterwards
+        DefaultContext previous = DefaultContext.CONTEXTS.get();
+        DefaultContext.CONTEXTS.set(context);
+        try {
+            return new MethodInvocation<Context>(method.getMethod(), parameters, method.getParameterNames(),
+                    method.getInterceptors(), method.getHandler(), context).proceed();
+        } catch (Throwable t) {
+            Object mapped = exceptionHandler.handle(t).getObject();
+            throw mapped instanceof Throwable ? (Throwable) mapped : t;
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Handles the batch, waiting for its calls to complete. Batches nested within a batch call are executed by
+     * the calling thread, as waiting for the executor from one of its own threads could starve it.
+     */
+    private ServerResponse awaitBatch(ServerRequest request) {
+        final Promise<ServerResponse> promise = Futures.promise();
+        handleBatch(request, BATCH_CALLS.get() != null ? CALLING_THREAD : getBatchExecutor(),
+                new ServerResponseCallback() {
+                    @Override
+                    public void complete(ServerResponse response) {
+                        promise.onSuccess(response);
                     }
-                }
-            });
+                });
+        try {
+            return (ServerResponse) Futures.get(promise.getFuture());
+        } catch (Throwable t) {
+            return handleBatchException(t);
+        }
+    }
+
+    /**
+     * Executes the calls in a batch in parallel, each with its own context and interceptor chain. Requests are
+     * parsed with the codec matching their Content-Type and results are written with the negotiated codec.
+     * Failures of individual calls are returned as mapped exceptions alongside the other results. The callback
+     * is invoked once every call has completed, without blocking a thread while calls wait for futures.
+     */
+    private void handleBatch(ServerRequest request, Executor executor, ServerResponseCallback callback) {
+        JsonNode calls;
+        BatchResults results;
+        try {
+            Codec requestCodec = codecs.forContentType(Headers.get(request.getHeaders(), Codecs.CONTENT_TYPE));
+            Codec responseCodec = responseCodec(request, requestCodec);
+
+            calls = readBatch(request, requestCodec);
+            Validators.require(calls.isArray(), "Expect a JSON array of calls");
+            Validators.require(calls.size() <= maxBatchSize, "Batches are limited to " + maxBatchSize + " calls");
+            results = new BatchResults(calls.size(), responseCodec, callback);
         } catch (Throwable t) {
+            callback.complete(handleBatchException(t));
+            return;
+        }
+
+        for (int i = 0; i < calls.size(); i++) {
+            final int index = i;
+            final JsonNode call = calls.get(i);
+            final Map<String, String> headers = batchHeaders(request, call);
+            final BatchResults batchResults = results;
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        invokeBatchCall(call, headers, batchResults, index);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                results.set(index, failedBatchCall(createBatchContext(call, headers), new ServiceUnavailableException(
+                        null, "The server is too busy to execute the call", null)));
+            }
+        }
+    }
+
+    private ServerResponse handleBatchException(Throwable t) {
+        DefaultContext.CONTEXTS.set(new DefaultContext(Batches.SERVICE));
+        try {
             return handleException(t);
         } finally {
             DefaultContext.CONTEXTS.remove();
+        }
+    }
+
+    private JsonNode readBatch(ServerRequest request, Codec codec) throws IOException {
+        JsonParser parser = codec.getFactory().createParser(request.getRequest());
+        try {
+            return objectMapper.readTree(parser);
+        } finally {
+            close(parser);
+        }
+    }
+
+    /**
+     * Returns the headers of the batch request, overridden by those of the call
+     */
+    private Map<String, String> batchHeaders(ServerRequest request, JsonNode call) {
+        Map<String, String> headers = new HashMap<String, String>(request.getHeaders());
+        Iterator<Map.Entry<String, JsonNode>> fields = call.path(Batches.HEADERS_FIELD).fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            headers.put(field.getKey(), field.getValue().asText());
+        }
+        return headers;
+    }
+
+    private DefaultContext createBatchContext(JsonNode call, Map<String, String> headers) {
+        DefaultContext context = new DefaultContext(call.path(Batches.SERVICE_FIELD).asText());
+        context.getRequestHeaders().putAll(headers);
+        return context;
+    }
+
+    /**
+     * Invokes the call, setting its result once available. Futures are completed via callbacks so that calls
+     * waiting on them do not hold an executor thread. The caller's context is restored afterwards as nested
+     * batches are invoked on the calling thread.
+     */
+    @SuppressWarnings("unchecked")
+    private void invokeBatchCall(JsonNode call, Map<String, String> headers, final BatchResults results,
+            final int index) {
+
+        final DefaultContext context = createBatchContext(call, headers);
+        DefaultContext previous = DefaultContext.CONTEXTS.get();
+        Boolean previousBatchCall = BATCH_CALLS.get();
+        DefaultContext.CONTEXTS.set(context);
+        BATCH_CALLS.set(Boolean.TRUE);
+        JsonParser parser = null;
+        Object result;
+        try {
+            ServiceMethod method = getServiceMethod(call.path(Batches.SERVICE_FIELD).asText(),
+                    CaseConverter.lowerDashToLowerCamel(call.path(Batches.METHOD_FIELD).asText()), context);
+            Validators.require(!method.isStreaming(), "Streaming methods cannot be batched");
+
+            JsonNode params = call.get(Batches.PARAMS_FIELD);
+            parser = objectMapper.treeAsTokens(params == null ? objectMapper.createObjectNode() : params);
+            result = new MethodInvocation<Context>(method.getMethod(), parseParameters(parser, method),
+                    method.getParameterNames(), method.getInterceptors(), method.getHandler(), context).proceed();
+        } catch (Throwable t) {
+            results.set(index, failedBatchCall(context, t));
+            return;
+        } finally {
+            close(parser);
+            restore(previous);
+            BATCH_CALLS.set(previousBatchCall);
+        }
+
+        if (!(result instanceof Future)) {
+            results.set(index, succeededBatchCall(context, result));
+            return;
+        }
+        Futures.addCallback((Future<Object>) result, new Callback<Object>() {
+            @Override
+            public void onSuccess(Object value) {
+                results.set(index, succeededBatchCall(context, value));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                results.set(index, failedBatchCall(context, t));
+            }
+        });
+    }
+
+    private BatchResult succeededBatchCall(DefaultContext context, Object value) {
+        context.getResponseHeaders().put(Headers.STATUS.getValue(), Status.OK.getValue());
+        return new BatchResult(context.getResponseHeaders(), value, false);
+    }
+
+    private BatchResult failedBatchCall(DefaultContext context, Throwable t) {
+        DefaultContext previous = DefaultContext.CONTEXTS.get();
+        DefaultContext.CONTEXTS.set(context);
+        try {
+            MappedException exception = exceptionHandler.handle(t);
+            return new BatchResult(exception.getHeaders(), exception.getObject(), true);
+        } finally {
+            restore(previous);
+        }
+    }
+
+    private static void restore(DefaultContext previous) {
+        if (previous == null) {
+            DefaultContext.CONTEXTS.remove();
+        } else {
+            DefaultContext.CONTEXTS.set(previous);
+        }
+    }
+
+    private ServerResponse createBatchResponse(final List<BatchResult> results, final Codec codec) {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(Headers.STATUS.getValue(), Status.OK.getValue());
+        headers.put(Codecs.CONTENT_TYPE, codec.getContentType());
+
+        return new ServerResponse(headers, new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws Exception {
+                JsonGenerator generator = codec.getFactory().createGenerator(output);
+                generator.setCodec(objectMapper);
+                try {
+                    generator.writeStartArray();
+                    for (BatchResult result : results) {
+                        generator.writeStartObject();
+                        generator.writeObjectField(Batches.HEADERS_FIELD, result.headers);
+                        generator.writeObjectField(result.error ? Batches.ERROR_FIELD : Batches.RESULT_FIELD,
+                                result.value);
+                        generator.writeEndObject();
+                    }
+                    generator.writeEndArray();
+                } finally {
+                    generator.close();
+                }
+            }
+        });
+    }
+
+    private Executor getBatchExecutor() {
+        return batchExecutor != null ? batchExecutor : DefaultBatchExecutor.INSTANCE;
+    }
+
+    private Codec responseCodec(ServerRequest request, Codec requestCodec) {
+        Codec codec = codecs.forAccept(Headers.get(request.getHeaders(), Codecs.ACCEPT));
+        return codec == null ? requestCodec : codec;
+    }
+
+    private Object invoke(ServerRequest request, DefaultContext context, Codec codec) throws Throwable {
+        JsonParser requestParser = null;
+        try {
+            ServiceMethod method = getServiceMethod(request.getService(), request.getMethod(), context);
+            Validators.require(method.getStreamingHandlerIndex() == -1,
+                    "Method '" + request.getMethod() + "' requires a bidirectional streaming connection");
+
+            Object[] parameters;
+            if (method.isByteStreamParameter()) {
+                parameters = getByteStreamParameters(request, context);
+            } else {
+                requestParser = codec.getFactory().createParser(request.getRequest());
+                parameters = parseParameters(requestParser, method);
+                if (isStreamedParameter(method, parameters)) {
+                    // The parser is closed by the Streamed parameter as the remainder of the request is read
+                    requestParser = null;
+                }
+            }
+
+            Object result = new MethodInvocation<Context>(method.getMethod(), parameters, method.getParameterNames(),
+                    method.getInterceptors(), method.getHandler(), context).proceed();
+            return method.isStreamedResult() ? Streams.toStreamed(result) : result;
+        } catch (Throwable t) {
+            closeSpooled(context);
+            throw t;
+        } finally {
             close(requestParser);
         }
     }
 
-    private ServerResponse handleException(Throwable throwable) {
+    /**
+     * Invokes a method taking a {@link StreamingHandler}, reading the other parameters from the request and
+     * passing the given handler. Blocks until the method returns, returning null if it succeeds, otherwise the
+     * response for the mapped exception as for {@link #handleRequest(ServerRequest)}.
+     */
+    public ServerResponse handleStreaming(ServerRequest request, StreamingHandler<?> handler) {
+        DefaultContext context = createContext(request);
+        JsonParser parser = null;
+        try {
+            ServiceMethod method = getServiceMethod(request.getService(), request.getMethod(), context);
+            Validators.require(method.getStreamingHandlerIndex() != -1,
+                    "Method '" + request.getMethod() + "' does not take a StreamingHandler");
+
+            parser = codecs.forContentType(Headers.get(request.getHeaders(), Codecs.CONTENT_TYPE)).getFactory()
+                    .createParser(request.getRequest());
+            Object[] parameters = parseParameters(parser, method);
+            parameters[method.getStreamingHandlerIndex()] = handler;
+
+            new MethodInvocation<Context>(method.getMethod(), parameters, method.getParameterNames(),
+                    method.getInterceptors(), method.getHandler(), context).proceed();
+            return null;
+        } catch (Throwable t) {
+            return handleException(t);
+        } finally {
+            close(parser);
+            DefaultContext.CONTEXTS.remove();
+        }
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    private ServerResponse createResponse(final DefaultContext context, Object value, final Codec codec) {
+        context.getResponseHeaders().put(Headers.STATUS.getValue(), Status.OK.getValue());
+        if (!(value instanceof ByteStream)) {
+            context.getResponseHeaders().put(Codecs.CONTENT_TYPE, codec.getContentType());
+        }
+
+        if (value instanceof SeekableByteStream) {
+            value = selectRange(context, (SeekableByteStream) value);
+            if (value == null) {
+                closeSpooled(context);
+                return new ServerResponse(context.getResponseHeaders(), EMPTY_OUTPUT);
+            }
+        }
+        final Object result = value;
+
+        if (result instanceof FileByteStream) {
+            closeSpooled(context);
+            return new ServerResponse(context.getResponseHeaders(), new FileOutput((FileByteStream) result));
+        }
+
+        return new ServerResponse(context.getResponseHeaders(), new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws Exception {
+                try {
+                    writeResult(output, result, codec);
+                } finally {
+                    // Results may read spooled parameters lazily, so they are only closed once written
+                    closeSpooled(context);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the range of the stream requested by the Range header, the whole stream if no range is requested,
+     * or null if the range cannot be satisfied. The response headers are updated to match.
+     */
+    private SeekableByteStream selectRange(DefaultContext context, SeekableByteStream stream) {
+        Map<String, String> headers = context.getResponseHeaders();
+        long length = stream.getLength();
+        headers.put(Ranges.ACCEPT_RANGES, Ranges.BYTES);
+
+        long[] range = Ranges.parse(Headers.get(context.getRequestHeaders(), Ranges.RANGE), length);
+        if (range != null && range.length == 0) {
+            headers.put(Headers.STATUS.getValue(), Status.RANGE_NOT_SATISFIABLE.getValue());
+            headers.put(Ranges.CONTENT_RANGE, Ranges.unsatisfiable(length));
+            return null;
+        }
+
+        SeekableByteStream selected = stream;
+        if (range != null) {
+            headers.put(Headers.STATUS.getValue(), Status.PARTIAL_CONTENT.getValue());
+            headers.put(Ranges.CONTENT_RANGE, Ranges.contentRange(range[0], range[1], length));
+            selected = stream.slice(range[0], range[1] - range[0] + 1);
+        }
+        headers.put(Codecs.CONTENT_LENGTH, String.valueOf(selected.getLength()));
+        return selected;
+    }
+
+    private void writeResult(OutputStream output, Object result, Codec codec) throws Exception {
+        if (result instanceof ByteStream) {
+            ((ByteStream) result).output(output);
+        } else if (result instanceof Streamed) {
+            writeStreamed(codec.getFactory().createGenerator(output), (Streamed<?>) result);
+        } else {
+            JsonGenerator generator = codec.getFactory().createGenerator(output);
+            try {
+                objectMapper.writeValue(generator, result);
+            } finally {
+                generator.close();
+            }
+        }
+    }
+
+    private void writeStreamed(JsonGenerator generator, Streamed<?> result) throws Exception {
+        generator.setCodec(objectMapper);
+        try {
+            generator.writeStartArray();
+            long flushed = System.nanoTime();
+            for (Object value : result) {
+                generator.writeObject(value);
+                // Flush values from slow sources, e.g. database cursors, rather than waiting for buffers to fill
+                long now = System.nanoTime();
+                if (now - flushed >= STREAMED_FLUSH_INTERVAL_NANOS) {
+                    generator.flush();
+                    flushed = now;
+                }
+            }
+            generator.writeEndArray();
+        } finally {
+            try {
+                generator.close();
+            } finally {
+                result.close();
+            }
+        }
+    }
+
+    private static boolean isStreamedParameter(ServiceMethod method, Object[] parameters) {
+        int index = method.getStreamedParameterIndex();
+        return index != -1 && parameters[index] != null;
+    }
+
+    /**
+     * Returns the response for a failed call, mapping the exception as for failures thrown by services. Allows
+     * transports to report failures detected before the request is handled.
+     */
+    public ServerResponse handleException(Throwable throwable) {
         final MappedException exception = exceptionHandler.handle(throwable);
-        return new ServerResponse(exception.getHeaders(), new StreamingOutput() {
+        Map<String, String> headers = new HashMap<String, String>(exception.getHeaders());
+        headers.put(Codecs.CONTENT_TYPE, Codecs.JSON);
+        return new ServerResponse(headers, new StreamingOutput() {
             @Override
             public void write(OutputStream output) throws Exception {
                 objectMapper.writeValue(output, exception.getObject());
@@ -114,16 +717,18 @@ public class ServerHandler {
         });
     }
 
-    private Object[] getByteStreamParameters(Method method, final ServerRequest request) {
-        if (method.getParameterTypes().length == 1 && method.getParameterTypes()[0].equals(ByteStream.class)) {
-            return new Object[]{new ByteStream() {
-                @Override
-                public InputStream input() {
-                    return request.getRequest();
-                }
-            }};
+    private Object[] getByteStreamParameters(final ServerRequest request, DefaultContext context) throws IOException {
+        if (spoolMemoryThreshold != SPOOLING_DISABLED) {
+            SpooledByteStream stream = SpooledByteStream.spool(request.getRequest(), spoolMemoryThreshold, maxSpoolSize);
+            context.set(SpooledByteStream.class, stream);
+            return new Object[]{stream};
         }
-        return null;
+        return new Object[]{new ByteStream() {
+            @Override
+            public InputStream input() {
+                return request.getRequest();
+            }
+        }};
     }
 
     private void close(JsonParser requestParser) {
@@ -136,6 +741,13 @@ public class ServerHandler {
         }
     }
 
+    private static void closeSpooled(DefaultContext context) {
+        SpooledByteStream stream = context == null ? null : context.get(SpooledByteStream.class);
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
     private DefaultContext createContext(ServerRequest request) {
         DefaultContext context = new DefaultContext(request.getService());
         context.getRequestHeaders().putAll(request.getHeaders());
@@ -143,53 +755,136 @@ public class ServerHandler {
         return context;
     }
 
-    private Service getService(ServerRequest request, DefaultContext context) {
-        Service service = serviceProvider.get(request.getService());
-        if (service == null) {
-            throw new NotFoundException(context.getRequestId(), "Unknown service '" + request.getService() + "'", null);
+    /**
+     * Returns the method for the given service and method names, or null if there is no such method
+     */
+    public ServiceMethod findServiceMethod(String service, String method) {
+        Map<String, ServiceMethod> methods = getServiceMethods(service);
+        return methods == null ? null : methods.get(method);
+    }
+
+    private ServiceMethod getServiceMethod(String service, String methodName, DefaultContext context) {
+        Map<String, ServiceMethod> methods = getServiceMethods(service);
+        if (methods == null) {
+            throw new NotFoundException(context.getRequestId(), "Unknown service '" + service + "'", null);
+        }
+
+        ServiceMethod method = methods.get(methodName);
+        if (method == null) {
+            throw new NotFoundException(context.getRequestId(), "Method '" + methodName + "' not found on "
+                    + service, null);
         }
-        return service;
+        return method;
     }
 
-    private Object[] parseParameters(JsonParser parser, Class<?>[] parameterTypes, String[] parameterNames,
-            Annotation[][] annotations) throws IOException {
+    /**
+     * Reads the parameters from the fields of the request object, which may be in any order. The exception is a
+     * Streamed parameter, whose elements are read on demand, so it must be the last field. Fields following it
+     * are rejected with a {@link ClientException} once its elements have been read.
+     */
+    private Object[] parseParameters(JsonParser parser, ServiceMethod method) throws IOException {
+        ObjectReader[] readers = method.getParameterReaders();
 
-        // TODO ... support parameters in any order.
         Validators.require(parser.nextToken() == JsonToken.START_OBJECT, "Expect start of JSON object");
-        Object[] parameters = new Object[parameterTypes.length];
-        for (int i = 0; i < parameterTypes.length; i++) {
-            String name = parameterNames[i];
-            String fieldName = parser.nextFieldName();
-            Validators.require(name.equals(fieldName), "Expected '" + name + "' but got '" + fieldName + "'");
-            Class<?> type = parameterTypes[i];
+        Object[] parameters = method.createDefaultParameters();
+
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            Integer index = method.getParameterIndex(fieldName);
             parser.nextToken();
-            if (type.equals(Streamed.class)) {
-//                Class<?> streamedType = getStreamedType(annotations[i]);
+            if (index == null) {
+                Validators.require(!failOnUnknownParameters, "Unknown parameter '" + fieldName + "'");
+                parser.skipChildren();
+            } else if (index == method.getStreamedParameterIndex() && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                parameters[index] = Streams.fromStreamed(new StreamedParameter(parser, readers[index], fieldName),
+                        method.getParameterTypes()[index]);
+                return parameters;
             } else {
-                parameters[i] = parser.readValueAs(type);
+                parameters[index] = readers[index].readValue(parser);
             }
         }
-        Validators.require(parser.nextToken() == JsonToken.END_OBJECT, "Expect end of JSON object");
+        Validators.require(token == JsonToken.END_OBJECT, "Expect end of JSON object");
         return parameters;
     }
 
-    private Class<?> getStreamedType(Annotation[] annotations) {
-        for (Annotation annotation : annotations) {
-            if (annotation.annotationType().equals(StreamedType.class)) {
-                return ((StreamedType) annotation).value();
+    /**
+     * Rejects requests with fields after the Streamed parameter, as they cannot be read before the method is called
+     */
+    private static class StreamedParameter extends StreamedJsonValue<Object> {
+        private final String name;
+
+        StreamedParameter(JsonParser parser, ObjectReader reader, String name) {
+            super(parser, reader, null);
+            this.name = name;
+        }
+
+        @Override
+        protected void ended(JsonParser parser) throws IOException {
+            if (parser.nextToken() != JsonToken.END_OBJECT) {
+                throw new ClientException(null, "The streamed parameter '" + name
+                        + "' must be the last field of the request", null);
             }
         }
-        throw new IllegalArgumentException("");
     }
 
-    private Method getMethod(ServerRequest request, Class target, DefaultContext context) {
-        for (Method method : target.getMethods()) {
-            if (method.getName().equals(request.getMethod())) {
-                return method;
+    /**
+     * Collects the results of a batch's calls, completing the callback when the last call completes
+     */
+    private class BatchResults {
+        private final BatchResult[] results;
+        private final AtomicInteger remaining;
+        private final Codec codec;
+        private final ServerResponseCallback callback;
+
+        BatchResults(int size, Codec codec, ServerResponseCallback callback) {
+            this.results = new BatchResult[size];
+            this.remaining = new AtomicInteger(size);
+            this.codec = codec;
+            this.callback = callback;
+            if (size == 0) {
+                callback.complete(createBatchResponse(Collections.<BatchResult>emptyList(), codec));
             }
         }
 
-        throw new NotFoundException(context.getRequestId(), "Method '" + request.getMethod() + "' not found on "
-                + target.getClass().getCanonicalName(), null);
+        void set(int index, BatchResult result) {
+            results[index] = result;
+            if (remaining.decrementAndGet() == 0) {
+                callback.complete(createBatchResponse(Arrays.asList(results), codec));
+            }
+        }
+    }
+
+    private static class BatchResult {
+        private final Map<String, String> headers;
+        private final Object value;
+        private final boolean error;
+
+        BatchResult(Map<String, String> headers, Object value, boolean error) {
+            this.headers = headers;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Lazily creates the default batch executor so that servers not receiving batches do not start threads.
+     * Calls queued beyond the limit are rejected rather than held in memory.
+     */
+    private static class DefaultBatchExecutor {
+        private static final int THREADS = Runtime.getRuntime().availableProcessors();
+        private static final int MAX_QUEUED = THREADS * DEFAULT_MAX_BATCH_SIZE;
+
+        private static final Executor INSTANCE = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "restless-batch-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
     }
 }
@@ -24,19 +24,29 @@ package com.github.andrewoma.restless.server;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.codec.Codecs;
 import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.MethodInvokerFactory;
+import com.github.andrewoma.restless.core.proxy.MethodInvokers;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class ServerHandlerBuilder {
     private List<MethodInterceptor<Context>> interceptors = new ArrayList<MethodInterceptor<Context>>();
     private ObjectMapper objectMapper = new ObjectMapper();
     private ServerExceptionHandler exceptionHandler = new DefaultServerExceptionHandler();
     private Map<String, Service> services = new HashMap<String, Service>();
+    private MethodInvokerFactory invokerFactory = MethodInvokers.defaultFactory();
+    private Codecs codecs = Codecs.defaults();
+    private Executor batchExecutor;
+    private int maxBatchSize = ServerHandler.DEFAULT_MAX_BATCH_SIZE;
+    private int spoolMemoryThreshold = ServerHandler.SPOOLING_DISABLED;
+    private long maxSpoolSize;
 
     public ServerHandlerBuilder interceptor(MethodInterceptor<Context> interceptor) {
         interceptors.add(interceptor);
@@ -58,6 +68,44 @@ public class ServerHandlerBuilder {
         return this;
     }
 
+    public ServerHandlerBuilder invokerFactory(MethodInvokerFactory invokerFactory) {
+        this.invokerFactory = invokerFactory;
+        return this;
+    }
+
+    /**
+     * Sets the wire formats supported, with the first being the default. Defaults to JSON, Smile and CBOR.
+     */
+    public ServerHandlerBuilder codecs(Codecs codecs) {
+        this.codecs = codecs;
+        return this;
+    }
+
+    /**
+     * Sets the executor used to run the calls in a batch in parallel. Defaults to a shared pool with a thread
+     * per processor and a bounded queue. Calls the executor rejects fail with a 503 within the batch.
+     */
+    public ServerHandlerBuilder batchExecutor(Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+        return this;
+    }
+
+    public ServerHandlerBuilder maxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Reads ByteStream parameters completely before invoking methods, holding bodies of up to
+     * {@code memoryThreshold} bytes in memory and spooling larger ones to temporary files. Bodies of more than
+     * {@code maxSize} bytes are rejected. Disabled by default.
+     */
+    public ServerHandlerBuilder spoolByteStreams(int memoryThreshold, long maxSize) {
+        this.spoolMemoryThreshold = memoryThreshold;
+        this.maxSpoolSize = maxSize;
+        return this;
+    }
+
     public <T> ServerHandlerBuilder service(T instance) {
         for (Class<?> type : instance.getClass().getInterfaces()) {
             com.github.andrewoma.restless.annotations.Service service = type.getAnnotation(com.github.andrewoma.restless.annotations.Service.class);
@@ -70,7 +118,7 @@ public class ServerHandlerBuilder {
     }
 
     public ServerHandler build() {
-        return new ServerHandler(new MapServiceProvider(services),
-                interceptors, objectMapper, exceptionHandler);
+        return new ServerHandler(services, interceptors, objectMapper, exceptionHandler, invokerFactory, codecs, batchExecutor,
+                maxBatchSize, spoolMemoryThreshold, maxSpoolSize);
     }
 }
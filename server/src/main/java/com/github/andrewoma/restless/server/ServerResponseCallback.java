@@ -22,17 +22,6 @@
 
 package com.github.andrewoma.restless.server;
 
-import com.github.andrewoma.restless.core.Streamed;
-
-import java.util.Iterator;
-
-public class StreamedJsonValue<T> extends Streamed<T> {
-
-//    private final Class<?> type;
-//    private final Class<?> type;
-
-    @Override
-    public Iterator<T> iterator() {
-        return null;
-    }
+public interface ServerResponseCallback {
+    void complete(ServerResponse response);
 }
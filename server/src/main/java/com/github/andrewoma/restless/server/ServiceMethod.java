@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.andrewoma.restless.core.ByteStream;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.StreamedJsonValue;
+import com.github.andrewoma.restless.core.StreamedType;
+import com.github.andrewoma.restless.core.StreamingHandler;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptors;
+import com.github.andrewoma.restless.core.proxy.MethodInvokerFactory;
+import com.github.andrewoma.restless.core.proxy.TargetMethodHandler;
+import com.github.andrewoma.restless.core.util.Paranamers;
+import com.github.andrewoma.restless.core.util.Streams;
+import com.github.andrewoma.restless.core.util.Validators;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Describes a method of a service, resolving the reflective metadata required to dispatch a request once
+ * at registration time rather than per request.
+ */
+public class ServiceMethod {
+    private final Service service;
+    private final Method method;
+    private final String[] parameterNames;
+    private final Class<?>[] parameterTypes;
+    private final Type[] genericParameterTypes;
+    private final Class<?>[] streamedTypes;
+    private final ObjectReader[] parameterReaders;
+    private final Map<String, Integer> parameterIndexes;
+    private final Object[] defaultParameters;
+    private final boolean byteStreamParameter;
+    private final boolean byteStreamResult;
+    private final int streamedParameterIndex;
+    private final int streamingHandlerIndex;
+    private final boolean streamedResult;
+    private final boolean asyncResult;
+    private final TargetMethodHandler<Context> handler;
+    private final MethodInterceptor<Context>[] interceptors;
+
+    public ServiceMethod(Service service, Method method, List<MethodInterceptor<Context>> interceptors,
+            ObjectMapper objectMapper, MethodInvokerFactory invokerFactory) {
+        this.service = service;
+        this.method = method;
+        this.parameterNames = Paranamers.DEFAULT.lookupParameterNames(method);
+        this.parameterTypes = method.getParameterTypes();
+        this.genericParameterTypes = method.getGenericParameterTypes();
+        this.byteStreamParameter = parameterTypes.length == 1 && parameterTypes[0].equals(ByteStream.class);
+        this.byteStreamResult = ByteStream.class.isAssignableFrom(method.getReturnType());
+        this.streamedResult = Streams.isStreamed(method.getReturnType());
+        this.asyncResult = Future.class.isAssignableFrom(method.getReturnType());
+        this.handler = new TargetMethodHandler<Context>(service.getInstance(),
+                invokerFactory.create(service.getInstance(), method));
+        this.interceptors = MethodInterceptors.forMethod(interceptors, method);
+
+        Annotation[][] annotations = method.getParameterAnnotations();
+        streamedTypes = new Class<?>[parameterTypes.length];
+        parameterReaders = new ObjectReader[parameterTypes.length];
+        parameterIndexes = new HashMap<String, Integer>();
+        defaultParameters = new Object[parameterTypes.length];
+        int streamedIndex = -1;
+        int streamingIndex = -1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterIndexes.put(parameterNames[i], i);
+            if (parameterTypes[i].isPrimitive()) {
+                defaultParameters[i] = Array.get(Array.newInstance(parameterTypes[i], 1), 0);
+            }
+            if (Streams.isStreamedParameter(parameterTypes[i])) {
+                Validators.require(i == parameterTypes.length - 1,
+                        "A streamed parameter must be the last parameter of method: " + method);
+                StreamedType streamedType = getStreamedType(annotations[i]);
+                streamedTypes[i] = streamedType == null ? null : streamedType.value();
+                streamedIndex = i;
+                parameterReaders[i] = objectMapper.readerFor(StreamedJsonValue.elementType(
+                        objectMapper.getTypeFactory(), genericParameterTypes[i], streamedType));
+            } else if (parameterTypes[i].equals(StreamingHandler.class)) {
+                Validators.require(i == parameterTypes.length - 1,
+                        "A StreamingHandler parameter must be the last parameter of method: " + method);
+                streamingIndex = i;
+                parameterReaders[i] = objectMapper.readerFor(StreamedJsonValue.elementType(
+                        objectMapper.getTypeFactory(), genericParameterTypes[i], getStreamedType(annotations[i])));
+            } else if (!byteStreamParameter) {
+                parameterReaders[i] = objectMapper.readerFor(objectMapper.getTypeFactory().constructType(genericParameterTypes[i]));
+            }
+        }
+        streamedParameterIndex = streamedIndex;
+        streamingHandlerIndex = streamingIndex;
+    }
+
+    private static StreamedType getStreamedType(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation.annotationType().equals(StreamedType.class)) {
+                return (StreamedType) annotation;
+            }
+        }
+        return null;
+    }
+
+    public Service getService() {
+        return service;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String[] getParameterNames() {
+        return parameterNames;
+    }
+
+    public Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public Type[] getGenericParameterTypes() {
+        return genericParameterTypes;
+    }
+
+    /**
+     * Returns the element type declared via {@link StreamedType} for each {@link Streamed} parameter, or null
+     */
+    public Class<?>[] getStreamedTypes() {
+        return streamedTypes;
+    }
+
+    /**
+     * Returns a reader for each parameter, resolved against the generic parameter type. Readers for
+     * {@link Streamed} parameters read a single element.
+     */
+    public ObjectReader[] getParameterReaders() {
+        return parameterReaders;
+    }
+
+    /**
+     * Returns the index of the parameter with the given name, or null if there is no such parameter
+     */
+    public Integer getParameterIndex(String name) {
+        return parameterIndexes.get(name);
+    }
+
+    /**
+     * Returns a new parameter array populated with the values used for parameters missing from a request,
+     * namely null for objects and the default value for primitives
+     */
+    public Object[] createDefaultParameters() {
+        return defaultParameters.clone();
+    }
+
+    /**
+     * Returns true if the method takes a single {@link ByteStream} parameter that is read directly from the request
+     */
+    public boolean isByteStreamParameter() {
+        return byteStreamParameter;
+    }
+
+    /**
+     * Returns the index of the {@link Streamed} or Publisher parameter, which is always the last parameter,
+     * or -1 if there is none
+     */
+    public int getStreamedParameterIndex() {
+        return streamedParameterIndex;
+    }
+
+    /**
+     * Returns the index of the {@link StreamingHandler} parameter of a bidirectional streaming method, which is
+     * always the last parameter, or -1 if there is none. Its reader reads a single message.
+     */
+    public int getStreamingHandlerIndex() {
+        return streamingHandlerIndex;
+    }
+
+    /**
+     * Returns true if the method returns {@link Streamed} values, or an Iterator, Iterable or Stream, that are
+     * written as they are iterated
+     */
+    public boolean isStreamedResult() {
+        return streamedResult;
+    }
+
+    /**
+     * Returns true if the request or response body is streamed rather than read or written as a single document
+     */
+    public boolean isStreaming() {
+        return byteStreamParameter || byteStreamResult || streamedParameterIndex != -1 || streamedResult
+                || streamingHandlerIndex != -1;
+    }
+
+    /**
+     * Returns true if the method returns a {@link Future} that is completed after the method returns
+     */
+    public boolean isAsync() {
+        return asyncResult;
+    }
+
+    public TargetMethodHandler<Context> getHandler() {
+        return handler;
+    }
+
+    /**
+     * Returns the interceptors that apply to this method
+     */
+    public MethodInterceptor<Context>[] getInterceptors() {
+        return interceptors;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2015 Andrew O'Malley
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.github.andrewoma.restless.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.andrewoma.restless.annotations.Service;
+import com.github.andrewoma.restless.core.Batches;
+import com.github.andrewoma.restless.core.Context;
+import com.github.andrewoma.restless.core.Headers;
+import com.github.andrewoma.restless.core.Streamed;
+import com.github.andrewoma.restless.core.StreamedType;
+import com.github.andrewoma.restless.core.codec.Codecs;
+import com.github.andrewoma.restless.core.proxy.MethodInterceptor;
+import org.junit.Test;
+
+import javax.inject.Named;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerHandlerTest {
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private ServerHandler handler = new ServerHandlerBuilder()
+            .objectMapper(objectMapper)
+            .service(new FooImpl())
+            .build();
+
+    @Test
+    public void shouldAcceptParametersInAnyOrder() throws Exception {
+        assertThat(call("concat", "{\"value2\":\"b\",\"count\":2,\"value1\":\"a\"}")).isEqualTo("\"ab2\"");
+    }
+
+    @Test
+    public void shouldDefaultMissingParameters() throws Exception {
+        assertThat(call("concat", "{\"value2\":\"b\"}")).isEqualTo("\"nullb0\"");
+        assertThat(call("concat", "{}")).isEqualTo("\"nullnull0\"");
+    }
+
+    @Test
+    public void shouldHonourGenericParameterTypes() throws Exception {
+        assertThat(call("sum", "{\"bars\":[{\"value\":1},{\"value\":2}]}")).isEqualTo("3");
+    }
+
+    @Test
+    public void shouldRejectUnknownParameters() throws Exception {
+        ServerResponse response = handler.handleRequest(request("concat", "{\"unknown\":1}"));
+        assertThat(response.getHeaders().get(Headers.STATUS.getValue())).isEqualTo("500");
+    }
+
+    @Test
+    public void shouldWaitForFutureResults() throws Exception {
+        assertThat(call("later", "{\"value\":\"a\"}")).isEqualTo("\"later a\"");
+    }
+
+    @Test
+    public void shouldPassFutureResultsToCallback() throws Exception {
+        final ServerResponse[] result = new ServerResponse[1];
+        handler.handleRequest(request("later", "{\"value\":\"a\"}"), new ServerResponseCallback() {
+            @Override
+            public void complete(ServerResponse response) {
+                result[0] = response;
+            }
+        });
+
+        assertThat(result[0].getHeaders().get(Headers.STATUS.getValue())).isEqualTo("200");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        result[0].getOutput().write(output);
+        assertThat(output.toString("UTF-8")).isEqualTo("\"later a\"");
+    }
+
+    @Test
+    public void shouldRespondInTheRequestFormat() throws Exception {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        ServerResponse response = handler.handleRequest(request("concat",
+                headers(Codecs.CONTENT_TYPE, Codecs.SMILE), smileMapper.writeValueAsBytes(parameters())));
+
+        assertThat(response.getHeaders().get(Codecs.CONTENT_TYPE)).isEqualTo(Codecs.SMILE);
+        assertThat(smileMapper.readValue(body(response), String.class)).isEqualTo("ab2");
+    }
+
+    @Test
+    public void shouldRespondInTheAcceptedFormat() throws Exception {
+        ServerResponse response = handler.handleRequest(request("concat",
+                headers(Codecs.ACCEPT, "application/json;q=0.5, application/cbor"),
+                objectMapper.writeValueAsBytes(parameters())));
+
+        assertThat(response.getHeaders().get(Codecs.CONTENT_TYPE)).isEqualTo(Codecs.CBOR);
+        assertThat(new ObjectMapper(new CBORFactory()).readValue(body(response), String.class)).isEqualTo("ab2");
+    }
+
+    @Test
+    public void shouldRespondWithJsonErrors() throws Exception {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        ServerResponse response = handler.handleRequest(request("concat",
+                headers(Codecs.CONTENT_TYPE, Codecs.SMILE), smileMapper.writeValueAsBytes(
+                        Collections.singletonMap("unknown", 1))));
+
+        assertThat(response.getHeaders().get(Headers.STATUS.getValue())).isEqualTo("500");
+        assertThat(response.getHeaders().get(Codecs.CONTENT_TYPE)).isEqualTo(Codecs.JSON);
+    }
+
+    @Test
+    public void shouldExecuteBatches() throws Exception {
+        String body = "[{\"service\":\"foo\",\"method\":\"concat\",\"params\":{\"value1\":\"a\",\"count\":1}},"
+                + "{\"service\":\"foo\",\"method\":\"later\",\"params\":{\"value\":\"b\"}},"
+                + "{\"service\":\"foo\",\"method\":\"missing\"}]";
+        ServerResponse response = handler.handleRequest(new ServerRequest(Batches.SERVICE, null,
+                Collections.<String, String>emptyMap(), new ByteArrayInputStream(body.getBytes("UTF-8"))));
+        assertThat(response.getHeaders().get(Headers.STATUS.getValue())).isEqualTo("200");
+
+        JsonNode results = objectMapper.readTree(body(response));
+        assertThat(results.size()).isEqualTo(3);
+        assertThat(results.get(0).path("result").asText()).isEqualTo("anull1");
+        assertThat(results.get(1).path("result").asText()).isEqualTo("later b");
+        assertThat(results.get(2).path("headers").path(Headers.STATUS.getValue()).asText()).isEqualTo("404");
+        assertThat(results.get(2).has("error")).isTrue();
+    }
+
+    @Test
+    public void shouldRejectBatchesOverTheLimit() throws Exception {
+        ServerHandler limited = new ServerHandlerBuilder().service(new FooImpl()).maxBatchSize(1).build();
+        String body = "[{\"service\":\"foo\",\"method\":\"concat\"},{\"service\":\"foo\",\"method\":\"concat\"}]";
+        ServerResponse response = limited.handleRequest(new ServerRequest(Batches.SERVICE, null,
+                Collections.<String, String>emptyMap(), new ByteArrayInputStream(body.getBytes("UTF-8"))));
+        assertThat(response.getHeaders().get(Headers.STATUS.getValue())).isEqualTo("500");
+    }
+
+    @Test
+    public void shouldFailCallsRejectedByTheBatchExecutor() throws Exception {
+        ServerHandler rejecting = new ServerHandlerBuilder().service(new FooImpl()).batchExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }).build();
+        ServerResponse response = rejecting.handleRequest(batch("[{\"service\":\"foo\",\"method\":\"concat\"}]"));
+        assertThat(response.getHeaders().get(Headers.STATUS.getValue())).isEqualTo("200");
+
+        JsonNode results = objectMapper.readTree(body(response));
+        assertThat(results.get(0).path("headers").path(Headers.STATUS.getValue()).asText()).isEqualTo("503");
+        assertThat(results.get(0).has("error")).isTrue();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldExecuteNestedBatchesWithoutStarvingTheExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NestingImpl nesting = new NestingImpl();
+            nesting.handler = new ServerHandlerBuilder().objectMapper(objectMapper).service(new FooImpl())
+                    .service(nesting).batchExecutor(executor).build();
+
+            ServerResponse response = nesting.handler.handleRequest(batch(
+                    "[{\"service\":\"nesting\",\"method\":\"nested\"}]"));
+            JsonNode results = objectMapper.readTree(body(response));
+            assertThat(results.get(0).path("result").asText()).isEqualTo("ab1");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldAcceptStreamedParametersAsTheLastField() throws Exception {
+        assertThat(call("join", "{\"prefix\":\"x\",\"values\":[\"a\",\"b\"]}")).isEqualTo("\"xab\"");
+    }
+
+    @Test
+    public void shouldRejectFieldsAfterStreamedParameters() throws Exception {
+        ServerResponse response = handler.handleRequest(request("join", "{\"values\":[\"a\",\"b\"],\"prefix\":\"x\"}"));
+        assertThat(response.getHeaders().get(Headers.STATUS.getValue())).isEqualTo("400");
+    }
+
+    @Test
+    public void shouldResolveProvidedServicesOnTheirFirstCall() throws Exception {
+        final List<String> lookups = new ArrayList<String>();
+        handler = new ServerHandler(new ServiceProvider() {
+            @Override
+            public com.github.andrewoma.restless.server.Service get(String name) {
+                lookups.add(name);
+                return "foo".equals(name) ? new com.github.andrewoma.restless.server.Service(Foo.class, new FooImpl()) : null;
+            }
+        }, Collections.<MethodInterceptor<Context>>emptyList(),
+                objectMapper, new DefaultServerExceptionHandler());
+        assertThat(lookups).isEmpty();
+
+        assertThat(call("concat", "{\"value1\":\"a\",\"count\":1}")).isEqualTo("\"anull1\"");
+        assertThat(call("concat", "{\"value1\":\"b\",\"count\":2}")).isEqualTo("\"bnull2\"");
+        assertThat(handler.findServiceMethod("missing", "concat")).isNull();
+        assertThat(lookups).containsExactly("foo", "missing");
+    }
+
+    private static ServerRequest batch(String body) throws Exception {
+        return new ServerRequest(Batches.SERVICE, null, Collections.<String, String>emptyMap(),
+                new ByteArrayInputStream(body.getBytes("UTF-8")));
+    }
+
+    private Map<String, Object> parameters() {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("value1", "a");
+        parameters.put("value2", "b");
+        parameters.put("count", 2);
+        return parameters;
+    }
+
+    private Map<String, String> headers(String name, String value) {
+        return Collections.singletonMap(name, value);
+    }
+
+    private byte[] body(ServerResponse response) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getOutput().write(output);
+        return output.toByteArray();
+    }
+
+    private String call(String method, String body) throws Exception {
+        ServerResponse response = handler.handleRequest(request(method, body));
+        assertThat(response.getHeaders().get(Headers.STATUS.getValue())).isEqualTo("200");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getOutput().write(output);
+        return output.toString("UTF-8");
+    }
+
+    private ServerRequest request(String method, String body) throws Exception {
+        return request(method, Collections.<String, String>emptyMap(), body.getBytes("UTF-8"));
+    }
+
+    private ServerRequest request(String method, Map<String, String> headers, byte[] body) {
+        return new ServerRequest("foo", method, headers, new ByteArrayInputStream(body));
+    }
+
+    @Service("foo")
+    public interface Foo {
+        String concat(@Named("value1") String value1, @Named("value2") String value2, @Named("count") int count);
+
+        int sum(@Named("bars") List<Bar> bars);
+
+        Future<String> later(@Named("value") String value);
+
+        String join(@Named("prefix") String prefix,
+                @StreamedType(String.class) @Named("values") Streamed<String> values);
+    }
+
+    @Service("nesting")
+    public interface Nesting {
+        String nested() throws Exception;
+    }
+
+    public static class NestingImpl implements Nesting {
+        private ServerHandler handler;
+
+        @Override
+        public String nested() throws Exception {
+            ServerResponse response = handler.handleRequest(batch("[{\"service\":\"foo\",\"method\":\"concat\","
+                    + "\"params\":{\"value1\":\"a\",\"value2\":\"b\",\"count\":1}}]"));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            response.getOutput().write(output);
+            return new ObjectMapper().readTree(output.toByteArray()).get(0).path("result").asText();
+        }
+    }
+
+    public static class Bar {
+        public int value;
+    }
+
+    public static class FooImpl implements Foo {
+        @Override
+        public String concat(String value1, String value2, int count) {
+            return value1 + value2 + count;
+        }
+
+        @Override
+        public int sum(List<Bar> bars) {
+            int sum = 0;
+            for (Bar bar : bars) {
+                sum += bar.value;
+            }
+            return sum;
+        }
+
+        @Override
+        public Future<String> later(final String value) {
+            FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return "later " + value;
+                }
+            });
+            future.run();
+            return future;
+        }
+
+        @Override
+        public String join(String prefix, Streamed<String> values) {
+            StringBuilder result = new StringBuilder(String.valueOf(prefix));
+            for (String value : values) {
+                result.append(value);
+            }
+            return result.toString();
+        }
+    }
+}